@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd.bench;
+
+/**
+ * Generates synthetic CNDs of a given shape and size for the benchmarks.
+ * @author adeka
+ */
+public final class CndGenerator
+{
+    public static final String NAMESPACE = "http://www.vt.edu/cnd2xsd/bench";
+
+    /**
+     * The shapes of the generated type systems.
+     */
+    public enum Shape
+    {
+        /** independent types, each with a few properties and a child of the previous type */
+        FLAT,
+        /** a single supertype chain as deep as the size */
+        DEEP,
+        /** one type with a child node definition for each of the other types */
+        WIDE,
+        /** types with ten multi-valued properties each */
+        MULTI
+    }
+
+    private CndGenerator()
+    {
+    }
+
+    /**
+     * @param shape the shape of the type system
+     * @param size the number of node types
+     * @param prefix the namespace prefix, use a fresh one to register the types again
+     * @return the CND
+     */
+    public static String generate(Shape shape, int size, String prefix)
+    {
+        StringBuilder sb = new StringBuilder(size * 128);
+        sb.append('<').append(prefix).append(" = '").append(NAMESPACE).append('/').append(prefix).append("'>\n\n");
+        for (int i = 0; i < size; i++)
+        {
+            String name = typeName(prefix, i);
+            switch (shape)
+            {
+                case FLAT:
+                    sb.append('[').append(name).append("] > nt:base\n");
+                    sb.append("  - ").append(prefix).append(":title (string) = 'untitled'\n");
+                    sb.append("  - ").append(prefix).append(":count (long)\n");
+                    sb.append("  - ").append(prefix).append(":created (date)\n");
+                    if (i > 0)
+                    {
+                        sb.append("  + ").append(prefix).append(":child (").append(typeName(prefix, i - 1)).append(")\n");
+                    }
+                    break;
+                case DEEP:
+                    sb.append('[').append(name).append("] > ").append(i == 0 ? "nt:base" : typeName(prefix, i - 1)).append('\n');
+                    sb.append("  - ").append(prefix).append(":level").append(i).append(" (long)\n");
+                    break;
+                case WIDE:
+                    sb.append('[').append(name).append("] > nt:base\n");
+                    if (i == 0)
+                    {
+                        for (int j = 1; j < size; j++)
+                        {
+                            sb.append("  + ").append(prefix).append(":child").append(j).append(" (")
+                                    .append(typeName(prefix, j)).append(")\n");
+                        }
+                        sb.append("  + * (").append(typeName(prefix, size > 1 ? 1 : 0)).append(") multiple\n");
+                    }
+                    else
+                    {
+                        sb.append("  - ").append(prefix).append(":value (string)\n");
+                    }
+                    break;
+                case MULTI:
+                    sb.append('[').append(name).append("] > nt:base\n");
+                    for (int j = 0; j < 10; j++)
+                    {
+                        sb.append("  - ").append(prefix).append(":values").append(j).append(" (string) multiple\n");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown shape " + shape);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the JCR name of the i-th generated type
+     */
+    public static String typeName(String prefix, int i)
+    {
+        return prefix + ":type" + i;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd.bench;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+
+import edu.vt.cs.cnd2xsd.Cnd2XsdConverter;
+import edu.vt.cs.cnd2xsd.ContentExporter;
+import edu.vt.cs.cnd2xsd.ConversionJob;
+import edu.vt.cs.cnd2xsd.NodeTypeDef;
+import edu.vt.cs.cnd2xsd.RepositoryNodeTypeLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures exporting repository content as XML, with and without validating it on the fly.
+ * The content is a two level tree of folders and items in the in-memory repository.
+ * @author adeka
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportBenchmark
+{
+    private static final String PREFIX = "exp";
+
+    private static final String CND = "<" + PREFIX + " = '" + CndGenerator.NAMESPACE + "/" + PREFIX + "'>\n"
+            + "[exp:item] > nt:base\n"
+            + "  - exp:title (string)\n"
+            + "  - exp:size (long)\n"
+            + "  - exp:tags (string) multiple\n"
+            + "[exp:folder] > nt:base\n"
+            + "  + * (exp:item) = exp:item sns\n"
+            + "[exp:content] > nt:base\n"
+            + "  + * (exp:folder) = exp:folder sns\n";
+
+    private static final int ITEMS_PER_FOLDER = 100;
+
+    @State(Scope.Benchmark)
+    public static class Content
+    {
+        @Param({"1000", "100000"})
+        public int nodes;
+
+        @Param({"false", "true"})
+        public boolean validate;
+
+        public RepositoryNodeTypeLoader loader;
+
+        public Node top;
+
+        public ContentExporter exporter;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception
+        {
+            loader = new RepositoryNodeTypeLoader(true);
+            NodeTypeDef[] ntypes = loader.load(new StringReader(CND), "export.cnd", PREFIX);
+            Session session = loader.getSession();
+            top = session.getRootNode().addNode("content", "exp:content");
+            Node folder = null;
+            for (int i = 0; i < nodes; i++)
+            {
+                if (i % ITEMS_PER_FOLDER == 0)
+                {
+                    folder = top.addNode("folder" + i, "exp:folder");
+                }
+                Node item = folder.addNode("item" + i, "exp:item");
+                item.setProperty("exp:title", "Item " + i);
+                item.setProperty("exp:size", (long) i);
+                item.setProperty("exp:tags", new String[] {"a", "b", "c"});
+                if (i % 1000 == 999)
+                {
+                    session.save();
+                }
+            }
+            session.save();
+
+            Map<String, String[]> attrMap = new HashMap<String, String[]>();
+            attrMap.put("nt:base", null);
+            ConversionJob job = new ConversionJob(null, null, null, CndGenerator.NAMESPACE + "/" + PREFIX, PREFIX,
+                    "export", "content").withCompact(true);
+            exporter = new ContentExporter(ntypes, attrMap, job);
+            if (validate)
+            {
+                Cnd2XsdConverter converter = new Cnd2XsdConverter();
+                exporter.setSchema(converter.compile(converter.createSchema(ntypes, attrMap, job)));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            loader.close();
+        }
+    }
+
+    @Benchmark
+    public long export(Content c) throws Exception
+    {
+        return c.exporter.export(c.top, new Workload.NullOutputStream());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import edu.vt.cs.cnd2xsd.NodeDef;
+import edu.vt.cs.cnd2xsd.NodeTypeDef;
+import edu.vt.cs.cnd2xsd.PropertyDef;
+import edu.vt.cs.cnd2xsd.QNameCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Resolves every name a mapping run references, once by parsing each reference as the
+ * mapping loop used to and once through a {@link QNameCache} per run. Run with
+ * <code>-prof gc</code> and compare gc.alloc.rate.norm to see the allocation per run.
+ * @author adeka
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NameBenchmark
+{
+    private static final String XS = "http://www.w3.org/2001/XMLSchema";
+
+    @Benchmark
+    public void parseEveryReference(Workload w, Blackhole bh)
+    {
+        String ns = w.job.getNamespace();
+        for (NodeTypeDef nt : w.ntypes)
+        {
+            bh.consume(new QName(ns, parse(nt.getName()).getLocalPart()));
+            for (String st : nt.getDeclaredSupertypes())
+            {
+                bh.consume(new QName(ns, parse(st).getLocalPart()));
+            }
+            for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+            {
+                bh.consume(parse(nd.getName()));
+                bh.consume(new QName(ns, parse(nd.getRequiredPrimaryTypes()[0]).getLocalPart()));
+            }
+            for (PropertyDef pd : nt.getDeclaredPropertyDefinitions())
+            {
+                bh.consume(parse(pd.getName()));
+                bh.consume(new QName(XS, "string"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void internEveryReference(Workload w, Blackhole bh)
+    {
+        QNameCache names = new QNameCache(w.job.getNamespace());
+        for (NodeTypeDef nt : w.ntypes)
+        {
+            bh.consume(names.targetType(names.localName(nt.getName())));
+            for (String st : nt.getDeclaredSupertypes())
+            {
+                bh.consume(names.targetType(names.localName(st)));
+            }
+            for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+            {
+                bh.consume(names.jcrName(nd.getName()));
+                bh.consume(names.targetType(names.localName(nd.getRequiredPrimaryTypes()[0])));
+            }
+            for (PropertyDef pd : nt.getDeclaredPropertyDefinitions())
+            {
+                bh.consume(names.jcrName(pd.getName()));
+                bh.consume(names.propertyType(pd.getRequiredType()));
+            }
+        }
+    }
+
+    /**
+     * The parsing the mapping loop did for every reference before names were cached.
+     */
+    private static QName parse(String name)
+    {
+        String[] tokens = name.split(":");
+        return new QName(tokens[0], tokens[1]);
+    }
+}
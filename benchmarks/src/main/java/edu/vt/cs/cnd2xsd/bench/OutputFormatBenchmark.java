@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import edu.vt.cs.cnd2xsd.ConversionJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing the XSD file formatted, compact and gzip compressed.
+ * The size of the last file written in each format is printed after the trial.
+ * @author adeka
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OutputFormatBenchmark
+{
+    public enum Format
+    {
+        FORMATTED, COMPACT, GZIP
+    }
+
+    @State(Scope.Benchmark)
+    public static class Output
+    {
+        @Param({"FORMATTED", "COMPACT", "GZIP"})
+        public Format format;
+
+        public File file;
+
+        public ConversionJob job;
+
+        @Setup(Level.Trial)
+        public void setup(Workload w) throws IOException
+        {
+            file = File.createTempFile("bench", ".xsd");
+            job = w.job.forFiles(w.cndFile.getPath(), file.getPath())
+                    .withCompact(format != Format.FORMATTED)
+                    .withGzip(format == Format.GZIP);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            System.out.println(format + ": " + file.length() + " bytes");
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public void writeJaxb(Workload w, Output o) throws Exception
+    {
+        w.converter.write(w.schema, o.file.getPath(), o.job);
+    }
+
+    @Benchmark
+    public void writeStreaming(Workload w, Output o) throws Exception
+    {
+        w.converter.write(w.ntypes, o.job.withStreaming(true));
+    }
+}
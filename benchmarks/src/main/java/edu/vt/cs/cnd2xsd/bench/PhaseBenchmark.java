@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd.bench;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import edu.vt.cs.cnd2xsd.CndModelReader;
+import edu.vt.cs.cnd2xsd.Cnd2XsdConverter;
+import edu.vt.cs.cnd2xsd.NodeTypeDef;
+import edu.vt.cs.cnd2xsd.StreamingSchemaWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3.generated.SchemaElement;
+
+/**
+ * Measures the phases of a conversion that do not need a repository.
+ * @author adeka
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PhaseBenchmark
+{
+    @Benchmark
+    public NodeTypeDef[] parseCnd(Workload w) throws Exception
+    {
+        return CndModelReader.read(new StringReader(w.cnd), "bench.cnd");
+    }
+
+    @Benchmark
+    public Map<String, String[]> loadPropertyMap(Workload w) throws Exception
+    {
+        return Cnd2XsdConverter.loadPropertyMap(w.propmapFile.getPath());
+    }
+
+    @Benchmark
+    public SchemaElement mapSchema(Workload w)
+    {
+        return w.converter.createSchema(w.ntypes, w.attrMap, w.job);
+    }
+
+    @Benchmark
+    public void marshalSchema(Workload w) throws Exception
+    {
+        w.converter.marshal(w.schema, new Workload.NullOutputStream());
+    }
+
+    @Benchmark
+    public void streamSchema(Workload w) throws Exception
+    {
+        new StreamingSchemaWriter(w.ntypes, w.attrMap, w.job).write(new Workload.NullOutputStream());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Repository;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import edu.vt.cs.cnd2xsd.Constants;
+import edu.vt.cs.cnd2xsd.NodeTypeDef;
+import edu.vt.cs.cnd2xsd.RepositoryNodeTypeLoader;
+import org.apache.jackrabbit.core.TransientRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the repository path: booting the TransientRepository and registering a CND.
+ * Every registration uses a fresh namespace prefix so the types are really registered.
+ * Both a persistent and the in-memory repository are measured. A persistent repository
+ * lives in a temporary directory of the trial, ./repository is never touched.
+ * @author adeka
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RepositoryBenchmark
+{
+    /**
+     * A temporary repository home, deleted after the trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Home
+    {
+        public File dir;
+
+        @Setup(Level.Trial)
+        public void create() throws IOException
+        {
+            dir = createHome();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete()
+        {
+            RepositoryBenchmark.delete(dir);
+        }
+    }
+
+    /**
+     * An open repository session and a CND that has not been registered yet.
+     */
+    @State(Scope.Benchmark)
+    public static class Registration
+    {
+        @Param({"10", "1000"})
+        public int size;
+
+        @Param({"FLAT", "DEEP", "WIDE", "MULTI"})
+        public CndGenerator.Shape shape;
+
+        @Param({"false", "true"})
+        public boolean inMemory;
+
+        public RepositoryNodeTypeLoader loader;
+
+        public String cnd;
+
+        public String prefix;
+
+        private int round;
+
+        private File home;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception
+        {
+            if (inMemory)
+            {
+                loader = new RepositoryNodeTypeLoader(true);
+            }
+            else
+            {
+                home = createHome();
+                loader = new RepositoryNodeTypeLoader(home);
+            }
+            //boot the repository outside of the measurement
+            loader.load(new StringReader(CndGenerator.generate(shape, 1, "warm")), "warm.cnd", "warm");
+        }
+
+        @Setup(Level.Invocation)
+        public void nextCnd()
+        {
+            prefix = "b" + System.nanoTime() + "x" + (round++);
+            cnd = CndGenerator.generate(shape, size, prefix);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop()
+        {
+            loader.close();
+            if (home != null)
+            {
+                delete(home);
+                home = null;
+            }
+        }
+    }
+
+    static File createHome() throws IOException
+    {
+        File dir = File.createTempFile("bench", ".repository");
+        if (!dir.delete() || !dir.mkdir())
+        {
+            throw new IOException("Cannot create " + dir);
+        }
+        return dir;
+    }
+
+    static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Benchmark
+    public void bootRepository(Home home) throws Exception
+    {
+        Repository repository = new TransientRepository(home.dir);
+        Session session = repository.login(
+                new SimpleCredentials(Constants.DEFAULT_USERID, Constants.DEFAULT_PASS.toCharArray()));
+        //the last logout shuts the repository down
+        session.logout();
+    }
+
+    @Benchmark
+    public void bootInMemoryRepository() throws Exception
+    {
+        RepositoryNodeTypeLoader loader = new RepositoryNodeTypeLoader(true);
+        loader.start();
+        loader.close();
+    }
+
+    @Benchmark
+    public NodeTypeDef[] registerNodeTypes(Registration r) throws Exception
+    {
+        return r.loader.load(new StringReader(r.cnd), "bench.cnd", r.prefix);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.vt.cs.cnd2xsd.CndModelReader;
+import edu.vt.cs.cnd2xsd.Cnd2XsdConverter;
+import edu.vt.cs.cnd2xsd.ConversionJob;
+import edu.vt.cs.cnd2xsd.NodeTypeDef;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.w3.generated.SchemaElement;
+
+/**
+ * A generated CND together with the intermediate results of each conversion phase,
+ * so every phase can be measured on its own.
+ * @author adeka
+ */
+@State(Scope.Benchmark)
+public class Workload
+{
+    public static final String PREFIX = "bench";
+
+    @Param({"10", "1000", "50000"})
+    public int size;
+
+    @Param({"FLAT", "DEEP", "WIDE", "MULTI"})
+    public CndGenerator.Shape shape;
+
+    public String cnd;
+
+    public File cndFile;
+
+    public File propmapFile;
+
+    public File xsdFile;
+
+    public Map<String, String[]> attrMap;
+
+    public NodeTypeDef[] ntypes;
+
+    public ConversionJob job;
+
+    public Cnd2XsdConverter converter;
+
+    public SchemaElement schema;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        cnd = CndGenerator.generate(shape, size, PREFIX);
+        cndFile = File.createTempFile("bench", ".cnd");
+        write(cndFile, cnd);
+        propmapFile = File.createTempFile("bench", ".txt");
+        write(propmapFile, "nt:base#\nmix:referenceable#\n");
+        xsdFile = File.createTempFile("bench", ".xsd");
+
+        attrMap = new HashMap<String, String[]>();
+        attrMap.put("nt:base", null);
+        attrMap.put("mix:referenceable", null);
+        job = new ConversionJob(cndFile.getPath(), xsdFile.getPath(), propmapFile.getPath(),
+                CndGenerator.NAMESPACE, PREFIX, "root", "type0");
+        converter = new Cnd2XsdConverter();
+        ntypes = CndModelReader.read(new StringReader(cnd), "bench.cnd");
+        schema = converter.createSchema(ntypes, attrMap, job);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        cndFile.delete();
+        propmapFile.delete();
+        xsdFile.delete();
+    }
+
+    private static void write(File file, String content) throws IOException
+    {
+        OutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Stream dropping everything, so only the serialization is measured.
+     */
+    public static class NullOutputStream extends OutputStream
+    {
+        public void write(int b)
+        {
+        }
+
+        public void write(byte[] b, int off, int len)
+        {
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import edu.vt.cs.cnd2xsd.CndWriter;
+import edu.vt.cs.cnd2xsd.ConversionJob;
+import edu.vt.cs.cnd2xsd.NodeTypeDef;
+import edu.vt.cs.cnd2xsd.TypeMapping;
+import edu.vt.cs.cnd2xsd.Xsd2CndConverter;
+import edu.vt.cs.cnd2xsd.XsdModelReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the XSD to CND conversion on the XSDs generated for the workload CNDs,
+ * which stand in for large partner schemas: reading the XSD into node types,
+ * writing the CND and both together.
+ * @author adeka
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class XsdBenchmark
+{
+    /**
+     * The XSD of the workload and the node types read back from it.
+     */
+    @State(Scope.Benchmark)
+    public static class Xsd
+    {
+        public byte[] xsd;
+
+        public NodeTypeDef[] ntypes;
+
+        public ConversionJob job;
+
+        public Xsd2CndConverter converter;
+
+        @Setup(Level.Trial)
+        public void setup(Workload w) throws Exception
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            w.converter.marshal(w.schema, out);
+            xsd = out.toByteArray();
+            System.out.println("XSD: " + xsd.length + " bytes");
+            job = new ConversionJob(null, null, null, null, Workload.PREFIX, null, null);
+            converter = new Xsd2CndConverter();
+            ntypes = new XsdModelReader(Workload.PREFIX, TypeMapping.getDefault())
+                    .read(new ByteArrayInputStream(xsd), "bench.xsd");
+        }
+    }
+
+    @Benchmark
+    public NodeTypeDef[] readXsd(Xsd x) throws Exception
+    {
+        return new XsdModelReader(Workload.PREFIX, TypeMapping.getDefault())
+                .read(new ByteArrayInputStream(x.xsd), "bench.xsd");
+    }
+
+    @Benchmark
+    public void writeCnd(Xsd x) throws Exception
+    {
+        Writer out = new OutputStreamWriter(new Workload.NullOutputStream(), "UTF-8");
+        CndWriter.write(x.ntypes, null, out);
+    }
+
+    @Benchmark
+    public NodeTypeDef[] convert(Xsd x) throws Exception
+    {
+        Writer out = new OutputStreamWriter(new Workload.NullOutputStream(), "UTF-8");
+        return x.converter.convert(new ByteArrayInputStream(x.xsd), "bench.xsd", x.job, out);
+    }
+}
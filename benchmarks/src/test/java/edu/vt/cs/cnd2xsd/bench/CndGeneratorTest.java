@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd.bench;
+
+import java.io.StringReader;
+
+import edu.vt.cs.cnd2xsd.CndNodeTypeLoader;
+import edu.vt.cs.cnd2xsd.NodeTypeDef;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author adeka
+ */
+public class CndGeneratorTest
+{
+    private static NodeTypeDef[] parse(CndGenerator.Shape shape, int size) throws Exception
+    {
+        String cnd = CndGenerator.generate(shape, size, "b");
+        return new CndNodeTypeLoader().load(new StringReader(cnd), shape.name(), "b");
+    }
+
+    @Test
+    public void generatesParsableShapes() throws Exception
+    {
+        for (CndGenerator.Shape shape : CndGenerator.Shape.values())
+        {
+            NodeTypeDef[] ntypes = parse(shape, 5);
+            assertEquals(shape.name(), 5, ntypes.length);
+            assertEquals(CndGenerator.typeName("b", 4), ntypes[4].getName());
+        }
+    }
+
+    @Test
+    public void buildsTheDescribedStructure() throws Exception
+    {
+        NodeTypeDef[] deep = parse(CndGenerator.Shape.DEEP, 3);
+        assertEquals(CndGenerator.typeName("b", 1), deep[2].getDeclaredSupertypes().get(0));
+        NodeTypeDef[] wide = parse(CndGenerator.Shape.WIDE, 4);
+        //a named child per other type and one residual
+        assertEquals(4, wide[0].getDeclaredChildNodeDefinitions().size());
+        NodeTypeDef[] multi = parse(CndGenerator.Shape.MULTI, 1);
+        assertEquals(10, multi[0].getDeclaredPropertyDefinitions().size());
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts several CNDs in one JVM, sharing the converter with its JAXB context.
+ * Jobs run one after the other share the node type loader. Jobs run on several threads
+ * each parse their CND with a {@link CndNodeTypeLoader} of their own: a repository keeps
+ * the first registration of a node type, so jobs registering concurrently would see
+ * each other's types in an order decided by the scheduler.
+ * @author adeka
+ */
+public class BatchConverter
+{
+    private static Logger log = LoggerFactory.getLogger(BatchConverter.class);
+
+    private static final String CND_EXTENSION = ".cnd";
+
+    private static final String XSD_EXTENSION = ".xsd";
+
+    private NodeTypeLoader loader;
+
+    private Cnd2XsdConverter converter;
+
+    private List<Result> results = new ArrayList<Result>();
+
+    public BatchConverter(NodeTypeLoader loader, Cnd2XsdConverter converter)
+    {
+        this.loader = loader;
+        this.converter = converter;
+    }
+
+    /**
+     * Creates a job for every cnd file of a directory, the XSD is written next to it.
+     * @param dir the directory to scan
+     * @param defaults the options shared by all jobs
+     * @return the jobs sorted by file name
+     */
+    public static List<ConversionJob> scanDirectory(File dir, ConversionJob defaults)
+    {
+        List<ConversionJob> jobs = new ArrayList<ConversionJob>();
+        File[] files = dir.listFiles();
+        if (files == null)
+        {
+            return jobs;
+        }
+        Arrays.sort(files);
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (file.isFile() && name.endsWith(CND_EXTENSION))
+            {
+                String base = name.substring(0, name.length() - CND_EXTENSION.length());
+                File xsd = new File(dir, base + XSD_EXTENSION);
+                jobs.add(defaults.forFiles(file.getPath(), xsd.getPath()));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Reads a manifest with one job per line. Every line holds the same options as the
+     * command line; options missing on a line are taken from the defaults. Values are
+     * separated by whitespace, a value containing spaces is put in double or single quotes,
+     * e.g. <code>-fc "my types.cnd"</code>. There are no escapes, so backslashes of Windows
+     * paths are kept. Empty lines and lines starting with # are skipped.
+     * @param manifest the manifest file
+     * @param defaults the options shared by all jobs
+     * @return the jobs in manifest order
+     * @throws IOException if the manifest cannot be read or a line cannot be parsed
+     */
+    public static List<ConversionJob> readManifest(File manifest, ConversionJob defaults) throws IOException
+    {
+        List<ConversionJob> jobs = new ArrayList<ConversionJob>();
+        BufferedReader reader = new BufferedReader(new FileReader(manifest));
+        try
+        {
+            BasicParser parser = new BasicParser();
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNo++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#"))
+                {
+                    continue;
+                }
+                try
+                {
+                    CommandLine cl = parser.parse(Cnd2XsdConverter.createOptions(), split(line));
+                    jobs.add(ConversionJob.fromCommandLine(cl, defaults));
+                }
+                catch (ParseException ex)
+                {
+                    throw new IOException(manifest.getPath() + ":" + lineNo + ": " + ex.getMessage());
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return jobs;
+    }
+
+    /**
+     * Splits a manifest line into words at whitespace outside of quotes, the quotes are removed.
+     * @throws ParseException if a quote is not closed
+     */
+    static String[] split(String line) throws ParseException
+    {
+        List<String> words = new ArrayList<String>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (quote != 0)
+            {
+                if (c == quote)
+                {
+                    quote = 0;
+                }
+                else
+                {
+                    word.append(c);
+                }
+            }
+            else if (Character.isWhitespace(c))
+            {
+                if (word != null)
+                {
+                    words.add(word.toString());
+                    word = null;
+                }
+            }
+            else
+            {
+                if (word == null)
+                {
+                    word = new StringBuilder();
+                }
+                if (c == '"' || c == '\'')
+                {
+                    quote = c;
+                }
+                else
+                {
+                    word.append(c);
+                }
+            }
+        }
+        if (quote != 0)
+        {
+            throw new ParseException("Unclosed quote " + quote);
+        }
+        if (word != null)
+        {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /**
+     * Runs the jobs on a fixed pool of threads. A failing job is reported and does not stop the batch.
+     * With more than one thread the loader of the batch is not used, see the class comment.
+     * @param jobs the jobs to run
+     * @param threads the number of worker threads
+     */
+    public void run(List<ConversionJob> jobs, int threads)
+    {
+        if (threads <= 1)
+        {
+            for (ConversionJob job : jobs)
+            {
+                results.add(runJob(loader, job));
+            }
+            return;
+        }
+        if (!(loader instanceof CndNodeTypeLoader))
+        {
+            log.info("Parsing the CNDs of a parallel batch without the repository");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(jobs.size(), 1)));
+        try
+        {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            for (final ConversionJob job : jobs)
+            {
+                futures.add(pool.submit(new Callable<Result>()
+                {
+                    public Result call()
+                    {
+                        return runJob(new CndNodeTypeLoader(), job);
+                    }
+                }));
+            }
+            //collect in job order so the report does not depend on scheduling
+            for (Future<Result> future : futures)
+            {
+                try
+                {
+                    results.add(future.get());
+                }
+                catch (ExecutionException ex)
+                {
+                    log.error("Conversion failed", ex.getCause());
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private Result runJob(NodeTypeLoader jobLoader, ConversionJob job)
+    {
+        Result result = new Result(job);
+        result.stats = new ConversionStats(job.getCndPath());
+        long start = System.nanoTime();
+        try
+        {
+            converter.convert(jobLoader, job, result.stats);
+            result.success = true;
+        }
+        catch (Exception ex)
+        {
+            log.error("Conversion of " + job.getCndPath() + " failed", ex);
+            result.error = ex.getMessage();
+        }
+        result.totalNanos = System.nanoTime() - start;
+        result.loadNanos = result.stats.getNanos(ConversionStats.Phase.STARTUP)
+                + result.stats.getNanos(ConversionStats.Phase.REGISTRATION);
+        return result;
+    }
+
+    /**
+     * Prints the per file timings of the jobs run so far.
+     */
+    public void printReport(PrintStream out)
+    {
+        long total = 0;
+        int failed = 0;
+        out.println(String.format("%-50s %10s %10s %10s  %s", "cnd", "load ms", "convert ms", "total ms", "status"));
+        for (Result r : results)
+        {
+            total += r.totalNanos;
+            if (!r.success)
+            {
+                failed++;
+            }
+            out.println(String.format("%-50s %10.1f %10.1f %10.1f  %s", r.job.getCndPath(),
+                    r.loadNanos / 1e6, (r.totalNanos - r.loadNanos) / 1e6, r.totalNanos / 1e6,
+                    r.success ? "ok" : "failed: " + r.error));
+        }
+        out.println(String.format("%d files, %d failed, %.1f ms", results.size(), failed, total / 1e6));
+    }
+
+    public List<Result> getResults()
+    {
+        return results;
+    }
+
+    /**
+     * Outcome and timings of one job.
+     */
+    public static class Result
+    {
+        private ConversionJob job;
+
+        private boolean success;
+
+        private String error;
+
+        private long loadNanos;
+
+        private long totalNanos;
+
+        private ConversionStats stats;
+
+        Result(ConversionJob job)
+        {
+            this.job = job;
+        }
+
+        public ConversionJob getJob()
+        {
+            return job;
+        }
+
+        public boolean isSuccess()
+        {
+            return success;
+        }
+
+        public String getError()
+        {
+            return error;
+        }
+
+        public long getLoadNanos()
+        {
+            return loadNanos;
+        }
+
+        public long getTotalNanos()
+        {
+            return totalNanos;
+        }
+
+        /**
+         * @return the per phase timings and counts, partial if the job failed
+         */
+        public ConversionStats getStats()
+        {
+            return stats;
+        }
+    }
+}
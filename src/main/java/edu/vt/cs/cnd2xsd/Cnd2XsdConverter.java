@@ -16,42 +16,59 @@
  */
 package edu.vt.cs.cnd2xsd;
 
-import java.io.FileInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.math.BigInteger;
-import java.util.HashMap;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
-import javax.jcr.Credentials;
 import javax.jcr.LoginException;
-import javax.jcr.PropertyType;
-import javax.jcr.Repository;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
-import javax.jcr.SimpleCredentials;
 import javax.jcr.UnsupportedRepositoryOperationException;
-import javax.jcr.Value;
 import javax.jcr.nodetype.InvalidNodeTypeDefinitionException;
-import javax.jcr.nodetype.NodeDefinition;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.nodetype.NodeTypeExistsException;
 import javax.jcr.nodetype.NodeTypeIterator;
 import javax.jcr.nodetype.NodeTypeManager;
-import javax.jcr.nodetype.PropertyDefinition;
+import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
-import org.apache.jackrabbit.core.TransientRepository;
-import org.w3.generated.FormChoice;
-import org.w3.generated.OpenAttrs;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
 import org.w3.generated.SchemaElement;
 //import org.w3.generated.TopLevelElement;
-import javax.xml.namespace.QName;
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.HelpFormatter;
@@ -61,11 +78,7 @@ import org.apache.jackrabbit.commons.cnd.CndImporter;
 import org.apache.jackrabbit.commons.cnd.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3.generated.Attribute;
-import org.w3.generated.ComplexType;
-import org.w3.generated.ComplexTypeElement;
-import org.w3.generated.ElementElement;
-import org.w3.generated.ExplicitGroup;
+import org.xml.sax.SAXException;
 
 /**
  *
@@ -74,74 +87,75 @@ import org.w3.generated.ExplicitGroup;
 public class Cnd2XsdConverter
 {
     private static Logger log = LoggerFactory.getLogger(Cnd2XsdConverter.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     /**
-     * map of in-built nodetype vs the properties associated with them.
-     * Overwrites the default behavior
+     * Buffer size of the XSD files, large enough to write most schemas in a few system calls.
      */
-    private Map<String, String[]> attrMap ;
-
-    private NodeType[] ntypes;
+    private static final int BUFFER_SIZE = 64 * 1024;
 
+    /**
+     * Exit status of -check when a file was rewritten. Unchanged files exit with 0,
+     * errors with 1 as for every uncaught exception.
+     */
+    public static final int EXIT_CHANGED = 3;
 
     private static final String MAINCLI = "java -jar cnd2xsd-<version>.jar";
 
-    private String namespace;
-    
-    private String root;
+    private final JAXBContext context;
 
-    private String rootType;
-    
+    /**
+     * Marshallers are not thread safe, every thread gets its own one from the shared context.
+     */
+    private final ThreadLocal<Marshaller> marshallers = new ThreadLocal<Marshaller>();
 
+    private final ThreadLocal<Marshaller> compactMarshallers = new ThreadLocal<Marshaller>();
 
+    private final ThreadLocal<Unmarshaller> unmarshallers = new ThreadLocal<Unmarshaller>();
 
-    private void loadPropertyMap(String path)
+    /**
+     * Schema factories are not thread safe either.
+     */
+    private final ThreadLocal<SchemaFactory> schemaFactories = new ThreadLocal<SchemaFactory>();
+
+    public Cnd2XsdConverter() throws JAXBException
     {
-        FileInputStream stream = null;
-        try
-        {
-            stream = new FileInputStream(path);
-            attrMap = new HashMap<String, String[]>();
-            byte[] buffer = new byte[512];
-            StringBuffer stBuffer = new StringBuffer();
-            while(stream.available()>0){
-                int n = stream.read(buffer, 0, 512);
-                stBuffer.append(new String(buffer,0,n));
-            }
-            String value = stBuffer.substring(0);
-            //now lets split the value into multiple lines
-            String[] lines = value.split("\n");
-            log.debug("Buffer contains :{} lines", lines.length);
-
-            for(String line: lines){
-                String[] kvs = line.split("#");
-                String key = kvs[0];
-                String[] values = null;
-                if(kvs.length > 1){
-                 values = kvs[1].split(",");
-                 log.debug("Key: {} Value:{}",key, kvs[1] );
-                }
-                attrMap.put(key, values);
+        this(JAXBContext.newInstance(SchemaElement.class));
+    }
 
-            }
+    /**
+     * @param context the context used for marshalling, may be shared between converters
+     */
+    public Cnd2XsdConverter(JAXBContext context)
+    {
+        this.context = context;
+    }
 
-        }
-        catch (IOException ex)
-        {
-            log.error("Exception caught:", ex);
-        }
-        
-        finally
+    /**
+     * Loads the map of in-built node types vs the attributes associated with them.
+     * @param path the property map file, may be null for an empty map
+     * @return the unmodifiable map, entries without attributes map to null
+     * @throws IOException if the file cannot be read, a {@link PropertyMapException} if it is not valid
+     * @see PropertyMapLoader
+     */
+    public static Map<String, String[]> loadPropertyMap(String path) throws IOException
+    {
+        if (path == null)
         {
-            try
-            {
-                stream.close();
-            }
-            catch (IOException ex)
-            {
-                log.error("Exception caught:", ex);
-            }
+            return Collections.emptyMap();
         }
+        return PropertyMapLoader.load(new File(path));
+    }
 
+    /**
+     * Loads the property map from a stream, the stream is left open.
+     * @param stream the property map content
+     * @return the unmodifiable map, entries without attributes map to null
+     */
+    public static Map<String, String[]> loadPropertyMap(InputStream stream) throws IOException
+    {
+        return PropertyMapLoader.load(stream, "stream");
     }
 
     /**
@@ -155,15 +169,35 @@ public class Cnd2XsdConverter
     public static NodeType[] RegisterCustomNodeTypes(Session session, String cndFileName, String prefix)
             throws RepositoryException, IOException
     {
-        FileReader reader = null;
+        FileReader reader = new FileReader(cndFileName);
+        try
+        {
+            return RegisterCustomNodeTypes(session, reader, prefix);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Registers custom NodeType definitions read from a CND source to the RSR determined by the session.
+     * @param session the RSR session
+     * @param reader the CND source, left open
+     * @param prefix the namespace prefix used when the node types are already registered
+     * @return the array of registered NodeTypes in the RSR
+     * @throws RepositoryException
+     * @throws IOException
+     */
+    public static NodeType[] RegisterCustomNodeTypes(Session session, Reader reader, String prefix)
+            throws RepositoryException, IOException
+    {
         try
         {
-             reader = new FileReader(cndFileName);
-  
             NodeType[] newNodeTypes = CndImporter.registerNodeTypes(reader, session);
             for (NodeType nt : newNodeTypes)
             {
-                log.debug("Registered: " + nt.getName());
+                log.debug("Registered: {}", nt.getName());
             }
             if(newNodeTypes == null || newNodeTypes.length ==0 )
             {
@@ -173,7 +207,7 @@ public class Cnd2XsdConverter
                 while(nit.hasNext()){
                     NodeType nt = nit.nextNodeType();
                     if(nt.getName().contains(prefix)){
-                        log.debug("node type :"+ nt.getName());
+                        log.debug("node type :{}", nt.getName());
                         nlist.add(nt);
                     }
                 }
@@ -197,16 +231,95 @@ public class Cnd2XsdConverter
         catch (ParseException ex)
         {
             ex.printStackTrace();
-        }finally{
-            if(reader != null){
-                reader.close();
-            }
         }
         return null;
 
 
     }
 
+    /**
+     * Creates the command line options, shared by the batch manifest parser.
+     * @return the options understood by main
+     */
+    @SuppressWarnings("static-access")
+    static Options createOptions()
+    {
+        Options opt = new Options();
+
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Path for the input cnd file").create("fc"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Path for properties map.").create("fp") );
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Path for generating XML schema.").create("fx") );
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Prints this list.").create("help"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("The namespace for the XSD.").create("ns"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("The namespace prefix.").create("nsp"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("The root element in the XSD.").create("r"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("The root element type.").create("rtype"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Parse the cnd directly without starting a repository.").create("direct"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Converts all cnd files of a directory, or the jobs listed in a manifest file " +
+                "(one line of -fc/-fx/-fp/-ns/-nsp/-r/-rtype options per job, " +
+                "values containing spaces in double or single quotes).").create("batch"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Number of threads converting the files of a batch, 1 by default. " +
+                "With more than one thread every file is parsed without the repository.").create("threads"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Write the XSD incrementally through StAX instead of building it with JAXB.").create("stream"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Prints the time and allocated bytes of every phase and the number of generated items.").create("stats"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Writes the stats as JSON to the given file.").create("statsfile"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Directory caching the generated XSDs. Unchanged inputs reuse the cached XSD, " +
+                "changed node types only regenerate their complex types.").create("cache"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Keeps running and regenerates the XSD whenever the cnd or the properties map " +
+                "is saved. Always parses the cnd directly.").create("watch"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Serves conversions on the given loopback port until killed, " +
+                "-threads requests are converted at a time. Always parses the cnd directly. Any local user can connect.")
+                .create("server"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Sends the conversion to the server on the given loopback port, " +
+                "converts in process if no server is running.").create("client"));
+        opt.addOption(OptionBuilder.hasOptionalArg().isRequired(false).
+                withDescription("Writes one XSD per namespace prefix next to the -fx file, which includes them. " +
+                "Prefixes may be grouped into one file with prefix=group pairs, e.g. nt=jcr,mix=jcr.").create("split"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Merges structurally identical complex types into one shared type.").create("dedup"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Writes the XSD without line breaks and indentation.").create("compact"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Gzip compresses the XSD, the -fx file name is kept as given.").create("gzip"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Registers the cnd with a repository kept in memory instead of ./repository.").create("memrepo"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Converts only the node types reachable from the -rtype type through supertypes, " +
+                "child nodes and multi-valued properties.").create("reach"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Orders the complex and simple types and the attributes of each complex type " +
+                "by name, so the XSD does not depend on the order of the cnd.").create("sort"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Rewrites the XSD only if its content changed and exits with " + EXIT_CHANGED +
+                " if it did, 0 otherwise.").create("check"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Exports the repository subtree at the given path as XML conforming to the " +
+                "schema of the cnd, instead of writing the XSD. Always registers the cnd with the repository.").create("export"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Path for the XML written by -export.").create("fo"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Validates the XML of -export against the schema while it is written.").create("validate"));
+        return opt;
+    }
+
     /**
      * Usage: Cnd2Xsd [path to source cnd] [path to write the xsd]
      * @param args
@@ -215,450 +328,811 @@ public class Cnd2XsdConverter
      * @throws IOException
      * @throws JAXBException
      */
-    @SuppressWarnings("static-access")
-    public static void main(String[] args) throws LoginException, RepositoryException, IOException, JAXBException, org.apache.commons.cli.ParseException
+    public static void main(String[] args) throws LoginException, RepositoryException, IOException, JAXBException, XMLStreamException, ParseException, org.apache.commons.cli.ParseException, SAXException
     {
+        Options opt = createOptions();
+
+        //create the basic parser
+        BasicParser parser = new BasicParser();
+        CommandLine cl = parser.parse(opt, args);
+        HelpFormatter f = new HelpFormatter();
+        //check if we have any leftover args
+        if (cl.getArgs().length != 0 || args.length == 0) {
+            f.printHelp(MAINCLI, opt);
+            return;
+        }
 
-        Session session = null;
-        Cnd2XsdConverter converter = new Cnd2XsdConverter();
+        if (cl.hasOption("help") || (cl.hasOption("export") && !cl.hasOption("fo"))) {
+            f.printHelp(MAINCLI, opt);
+            return;
+        }
 
+        ConversionJob job = ConversionJob.fromCommandLine(cl, null);
+        //the server answers with a single XSD, which the client always writes
+        if (cl.hasOption("client") && !cl.hasOption("batch") && !cl.hasOption("check") && !cl.hasOption("export")
+                && job.getSplit() == null)
+        {
+            if (new ConversionClient(Integer.parseInt(cl.getOptionValue("client"))).convert(job))
+            {
+                return;
+            }
+            log.info("No conversion server running, converting in process");
+        }
+        if (cl.hasOption("server"))
+        {
+            int threads = Integer.parseInt(cl.getOptionValue("threads",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            //every request is parsed without the repository
+            new ConversionServer(new Cnd2XsdConverter(), threads)
+                    .serve(Integer.parseInt(cl.getOptionValue("server")));
+            return;
+        }
+        //a repository keeps the first registration of a node type, so watching needs the parser
+        boolean changed = false;
+        //the exported content lives in the repository
+        NodeTypeLoader loader = (cl.hasOption("direct") || cl.hasOption("watch")) && !cl.hasOption("export") ?
+                new CndNodeTypeLoader() : new RepositoryNodeTypeLoader(cl.hasOption("memrepo"));
         try
         {
-            Options opt = new Options();
-
-            opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
-                    withDescription("Path for the input cnd file").create("fc"));
-            opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
-                    withDescription("Path for properties map.").create("fp") );
-            opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
-                    withDescription("Path for generating XML schema.").create("fx") );
-            opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
-                    withDescription("Prints this list.").create("help"));
-            opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
-                    withDescription("The namespace for the XSD.").create("ns"));
-            opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
-                    withDescription("The namespace prefix.").create("nsp"));
-            opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
-                    withDescription("The root element in the XSD.").create("r"));                   
-            opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
-                    withDescription("The root element type.").create("rtype"));
-
-            //create the basic parser
-            BasicParser parser = new BasicParser();
-            CommandLine cl = parser.parse(opt, args);
-            HelpFormatter f = new HelpFormatter();
-            //check if we have any leftover args
-            if (cl.getArgs().length != 0 || args.length == 0) {                
-                f.printHelp(MAINCLI, opt);
+            if (cl.hasOption("batch"))
+            {
+                File source = new File(cl.getOptionValue("batch"));
+                List<ConversionJob> jobs = source.isDirectory() ?
+                        BatchConverter.scanDirectory(source, job) : BatchConverter.readManifest(source, job);
+                BatchConverter batch = new BatchConverter(loader, new Cnd2XsdConverter());
+                int threads = Integer.parseInt(cl.getOptionValue("threads", "1"));
+                batch.run(jobs, threads);
+                batch.printReport(System.out);
+                List<ConversionStats> stats = new ArrayList<ConversionStats>();
+                for (BatchConverter.Result r : batch.getResults())
+                {
+                    if (r.getStats() != null)
+                    {
+                        stats.add(r.getStats());
+                        if (cl.hasOption("stats"))
+                        {
+                            r.getStats().print(System.out);
+                        }
+                    }
+                }
+                if (cl.hasOption("statsfile"))
+                {
+                    writeStats(ConversionStats.toJson(stats), cl.getOptionValue("statsfile"));
+                }
                 return;
             }
 
-            if (cl.hasOption("help")) {
-                f.printHelp(MAINCLI, opt);
+            Cnd2XsdConverter converter = new Cnd2XsdConverter();
+            if (cl.hasOption("export"))
+            {
+                converter.export((RepositoryNodeTypeLoader) loader, job, cl.getOptionValue("export"),
+                        cl.getOptionValue("fo"), cl.hasOption("validate"));
                 return;
             }
-
-            String cndFilePath = cl.getOptionValue("fc");
-            String xsdFilePath = cl.getOptionValue("fx");
-            String propmapPath = cl.getOptionValue("fp");
-            String ns = cl.getOptionValue("ns");
-            String nsPrefix = cl.getOptionValue("nsp");
-            String rt = cl.getOptionValue("r");
-            String rtype = cl.getOptionValue("rtype");
-
-            converter.init(cndFilePath, propmapPath, ns, nsPrefix, rt, rtype );
-            FileOutputStream fout = new FileOutputStream(xsdFilePath);
-            converter.convert(fout);
-
+            if (cl.hasOption("watch"))
+            {
+                new SchemaWatcher(converter, loader, job, System.out).run();
+                return;
+            }
+            ConversionStats stats = new ConversionStats(job.getCndPath());
+            if (cl.hasOption("check"))
+            {
+                changed = converter.check(loader, job, stats);
+            }
+            else
+            {
+                converter.convert(loader, job, stats);
+            }
+            if (cl.hasOption("stats"))
+            {
+                stats.print(System.out);
+            }
+            if (cl.hasOption("statsfile"))
+            {
+                writeStats(stats.toJson(), cl.getOptionValue("statsfile"));
+            }
         }
         finally
         {
-            if (session != null)
-            {
-                session.save();
-                session.logout();
-            }
+            loader.close();
+        }
+        if (changed)
+        {
+            System.exit(EXIT_CHANGED);
         }
     }
 
-    private  void convert(OutputStream stream)
+    private static void writeStats(String json, String path) throws IOException
     {
-        OutputStream fout = stream;
+        Writer out = new OutputStreamWriter(new FileOutputStream(path), "UTF-8");
         try
         {
+            out.write(json);
+            out.write("\n");
+        }
+        finally
+        {
+            out.close();
+        }
+    }
 
+    /**
+     * Converts the CND of a job and writes the XSD to the file of the job.
+     * The converter keeps no state of the job, so jobs may run concurrently.
+     * @param loader turns the CND into node type definitions
+     * @param job the files and options of the conversion
+     * @return the timings and counts of the conversion
+     */
+    public ConversionStats convert(NodeTypeLoader loader, ConversionJob job)
+            throws RepositoryException, IOException, ParseException, JAXBException, XMLStreamException
+    {
+        ConversionStats stats = new ConversionStats(job.getCndPath());
+        convert(loader, job, stats);
+        return stats;
+    }
 
-            SchemaElement schemaRoot = new SchemaElement();
-
-            schemaRoot.setElementFormDefault(FormChoice.QUALIFIED);
-            schemaRoot.setTargetNamespace(this.namespace);
-            JAXBContext jc = JAXBContext.newInstance(SchemaElement.class);
-            Marshaller m = jc.createMarshaller();
-            List<OpenAttrs> rootAttrList = schemaRoot.getIncludesAndImportsAndRedefines();
-            ElementElement rootElement = new ElementElement();
-            QName qname = new QName(this.namespace, this.rootType);
-            rootElement.setType(qname);
-            rootElement.setName(this.root);
-            rootAttrList.add(rootElement);
-
-            //the first level nodes that are children of rsrRoot are those nodes that
-            //do not have any parent nodes in the cnd.
-  
-            for (NodeType nt : ntypes)
-            {
-
-                log.debug("NodeType:" + nt.getName());
-
-                //check if we already have that node - if we have then update it
-
-                QName name = getQualifiedName(nt.getName());
-
-                ComplexTypeElement ctype = (ComplexTypeElement) getComplexType(rootAttrList, name.getLocalPart(),
-                        attrMap.containsKey(nt.getName()) ? attrMap.get(nt.getName()) : null);
+    /**
+     * Converts the CND of a job, going through the cache if the job has a cache directory.
+     * @param loader turns the CND into node type definitions
+     * @param job the files and options of the conversion
+     * @param stats receives the timings and counts of the conversion
+     */
+    public void convert(NodeTypeLoader loader, ConversionJob job, ConversionStats stats)
+            throws RepositoryException, IOException, ParseException, JAXBException, XMLStreamException
+    {
+        if (job.getCacheDir() != null && !rewritesSchema(job) && !job.isGzip())
+        {
+            new ConversionCache(new File(job.getCacheDir())).convert(this, loader, job, stats);
+            return;
+        }
+        if (job.getCacheDir() != null)
+        {
+            log.info("Split, deduplicated or compressed schemas are not cached, converting {}", job.getCndPath());
+        }
+        NodeTypeDef[] ntypes = loadNodeTypes(loader, job, stats);
+        write(ntypes, job, stats);
+    }
 
-                for (NodeType pt : nt.getDeclaredSupertypes())
-                {
-                    log.debug("  DeclaredSuperType:" + pt.getName());
-                    //based on the supertypes we will have to make decisions
-                    if (attrMap.containsKey(pt.getName()))
-                    {
-                        //check if we have to create a node
-                        String[] attrs = attrMap.get(pt.getName());
-                        if (attrs != null)
-                        {
-                            //get the qualified name
-                            QName ename = getQualifiedName(pt.getName());
-                            //create a complex type
-                            //check if the complex type already there in the rootAttrList
-                            ComplexType ctf = findComplexType(rootAttrList, ename.getLocalPart());
-
-                            if (ctf == null)
-                            {
-                                ctf = new ComplexTypeElement();
-                                ctf.setName(ename.getLocalPart());
-                                //add the attributes
-                                for (String attr : attrs)
-                                {
-                                    Attribute attribute = new Attribute();
-                                    QName type = new QName(Constants.XML_NAMESPACE, Constants.STRING);
-                                    attribute.setType(type);
-                                    attribute.setName(attr);
-                                    ctf.getAttributesAndAttributeGroups().add(attribute);
-                                }
-
-                                //add this complex type to the attribute list of the root element
-                                rootAttrList.add(ctf);
-                            }
-
-                            //create an element of the above complex type and add as element
-                            ElementElement element = new ElementElement();
-                            element.setName(ename.getLocalPart());
-                            element.setType(new QName(this.namespace, ctf.getName()));
-                            element.setMinOccurs(BigInteger.ONE);
-                            element.setMaxOccurs("1");
-                            //element.setType(new QName(ctf.));
-                            //now add this element to the top level complex type's sequence
-                            ctype.getSequence().getElementsAndGroupsAndAlls().add(element);
+    /**
+     * Loads the node types of a job.
+     * @param loader turns the CND into node type definitions
+     * @param job the files and options of the conversion
+     * @return the node type definitions
+     * @throws IOException if no node types were loaded
+     */
+    public NodeTypeDef[] loadNodeTypes(NodeTypeLoader loader, ConversionJob job)
+            throws RepositoryException, IOException, ParseException
+    {
+        return loadNodeTypes(loader, job, new ConversionStats(job.getCndPath()));
+    }
 
+    /**
+     * Loads the node types of a job, recording the startup of the loader and the registration.
+     * @param loader turns the CND into node type definitions
+     * @param job the files and options of the conversion
+     * @param stats receives the timings and the number of node types
+     * @return the node type definitions
+     * @throws IOException if no node types were loaded
+     */
+    public NodeTypeDef[] loadNodeTypes(NodeTypeLoader loader, ConversionJob job, ConversionStats stats)
+            throws RepositoryException, IOException, ParseException
+    {
+        stats.start(ConversionStats.Phase.STARTUP);
+        try
+        {
+            loader.start();
+        }
+        finally
+        {
+            stats.stop();
+        }
+        FileReader reader = new FileReader(job.getCndPath());
+        try
+        {
+            return register(loader, reader, job.getCndPath(), job, stats);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
 
-                        }
-                    }
-                    //the supertype is not a pre-define type - we then have to add it as an element
-                    else
-                    {
+    /**
+     * Loads the node types of a CND read from any source, the reader is left open.
+     * @param loader turns the CND into node type definitions
+     * @param cnd the CND content
+     * @param systemId the name of the CND used in error messages
+     * @param job the options of the conversion, its files are not used
+     * @return the node type definitions
+     * @throws IOException if no node types were loaded
+     */
+    public NodeTypeDef[] loadNodeTypes(NodeTypeLoader loader, Reader cnd, String systemId, ConversionJob job)
+            throws RepositoryException, IOException, ParseException
+    {
+        ConversionStats stats = new ConversionStats(systemId);
+        stats.start(ConversionStats.Phase.STARTUP);
+        try
+        {
+            loader.start();
+        }
+        finally
+        {
+            stats.stop();
+        }
+        return register(loader, cnd, systemId, job, stats);
+    }
 
-                        QName qn = getQualifiedName(pt.getName());
-                        ComplexType ctf = getComplexType(rootAttrList, qn.getLocalPart(),
-                                attrMap.containsKey(nt.getName()) ? attrMap.get(nt.getName()) : null);
+    private NodeTypeDef[] register(NodeTypeLoader loader, Reader cnd, String systemId, ConversionJob job,
+            ConversionStats stats) throws RepositoryException, IOException, ParseException
+    {
+        stats.start(ConversionStats.Phase.REGISTRATION);
+        try
+        {
+            NodeTypeDef[] ntypes = job.isReach() ?
+                    loader.load(cnd, systemId, job.getPrefix(), job.getRootType()) :
+                    loader.load(cnd, systemId, job.getPrefix());
+            stats.setNodeTypes(ntypes == null ? 0 : ntypes.length);
+            if (ntypes == null)
+            {
+                throw new IOException("No node types registered from " + systemId);
+            }
+            return ntypes;
+        }
+        finally
+        {
+            stats.stop();
+        }
+    }
 
-                        //create an element of the above type and add as element
-                        ElementElement element = new ElementElement();
-                        element.setName(qn.getLocalPart());
-                        element.setType(new QName(this.namespace, ctf.getName()));
-                        element.setMinOccurs(BigInteger.ONE);
-                        element.setMaxOccurs("1");
+    /**
+     * Converts a CND into a schema model without touching the file system.
+     * The converter keeps no state of the call, so calls may run concurrently.
+     * @param loader turns the CND into node type definitions
+     * @param cnd the CND content, left open
+     * @param systemId the name of the CND used in error messages
+     * @param attrMap the property map, see {@link #loadPropertyMap(InputStream)}
+     * @param job the options of the conversion, its files are not used
+     * @return the schema
+     */
+    public SchemaElement createSchema(NodeTypeLoader loader, Reader cnd, String systemId,
+            Map<String, String[]> attrMap, ConversionJob job) throws RepositoryException, IOException, ParseException
+    {
+        return createSchema(loadNodeTypes(loader, cnd, systemId, job), attrMap, job);
+    }
 
-                        //element.setType(new QName(ctf.));
-                        //now add this element to the top level complex type's sequence
-                        ctype.getSequence().getElementsAndGroupsAndAlls().add(element);
+    /**
+     * Converts a UTF-8 encoded CND into a schema model, the streams are left open.
+     * @param loader turns the CND into node type definitions
+     * @param cnd the CND content
+     * @param propmap the property map content, may be null for an empty map
+     * @param job the options of the conversion, the CND path is only used as the name in error messages
+     * @return the schema
+     */
+    public SchemaElement createSchema(NodeTypeLoader loader, InputStream cnd, InputStream propmap, ConversionJob job)
+            throws RepositoryException, IOException, ParseException
+    {
+        String systemId = systemId(job);
+        Map<String, String[]> attrMap = propmap == null ? Collections.<String, String[]>emptyMap()
+                : PropertyMapLoader.load(propmap, systemId + " property map");
+        return createSchema(loader, new InputStreamReader(cnd, UTF8.newDecoder()), systemId, attrMap, job);
+    }
 
-                    }
-                }
+    /**
+     * Converts a UTF-8 encoded CND held in a buffer into a schema model. The remaining
+     * bytes of the buffers are decoded in place, their positions are not changed.
+     * @param loader turns the CND into node type definitions
+     * @param cnd the CND content
+     * @param propmap the property map content, may be null for an empty map
+     * @param job the options of the conversion, the CND path is only used as the name in error messages
+     * @return the schema
+     */
+    public SchemaElement createSchema(NodeTypeLoader loader, ByteBuffer cnd, ByteBuffer propmap, ConversionJob job)
+            throws RepositoryException, IOException, ParseException
+    {
+        String systemId = systemId(job);
+        Map<String, String[]> attrMap = propmap == null ? Collections.<String, String[]>emptyMap()
+                : PropertyMapLoader.load(propmap, systemId + " property map");
+        CharBuffer text = UTF8.newDecoder().decode(cnd.duplicate());
+        Reader reader = new CharArrayReader(text.array(), text.arrayOffset() + text.position(), text.remaining());
+        return createSchema(loader, reader, systemId, attrMap, job);
+    }
 
-                for (NodeDefinition nd : nt.getDeclaredChildNodeDefinitions())
-                {
-                    log.debug("  Declared ChildNode Definition:" + nd.getName());
-                    //check default primary type
-                    NodeType defaultNT = nd.getDefaultPrimaryType();
-                    if (defaultNT == null)
-                    {
-                        log.debug("Default Primary Type for the node:" + nd.getName() + " is null");
-                        //look for the primary type
-                        NodeType[] nts = nd.getRequiredPrimaryTypes();
-                        if (ntypes == null)
-                        {
-                            log.debug("No required primary type for node:" + nd.getName());
-                        }
-                        else
-                        {
-                            defaultNT = nts[0];
-                            log.debug("Assuming first primary  type:" +
-                                    defaultNT.getName() + " for node:" + nd.getName());
-                        }
+    /**
+     * Converts a CND and writes the XSD to a channel, through the StAX backend if the
+     * job is streaming and through JAXB otherwise. The reader and the channel are left open.
+     * @param loader turns the CND into node type definitions
+     * @param cnd the CND content
+     * @param systemId the name of the CND used in error messages
+     * @param attrMap the property map, see {@link #loadPropertyMap(InputStream)}
+     * @param job the options of the conversion, its files are not used
+     * @param out receives the XSD
+     */
+    public void convert(NodeTypeLoader loader, Reader cnd, String systemId, Map<String, String[]> attrMap,
+            ConversionJob job, WritableByteChannel out)
+            throws RepositoryException, IOException, ParseException, JAXBException, XMLStreamException
+    {
+        NodeTypeDef[] ntypes = loadNodeTypes(loader, cnd, systemId, job);
+        OutputStream stream = Channels.newOutputStream(out);
+        write(ntypes, attrMap, job, stream);
+        stream.flush();
+    }
 
-                    }
-                    log.debug("  Default Primary Type Name:" + defaultNT.getName());
-                    ElementElement element = new ElementElement();
-                    if (nd.getName().equals("*"))
-                    {
-                        QName qn = getQualifiedName(defaultNT.getName());
-                        ComplexType ct = getComplexType(rootAttrList, qn.getLocalPart(),
-                                attrMap.containsKey(nt.getName()) ? attrMap.get(nt.getName()) : null);
-
-                        //QName ename = getQualifiedName(ct.getName());
-                        element.setName(ct.getName());
-                        element.setType(new QName(this.namespace, ct.getName()));
-                        element.setMinOccurs(nd.isMandatory() ? BigInteger.ONE : BigInteger.ZERO);
-                        //add an attribute called nodename so that it can be used to identify the node
-                        QName type = new QName(Constants.XML_NAMESPACE, Constants.STRING);
-                        Attribute attribute = new Attribute();
-                        attribute.setType(type);
-                        attribute.setName("nodename");
-                        ct.getAttributesAndAttributeGroups().add(attribute);
-
-                        if (nd.allowsSameNameSiblings())
-                        {
-                            element.setMaxOccurs(Constants.UNBOUNDED);
-                        }
+    private static String systemId(ConversionJob job)
+    {
+        return job.getCndPath() == null ? "stream" : job.getCndPath();
+    }
 
-                    }
-                    else
-                    {
+    /**
+     * Maps node types onto an XML schema using the property map of the job.
+     * @param ntypes the node type definitions
+     * @param job the options of the conversion
+     * @return the schema
+     */
+    public SchemaElement createSchema(NodeTypeDef[] ntypes, ConversionJob job) throws IOException
+    {
+        return createSchema(ntypes, loadPropertyMap(job.getPropmapPath()), job);
+    }
 
-                        QName qn = getQualifiedName(defaultNT.getName());
-                        ComplexType ct = getComplexType(rootAttrList, qn.getLocalPart(),
-                                attrMap.containsKey(nt.getName()) ? attrMap.get(nt.getName()) : null);
+    /**
+     * Maps node types onto an XML schema.
+     * @param ntypes the node type definitions
+     * @param attrMap the property map, see {@link #loadPropertyMap(String)}
+     * @param job the options of the conversion
+     * @return the schema
+     */
+    public SchemaElement createSchema(NodeTypeDef[] ntypes, Map<String, String[]> attrMap, ConversionJob job)
+    {
+        SchemaElement schema = new SchemaMapper(ntypes, attrMap, job).map();
+        if (job.isDedup())
+        {
+            new SchemaDeduplicator(job.getNamespace()).dedup(schema);
+        }
+        if (job.isSort())
+        {
+            SchemaOrder.sort(schema.getIncludesAndImportsAndRedefines());
+        }
+        return schema;
+    }
 
-                        QName ename = getQualifiedName(nd.getName());
-                        element.setName(ename.getLocalPart());
-                        element.setType(new QName(this.namespace, ct.getName()));
-                        element.setMinOccurs(nd.isMandatory() ? BigInteger.ONE : BigInteger.ZERO);
+    /**
+     * @return true if the XSD has to be built as a model, the streaming writer can neither change nor reorder it
+     */
+    private static boolean needsModel(ConversionJob job)
+    {
+        return !job.isStreaming() || rewritesSchema(job) || job.isSort();
+    }
 
-                        if (nd.allowsSameNameSiblings())
-                        {
-                            element.setMaxOccurs(Constants.UNBOUNDED);
-                        }
+    /**
+     * @return true if the schema is changed after mapping, which the streaming writer and the cache cannot do
+     */
+    private static boolean rewritesSchema(ConversionJob job)
+    {
+        return job.getSplit() != null || job.isDedup();
+    }
 
-                    }
-                    ctype.getSequence().getElementsAndGroupsAndAlls().add(element);
+    /**
+     * Writes the schema of the node types to the file of the job, through
+     * the StAX backend if the job is streaming and through JAXB otherwise.
+     * @param ntypes the node type definitions
+     * @param job the files and options of the conversion
+     */
+    public void write(NodeTypeDef[] ntypes, ConversionJob job) throws IOException, JAXBException, XMLStreamException
+    {
+        write(ntypes, job, new ConversionStats(job.getCndPath()));
+    }
 
+    /**
+     * Writes the schema of the node types to the file of the job, recording the phases.
+     * The streaming backend maps while it writes, its time is recorded as marshalling.
+     * @param ntypes the node type definitions
+     * @param job the files and options of the conversion
+     * @param stats receives the timings and the number of schema items
+     */
+    public void write(NodeTypeDef[] ntypes, ConversionJob job, ConversionStats stats)
+            throws IOException, JAXBException, XMLStreamException
+    {
+        stats.start(ConversionStats.Phase.PROPERTY_MAP);
+        Map<String, String[]> attrMap = loadPropertyMap(job.getPropmapPath());
+        stats.stop();
+        if (needsModel(job))
+        {
+            if (job.isStreaming())
+            {
+                log.info("Split, deduplicated or sorted schemas are written through JAXB");
+            }
+            stats.start(ConversionStats.Phase.MAPPING);
+            SchemaElement schema = createSchema(ntypes, attrMap, job);
+            stats.stop();
+            stats.count(schema);
+            stats.start(ConversionStats.Phase.MARSHALLING);
+            try
+            {
+                if (job.getSplit() != null)
+                {
+                    write(new SchemaSplitter(ntypes, job).split(schema, job.getXsdPath()), job);
                 }
-
-                for (PropertyDefinition pDef : nt.getPropertyDefinitions())
+                else
                 {
-                    log.debug("    Attr Name:" + pDef.getName());
-                    log.debug("    Req type:" + pDef.getRequiredType());
-                    log.debug("    Declaring Node type:" + pDef.getDeclaringNodeType().getName());
-                    if (pDef.getDeclaringNodeType().getName().equals(nt.getName()))
-                    {
-
-                        QName qn = getQualifiedName(pDef.getName());
-                        if (!pDef.isMultiple())
-                        {
-                            Attribute attr = new Attribute();
-                            if (isUnsupportedType(pDef.getRequiredType()))
-                            {
-                                attr.setType(new QName(Constants.XML_NAMESPACE, Constants.STRING));
-
-                            }
-                            else
-                            {
-                                attr.setType(new QName(Constants.XML_NAMESPACE,
-                                        PropertyType.nameFromValue(pDef.getRequiredType()).toLowerCase()));
-                            }
-                            attr.setName(qn.getLocalPart());
-                            //handle default value
-                            Value[] defaultValues = pDef.getDefaultValues();
-                            if(defaultValues != null && defaultValues.length > 0){
-                                attr.setDefault(defaultValues[0].getString());
-                            }
-                            
-                            ctype.getAttributesAndAttributeGroups().add(attr);
-                        }
-                        else
-                        {
-                            ComplexType ctf = getComplexType(rootAttrList, qn.getLocalPart(),
-                                    attrMap.containsKey(nt.getName()) ? attrMap.get(nt.getName()) : null);
-                            if (ctf != null)
-                            {
-                                ElementElement element = new ElementElement();
-                                element.setName(qn.getLocalPart());
-                                element.setMinOccurs(BigInteger.ZERO);
-                                element.setMaxOccurs(Constants.UNBOUNDED);
-                                if (isUnsupportedType(pDef.getRequiredType()))
-                                {
-                                    element.setType(new QName(Constants.XML_NAMESPACE, Constants.STRING));
-
-                                }
-                                else
-                                {
-                                    element.setType(new QName(Constants.XML_NAMESPACE,
-                                            PropertyType.nameFromValue(pDef.getRequiredType()).toLowerCase()));
-                                }
-                                ctf.getSequence().getElementsAndGroupsAndAlls().add(element);
-
-                            }
-
-                            //now create an element of the above type
-                            ElementElement element = new ElementElement();
-                            element.setName(qn.getLocalPart());
-                            element.setType(new QName(this.namespace, ctf.getName()));
-                            ctype.getSequence().getElementsAndGroupsAndAlls().add(element);
-
-                        }
-
-                    }
-
+                    write(schema, job.getXsdPath(), job);
                 }
-
-
-
             }
-            //decide what to put under rootNode
-
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-            //fout = new FileOutputStream(fileName);
-            m.marshal(schemaRoot, fout);
-
+            finally
+            {
+                stats.stop();
+            }
+            return;
         }
-        catch (Exception ex)
+        StreamingSchemaWriter writer = new StreamingSchemaWriter(ntypes, attrMap, job);
+        stats.start(ConversionStats.Phase.MARSHALLING);
+        OutputStream fout = openOutput(job.getXsdPath(), job);
+        try
         {
-            log.debug("Exception:" + ex.getMessage());
-            ex.printStackTrace();
+            writer.write(fout);
         }
         finally
         {
-            if (fout != null)
+            fout.close();
+            stats.stop();
+        }
+        stats.addCounts(writer.getComplexTypes(), writer.getElements(), writer.getAttributes());
+    }
+
+    /**
+     * Writes the schema of the node types to a stream, the stream is left open.
+     * @param ntypes the node type definitions
+     * @param attrMap the property map, see {@link #loadPropertyMap(String)}
+     * @param job the options of the conversion
+     * @param out receives the XSD, gzip compressed if the job says so
+     */
+    public void write(NodeTypeDef[] ntypes, Map<String, String[]> attrMap, ConversionJob job, OutputStream out)
+            throws IOException, JAXBException, XMLStreamException
+    {
+        GZIPOutputStream gzip = null;
+        if (job.isGzip())
+        {
+            gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+            out = gzip;
+        }
+        if (!needsModel(job))
+        {
+            new StreamingSchemaWriter(ntypes, attrMap, job).write(out);
+        }
+        else
+        {
+            marshal(createSchema(ntypes, attrMap, job), out, job.isCompact());
+        }
+        if (gzip != null)
+        {
+            gzip.finish();
+        }
+    }
+
+    /**
+     * Converts the CND of a job in memory and writes the XSD files only if their content
+     * changed, so unchanged files keep their time stamps. The cache is not used.
+     * @param loader turns the CND into node type definitions
+     * @param job the files and options of the conversion
+     * @param stats receives the timings and counts of the conversion
+     * @return true if a file was written
+     */
+    public boolean check(NodeTypeLoader loader, ConversionJob job, ConversionStats stats)
+            throws RepositoryException, IOException, ParseException, JAXBException, XMLStreamException
+    {
+        NodeTypeDef[] ntypes = loadNodeTypes(loader, job, stats);
+        stats.start(ConversionStats.Phase.PROPERTY_MAP);
+        Map<String, String[]> attrMap = loadPropertyMap(job.getPropmapPath());
+        stats.stop();
+        Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+        if (needsModel(job))
+        {
+            stats.start(ConversionStats.Phase.MAPPING);
+            SchemaElement schema = createSchema(ntypes, attrMap, job);
+            stats.stop();
+            stats.count(schema);
+            stats.start(ConversionStats.Phase.MARSHALLING);
+            try
             {
-                try
+                if (job.getSplit() != null)
                 {
-                    fout.close();
+                    Map<String, SchemaElement> parts = new SchemaSplitter(ntypes, job).split(schema, job.getXsdPath());
+                    for (Map.Entry<String, SchemaElement> part : parts.entrySet())
+                    {
+                        files.put(part.getKey(), serialize(part.getValue(), job));
+                    }
                 }
-                catch (IOException ex)
+                else
                 {
-                    log.error("Exception caught: {}", ex.getMessage());
+                    files.put(job.getXsdPath(), serialize(schema, job));
                 }
             }
+            finally
+            {
+                stats.stop();
+            }
+        }
+        else
+        {
+            StreamingSchemaWriter writer = new StreamingSchemaWriter(ntypes, attrMap, job);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            stats.start(ConversionStats.Phase.MARSHALLING);
+            try
+            {
+                OutputStream target = job.isGzip() ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+                writer.write(target);
+                target.close();
+            }
+            finally
+            {
+                stats.stop();
+            }
+            stats.addCounts(writer.getComplexTypes(), writer.getElements(), writer.getAttributes());
+            files.put(job.getXsdPath(), out.toByteArray());
         }
 
+        boolean changed = false;
+        for (Map.Entry<String, byte[]> file : files.entrySet())
+        {
+            File xsd = new File(file.getKey());
+            byte[] content = file.getValue();
+            if (xsd.isFile() && xsd.length() == content.length
+                    && Arrays.equals(ConversionCache.readFile(xsd), content))
+            {
+                log.debug("{} is up to date", xsd);
+                continue;
+            }
+            log.info("Writing changed {}", xsd);
+            OutputStream fout = new FileOutputStream(xsd);
+            try
+            {
+                fout.write(content);
+            }
+            finally
+            {
+                fout.close();
+            }
+            changed = true;
+        }
+        return changed;
+    }
 
+    /**
+     * @return the bytes of a schema file, compact and compressed as set in the job
+     */
+    private byte[] serialize(SchemaElement schema, ConversionJob job) throws IOException, JAXBException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream target = job.isGzip() ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+        marshal(schema, target, job.isCompact());
+        target.close();
+        return out.toByteArray();
     }
 
-    private static QName getQualifiedName(String name)
+    /**
+     * Compiles a schema for validation straight from the model. The compiled schema
+     * is immutable and may be used by several threads, each through its own Validator.
+     * The model is marshalled to a DOM first, the schema factory of the JDK does not
+     * read the events of a JAXBSource.
+     * @param schema the schema model
+     * @return the compiled schema
+     */
+    public Schema compile(SchemaElement schema) throws JAXBException, SAXException
     {
-        String[] tokens = name.split(":");
-        if (tokens.length < 2)
-        {
-            return null;
-        }
-        else
+        SchemaFactory factory = schemaFactories.get();
+        if (factory == null)
         {
-            QName qname = new QName(tokens[0], tokens[1]);
-            return qname;
+            factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schemaFactories.set(factory);
         }
+        DOMResult dom = new DOMResult();
+        getMarshaller(false).marshal(schema, dom);
+        return factory.newSchema(new DOMSource(dom.getNode()));
+    }
 
+    /**
+     * Converts the CND of a job into a compiled schema, no XSD file is written.
+     * @param loader turns the CND into node type definitions
+     * @param job the CND, property map and options of the conversion
+     * @return the compiled schema
+     * @see SchemaCache
+     */
+    public Schema compileSchema(NodeTypeLoader loader, ConversionJob job)
+            throws RepositoryException, IOException, ParseException, JAXBException, SAXException
+    {
+        return compile(createSchema(loadNodeTypes(loader, job), job));
     }
 
-    private static ComplexType findComplexType(List<OpenAttrs> rootAttrList, String name)
+    /**
+     * Writes a schema to a file.
+     */
+    public void write(SchemaElement schema, String xsdPath) throws IOException, JAXBException
     {
+        write(schema, xsdPath, new ConversionJob(null, xsdPath, null, null, null, null, null));
+    }
 
-        ComplexType complexType = null;
-        for (Object obj : rootAttrList)
+    /**
+     * Writes a schema to a file, compact and compressed as set in the job.
+     * @param schema the schema
+     * @param xsdPath the file
+     * @param job the output options
+     */
+    public void write(SchemaElement schema, String xsdPath, ConversionJob job) throws IOException, JAXBException
+    {
+        OutputStream fout = openOutput(xsdPath, job);
+        try
         {
-            if (obj instanceof ComplexType)
-            {
-                ComplexType ct = (ComplexType) obj;
-                if (ct.getName().equals(name))
-                {
-                    complexType = ct;
-                    break;
-                }
-            }
+            marshal(schema, fout, job.isCompact());
+        }
+        finally
+        {
+            fout.close();
         }
-        return complexType;
     }
 
-    private static ComplexType getComplexType(List<OpenAttrs> rootAttrList, String name, String[] attrs)
+    /**
+     * Opens a buffered XSD file, gzip compressed if the job says so.
+     */
+    private static OutputStream openOutput(String xsdPath, ConversionJob job) throws IOException
     {
-        ComplexType complexType = findComplexType(rootAttrList, name);
-
-        ComplexTypeElement ctype = (ComplexTypeElement) complexType;
-        if (ctype == null)
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(xsdPath), BUFFER_SIZE);
+        if (job.isGzip())
         {
-            //Any node type that we encounter should be a ComplexType in the XSD
-            ctype = new ComplexTypeElement();
-            ctype.setName(name);
-            ExplicitGroup seq = new ExplicitGroup();
-            ctype.setSequence(seq);
-            rootAttrList.add(ctype);
-            if (attrs != null)
+            try
             {
-                for (String attr : attrs)
-                {
-                    Attribute attribute = new Attribute();
-                    QName type = new QName(Constants.XML_NAMESPACE, Constants.STRING);
-                    attribute.setType(type);
-                    attribute.setName(attr);
-                    ctype.getAttributesAndAttributeGroups().add(attribute);
-                }
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+            catch (IOException ex)
+            {
+                out.close();
+                throw ex;
             }
-
-            log.debug("We have added complextype:" + ctype.getName());
         }
-        return ctype;
-
+        return out;
     }
 
-    private static boolean isUnsupportedType(int requiredType)
+    /**
+     * Exports a repository subtree as XML conforming to the schema of a job, see {@link ContentExporter}.
+     * The CND of the job is registered with the repository first.
+     * @param loader the repository holding the content
+     * @param job the CND, property map and options of the schema, gzip also compresses the XML
+     * @param path the absolute path of the top node of the subtree
+     * @param xmlPath the file receiving the XML
+     * @param validate true to validate the XML against the schema while it is written
+     * @return the number of nodes exported
+     */
+    public long export(RepositoryNodeTypeLoader loader, ConversionJob job, String path, String xmlPath, boolean validate)
+            throws RepositoryException, IOException, ParseException, JAXBException, XMLStreamException, SAXException
     {
-        if (requiredType == PropertyType.LONG)
+        NodeTypeDef[] ntypes = loadNodeTypes(loader, job);
+        Map<String, String[]> attrMap = loadPropertyMap(job.getPropmapPath());
+        ContentExporter exporter = new ContentExporter(ntypes, attrMap, job);
+        if (validate)
         {
-            return false;
+            exporter.setSchema(compile(createSchema(ntypes, attrMap, job)));
         }
-        else
+        OutputStream out = openOutput(xmlPath, job);
+        try
+        {
+            return exporter.export(loader.getSession().getNode(path), out);
+        }
+        finally
         {
-            return true;
+            out.close();
         }
     }
 
-    private void init(String cndFilePath, String propmapPath,
-            String namespace, String prefix, String rt, String rtype) throws RepositoryException, IOException
+    /**
+     * Writes several schema files at once, one thread per file up to the number of processors.
+     * @param files the schemas by file path
+     * @param job the output options
+     */
+    public void write(Map<String, SchemaElement> files, final ConversionJob job) throws IOException, JAXBException
     {
-        Session session = null;
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        if (threads <= 1)
+        {
+            for (Map.Entry<String, SchemaElement> file : files.entrySet())
+            {
+                write(file.getValue(), file.getKey(), job);
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
         try
         {
-            //first register the CND with the repository
-            Repository repository = new TransientRepository();
-            Credentials c = new SimpleCredentials(Constants.DEFAULT_USERID, Constants.DEFAULT_PASS.toCharArray());
-            session = repository.login(c);
-            String user = session.getUserID();
-            String name = repository.getDescriptor(Repository.REP_NAME_DESC);
-            log.debug("Logged in as {} to a repository :{}", user,  name );
-            //now lets load a NodeTypeDef to the session
-            ntypes = RegisterCustomNodeTypes(session, cndFilePath, prefix);
-            session.save();
-            this.namespace = namespace;            
-            this.root = rt;
-            this.rootType = rtype;
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (final Map.Entry<String, SchemaElement> file : files.entrySet())
+            {
+                futures.add(pool.submit(new Callable<String>()
+                {
+                    public String call() throws IOException, JAXBException
+                    {
+                        write(file.getValue(), file.getKey(), job);
+                        return file.getKey();
+                    }
+                }));
+            }
+            for (Future<String> future : futures)
+            {
+                try
+                {
+                    log.debug("Wrote {}", future.get());
+                }
+                catch (ExecutionException ex)
+                {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException)
+                    {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof JAXBException)
+                    {
+                        throw (JAXBException) cause;
+                    }
+                    if (cause instanceof RuntimeException)
+                    {
+                        throw (RuntimeException) cause;
+                    }
+                    throw (Error) cause;
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while writing the schema files");
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes a schema to a stream, the stream is left open.
+     */
+    public void marshal(SchemaElement schema, OutputStream stream) throws JAXBException
+    {
+        marshal(schema, stream, false);
+    }
 
-            //setup the property map
-            this.loadPropertyMap(propmapPath);
+    /**
+     * Writes a schema to a stream, the stream is left open.
+     * @param compact true to leave out line breaks and indentation
+     */
+    public void marshal(SchemaElement schema, OutputStream stream, boolean compact) throws JAXBException
+    {
+        getMarshaller(compact).marshal(schema, stream);
+    }
 
+    /**
+     * Reads a schema written by this converter.
+     */
+    public SchemaElement unmarshal(File xsd) throws JAXBException
+    {
+        return (SchemaElement) getUnmarshaller().unmarshal(xsd);
+    }
 
+    private Unmarshaller getUnmarshaller() throws JAXBException
+    {
+        Unmarshaller u = unmarshallers.get();
+        if (u == null)
+        {
+            u = context.createUnmarshaller();
+            unmarshallers.set(u);
         }
-        finally{
-            session.logout();
-        }
+        return u;
+    }
 
+    private Marshaller getMarshaller(boolean compact) throws JAXBException
+    {
+        ThreadLocal<Marshaller> local = compact ? compactMarshallers : marshallers;
+        Marshaller m = local.get();
+        if (m == null)
+        {
+            m = context.createMarshaller();
+            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, !compact);
+            local.set(m);
+        }
+        return m;
     }
 }
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jackrabbit.commons.cnd.CompactNodeTypeDefReader;
+import org.apache.jackrabbit.commons.cnd.DefinitionBuilderFactory;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses a CND straight into {@link NodeTypeDef}s without a repository.
+ * The resulting definitions look like the ones Jackrabbit returns after
+ * registering the same CND, i.e. primary types always derive from nt:base
+ * and child nodes without required types require nt:base. Mixins defined outside
+ * the CND are only recognized by their mix: prefix.
+ * @author adeka
+ */
+public class CndModelReader
+{
+    private static Logger log = LoggerFactory.getLogger(CndModelReader.class);
+
+    private static final String NT_BASE = "nt:base";
+
+    private static final String MIX_PREFIX = "mix:";
+
+    /**
+     * Reads all node type definitions of a CND.
+     * @param reader the CND source
+     * @param systemId the name of the source used in error messages
+     * @return the node type definitions in CND order
+     * @throws ParseException if the CND is not valid
+     */
+    public static NodeTypeDef[] read(Reader reader, String systemId) throws ParseException
+    {
+        CompactNodeTypeDefReader<NodeTypeDef, Map<String, String>> cndReader =
+                new CompactNodeTypeDefReader<NodeTypeDef, Map<String, String>>(reader, systemId,
+                new ModelBuilderFactory());
+        List<NodeTypeDef> defs = cndReader.getNodeTypeDefinitions();
+        addImplicitBaseType(defs);
+        for (NodeTypeDef def : defs)
+        {
+            log.debug("Parsed: {}", def.getName());
+        }
+        return defs.toArray(new NodeTypeDef[defs.size()]);
+    }
+
+    /**
+     * Jackrabbit makes every primary type without a primary supertype a subtype of nt:base.
+     * Do the same here so that both paths produce the same XSD.
+     * <p>
+     * Without a repository, a supertype defined outside the CND is taken for a mixin only if
+     * it has the mix: prefix. A type whose only supertypes are other external mixins, such as
+     * myapp:taggable, wrongly gets no nt:base here, while the repository path adds it.
+     * Such CNDs should be converted through the repository.
+     */
+    private static void addImplicitBaseType(List<NodeTypeDef> defs)
+    {
+        Set<String> mixins = new HashSet<String>();
+        for (NodeTypeDef def : defs)
+        {
+            if (def.isMixin())
+            {
+                mixins.add(def.getName());
+            }
+        }
+        for (NodeTypeDef def : defs)
+        {
+            if (def.isMixin() || NT_BASE.equals(def.getName()))
+            {
+                continue;
+            }
+            boolean hasPrimary = false;
+            for (String st : def.getDeclaredSupertypes())
+            {
+                if (!mixins.contains(st) && !st.startsWith(MIX_PREFIX))
+                {
+                    hasPrimary = true;
+                    break;
+                }
+            }
+            if (!hasPrimary)
+            {
+                def.addSupertype(NT_BASE);
+            }
+        }
+    }
+
+    /**
+     * Builder factory creating the in-memory model. Names are kept as found in the CND.
+     */
+    private static class ModelBuilderFactory extends DefinitionBuilderFactory<NodeTypeDef, Map<String, String>>
+    {
+        private Map<String, String> namespaces = new HashMap<String, String>();
+
+        public AbstractNodeTypeDefinitionBuilder<NodeTypeDef> newNodeTypeDefinitionBuilder()
+        {
+            return new NodeTypeBuilder();
+        }
+
+        public void setNamespaceMapping(Map<String, String> nsMapping)
+        {
+            this.namespaces = nsMapping;
+        }
+
+        public Map<String, String> getNamespaceMapping()
+        {
+            return namespaces;
+        }
+
+        public void setNamespace(String prefix, String uri)
+        {
+            namespaces.put(prefix, uri);
+        }
+    }
+
+    private static class NodeTypeBuilder extends DefinitionBuilderFactory.AbstractNodeTypeDefinitionBuilder<NodeTypeDef>
+    {
+        private List<String> supertypes = new ArrayList<String>();
+
+        private List<NodeDef> childNodes = new ArrayList<NodeDef>();
+
+        private List<PropertyDef> properties = new ArrayList<PropertyDef>();
+
+        public void addSupertype(String name)
+        {
+            supertypes.add(name);
+        }
+
+        public void setPrimaryItemName(String name)
+        {
+            //not used in the XSD
+        }
+
+        public DefinitionBuilderFactory.AbstractPropertyDefinitionBuilder<NodeTypeDef> newPropertyDefinitionBuilder()
+        {
+            return new PropertyBuilder(this);
+        }
+
+        public DefinitionBuilderFactory.AbstractNodeDefinitionBuilder<NodeTypeDef> newNodeDefinitionBuilder()
+        {
+            return new ChildNodeBuilder(this);
+        }
+
+        public NodeTypeDef build()
+        {
+            NodeTypeDef def = new NodeTypeDef(name);
+            def.setMixin(isMixin);
+            def.setAbstract(isAbstract);
+            for (String st : supertypes)
+            {
+                def.addSupertype(st);
+            }
+            for (NodeDef nd : childNodes)
+            {
+                def.addChildNode(nd);
+            }
+            for (PropertyDef pd : properties)
+            {
+                def.addProperty(pd);
+            }
+            return def;
+        }
+    }
+
+    private static class PropertyBuilder extends DefinitionBuilderFactory.AbstractPropertyDefinitionBuilder<NodeTypeDef>
+    {
+        private NodeTypeBuilder owner;
+
+        private List<String> defaultValues = new ArrayList<String>();
+
+        private List<String> constraints = new ArrayList<String>();
+
+        PropertyBuilder(NodeTypeBuilder owner)
+        {
+            this.owner = owner;
+        }
+
+        public void setDeclaringNodeType(String name)
+        {
+            //the owner is the declaring node type
+        }
+
+        public void addValueConstraint(String constraint)
+        {
+            constraints.add(constraint);
+        }
+
+        public void addDefaultValues(String value)
+        {
+            defaultValues.add(value);
+        }
+
+        public void build()
+        {
+            PropertyDef def = new PropertyDef(name);
+            def.setRequiredType(requiredType);
+            def.setMultiple(isMultiple);
+            def.setMandatory(isMandatory);
+            if (!defaultValues.isEmpty())
+            {
+                def.setDefaultValues(defaultValues.toArray(new String[defaultValues.size()]));
+            }
+            if (!constraints.isEmpty())
+            {
+                def.setValueConstraints(constraints.toArray(new String[constraints.size()]));
+            }
+            owner.properties.add(def);
+        }
+    }
+
+    private static class ChildNodeBuilder extends DefinitionBuilderFactory.AbstractNodeDefinitionBuilder<NodeTypeDef>
+    {
+        private NodeTypeBuilder owner;
+
+        private String defaultPrimaryType;
+
+        private List<String> requiredTypes = new ArrayList<String>();
+
+        ChildNodeBuilder(NodeTypeBuilder owner)
+        {
+            this.owner = owner;
+        }
+
+        public void setDeclaringNodeType(String name)
+        {
+            //the owner is the declaring node type
+        }
+
+        public void setDefaultPrimaryType(String name)
+        {
+            this.defaultPrimaryType = name;
+        }
+
+        public void addRequiredPrimaryType(String name)
+        {
+            requiredTypes.add(name);
+        }
+
+        public void build()
+        {
+            NodeDef def = new NodeDef(name);
+            def.setDefaultPrimaryType(defaultPrimaryType);
+            if (requiredTypes.isEmpty())
+            {
+                requiredTypes.add(NT_BASE);
+            }
+            def.setRequiredPrimaryTypes(requiredTypes.toArray(new String[requiredTypes.size()]));
+            def.setMandatory(isMandatory);
+            def.setAllowsSameNameSiblings(allowSns);
+            owner.childNodes.add(def);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.Reader;
+
+import javax.jcr.RepositoryException;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+
+/**
+ * Loads node types by parsing the CND into the in-memory model, no repository is involved.
+ * Supertypes defined outside the CND are unknown, so external mixins without the mix: prefix
+ * are taken for primary types, see {@link CndModelReader}.
+ * @author adeka
+ */
+public class CndNodeTypeLoader implements NodeTypeLoader
+{
+    public void start()
+    {
+    }
+
+    public NodeTypeDef[] load(Reader reader, String systemId, String prefix) throws ParseException
+    {
+        return CndModelReader.read(reader, systemId);
+    }
+
+    /**
+     * The whole CND is parsed, then the reachable types are selected.
+     */
+    public NodeTypeDef[] load(Reader reader, String systemId, String prefix, String rootType)
+            throws ParseException, RepositoryException
+    {
+        NodeTypeDef[] ntypes = load(reader, systemId, prefix);
+        return rootType == null ? ntypes : ReachableTypes.select(ntypes, rootType);
+    }
+
+    public void close()
+    {
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.PropertyType;
+
+/**
+ * Writes {@link NodeTypeDef}s as a CND. Only the attributes kept by the model are written:
+ * supertypes, abstract and mixin, and for items the types, defaults, mandatory, multiple,
+ * same name siblings and value constraints.
+ * @author adeka
+ */
+public class CndWriter
+{
+    private CndWriter()
+    {
+    }
+
+    /**
+     * Writes the namespace declarations followed by the node types, the writer is not closed.
+     * @param ntypes the node types
+     * @param namespaces namespace URIs by prefix, may be null
+     */
+    public static void write(NodeTypeDef[] ntypes, Map<String, String> namespaces, Writer out) throws IOException
+    {
+        if (namespaces != null)
+        {
+            for (Map.Entry<String, String> ns : namespaces.entrySet())
+            {
+                out.write("<" + quote(ns.getKey()) + " = " + quote(ns.getValue()) + ">\n");
+            }
+        }
+        for (NodeTypeDef nt : ntypes)
+        {
+            out.write("\n");
+            write(nt, out);
+        }
+        out.flush();
+    }
+
+    private static void write(NodeTypeDef nt, Writer out) throws IOException
+    {
+        out.write("[" + name(nt.getName()) + "]");
+        List<String> supertypes = nt.getDeclaredSupertypes();
+        if (!supertypes.isEmpty())
+        {
+            out.write(" > ");
+            list(supertypes.toArray(new String[supertypes.size()]), false, out);
+        }
+        if (nt.isAbstract())
+        {
+            out.write(" abstract");
+        }
+        if (nt.isMixin())
+        {
+            out.write(" mixin");
+        }
+        out.write("\n");
+        for (PropertyDef pDef : nt.getDeclaredPropertyDefinitions())
+        {
+            out.write("  - " + name(pDef.getName()) + " (" + PropertyType.nameFromValue(pDef.getRequiredType()) + ")");
+            if (pDef.getDefaultValues() != null && pDef.getDefaultValues().length > 0)
+            {
+                out.write(" = ");
+                list(pDef.getDefaultValues(), true, out);
+            }
+            if (pDef.isMandatory())
+            {
+                out.write(" mandatory");
+            }
+            if (pDef.isMultiple())
+            {
+                out.write(" multiple");
+            }
+            if (pDef.getValueConstraints() != null && pDef.getValueConstraints().length > 0)
+            {
+                out.write(" < ");
+                list(pDef.getValueConstraints(), true, out);
+            }
+            out.write("\n");
+        }
+        for (NodeDef nDef : nt.getDeclaredChildNodeDefinitions())
+        {
+            out.write("  + " + name(nDef.getName()));
+            if (nDef.getRequiredPrimaryTypes() != null && nDef.getRequiredPrimaryTypes().length > 0)
+            {
+                out.write(" (");
+                list(nDef.getRequiredPrimaryTypes(), false, out);
+                out.write(")");
+            }
+            if (nDef.getDefaultPrimaryType() != null)
+            {
+                out.write(" = " + name(nDef.getDefaultPrimaryType()));
+            }
+            if (nDef.isMandatory())
+            {
+                out.write(" mandatory");
+            }
+            if (nDef.allowsSameNameSiblings())
+            {
+                out.write(" sns");
+            }
+            out.write("\n");
+        }
+    }
+
+    private static void list(String[] values, boolean quoted, Writer out) throws IOException
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+            {
+                out.write(", ");
+            }
+            out.write(quoted ? quote(values[i]) : name(values[i]));
+        }
+    }
+
+    /**
+     * @return the name, quoted if it holds characters that end a CND name
+     */
+    private static String name(String name)
+    {
+        if ("*".equals(name))
+        {
+            return name;
+        }
+        for (int i = 0; i < name.length(); i++)
+        {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != ':' && c != '_' && c != '.' && c != '-')
+            {
+                return quote(name);
+            }
+        }
+        return name;
+    }
+
+    private static String quote(String value)
+    {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+}
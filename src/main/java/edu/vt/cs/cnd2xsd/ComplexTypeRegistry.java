@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3.generated.ComplexType;
+import org.w3.generated.OpenAttrs;
+
+/**
+ * Keeps the top level items of a schema together with a name index of its complex types.
+ * Items are still appended to the JAXB list, so the output order is the insertion order.
+ * A type may be held back, it is found by name but only appended when it is released.
+ * @author adeka
+ */
+class ComplexTypeRegistry
+{
+    private List<OpenAttrs> items;
+
+    private Map<String, ComplexType> index = new HashMap<String, ComplexType>();
+
+    private Map<String, ComplexType> held = new HashMap<String, ComplexType>();
+
+    /**
+     * @param items the top level item list of the schema, complex types already in it are indexed
+     */
+    ComplexTypeRegistry(List<OpenAttrs> items)
+    {
+        this.items = items;
+        for (OpenAttrs item : items)
+        {
+            if (item instanceof ComplexType)
+            {
+                ComplexType ct = (ComplexType) item;
+                if (!index.containsKey(ct.getName()))
+                {
+                    index.put(ct.getName(), ct);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the complex type first added under that name or null
+     */
+    ComplexType find(String name)
+    {
+        return index.get(name);
+    }
+
+    /**
+     * Appends an item to the schema, complex types are indexed by name.
+     */
+    void add(OpenAttrs item)
+    {
+        items.add(item);
+        if (item instanceof ComplexType)
+        {
+            ComplexType ct = (ComplexType) item;
+            if (!index.containsKey(ct.getName()))
+            {
+                index.put(ct.getName(), ct);
+            }
+        }
+    }
+
+    /**
+     * Indexes a complex type without appending it to the schema yet.
+     */
+    void hold(ComplexType ct)
+    {
+        if (!index.containsKey(ct.getName()))
+        {
+            index.put(ct.getName(), ct);
+            held.put(ct.getName(), ct);
+        }
+    }
+
+    /**
+     * Appends the type held under a name, if there is one.
+     */
+    void release(String name)
+    {
+        ComplexType ct = held.remove(name);
+        if (ct != null)
+        {
+            items.add(ct);
+        }
+    }
+
+    List<OpenAttrs> getItems()
+    {
+        return items;
+    }
+}
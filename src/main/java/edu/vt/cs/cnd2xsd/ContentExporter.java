@@ -0,0 +1,680 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Exports a repository subtree as XML conforming to the schema generated for the node types.
+ * Every node is written as the element the schema declares for it:
+ * <ul>
+ * <li>single-valued properties become attributes, multi-valued ones an element holding
+ * one element per value</li>
+ * <li>every supertype becomes a nested element written from the same node</li>
+ * <li>child nodes are written in the order of their definitions, residual child nodes
+ * as elements named after their type with the node name in the nodename attribute</li>
+ * </ul>
+ * Nodes are written while the tree is walked, so only the current path is held in memory.
+ * The properties of a node are read in one pass, child nodes through lazy iterators and
+ * binary values are encoded in chunks. Items the schema has no place for, such as properties
+ * of subtypes, are not exported. With a schema set, the document is validated while it is
+ * written and the export stops at the first node that does not conform.
+ * <p>
+ * An exporter may be reused, but exports one subtree at a time.
+ * @author adeka
+ */
+public class ContentExporter
+{
+    private static Logger log = LoggerFactory.getLogger(ContentExporter.class);
+
+    private static final String TNS = "tns";
+
+    private static final String INDENT = "  ";
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String NODENAME = "nodename";
+
+    private static final String RESIDUAL = "*";
+
+    private static final String CDATA = "CDATA";
+
+    /**
+     * Binary values are encoded in chunks of this many bytes, a multiple of 3.
+     */
+    static final int CHUNK_SIZE = 3 * 16 * 1024;
+
+    /**
+     * A progress message is logged every this many nodes.
+     */
+    static final int BATCH_SIZE = 10000;
+
+    private static XMLOutputFactory factory = XMLOutputFactory.newInstance();
+
+    private final String namespace;
+
+    private final String root;
+
+    private final String rootType;
+
+    private final boolean compact;
+
+    private final QNameCache names;
+
+    /** the element layout of every complex type by its name */
+    private final Map<String, TypePlan> plans = new HashMap<String, TypePlan>();
+
+    private Schema schema;
+
+    private XMLStreamWriter writer;
+
+    private ValidatorHandler validator;
+
+    private int depth;
+
+    /** true after an end tag, so the next end tag starts a new line */
+    private boolean closed;
+
+    /** the node being written, named in validation errors */
+    private Node current;
+
+    private long nodes;
+
+    /**
+     * @param ntypes the node types the schema was generated from
+     * @param attrMap the property map of the schema, see {@link PropertyMapLoader}
+     * @param job the namespace, root element and output options of the schema
+     */
+    public ContentExporter(NodeTypeDef[] ntypes, Map<String, String[]> attrMap, ConversionJob job)
+    {
+        this.namespace = job.getNamespace() == null ? "" : job.getNamespace();
+        this.root = job.getRoot();
+        this.rootType = job.getRootType();
+        this.compact = job.isCompact();
+        this.names = new QNameCache(namespace, TypeMapping.fromPropertyMap(attrMap));
+        for (NodeTypeDef nt : ntypes)
+        {
+            String name = localName(nt.getName());
+            if (!plans.containsKey(name))
+            {
+                plans.put(name, new TypePlan(nt, attrMap));
+            }
+        }
+    }
+
+    /**
+     * @param schema the compiled schema to validate the export against, null to not validate
+     * @see Cnd2XsdConverter#compile(org.w3.generated.SchemaElement)
+     */
+    public void setSchema(Schema schema)
+    {
+        this.schema = schema;
+    }
+
+    /**
+     * Exports a node and its subtree as the root element of the schema, the stream is left open.
+     * @param node the top node of the subtree
+     * @param out receives the XML
+     * @return the number of nodes exported
+     * @throws SAXException if the document does not conform to the schema, the message names the node
+     */
+    public long export(Node node, OutputStream out) throws RepositoryException, XMLStreamException, SAXException, IOException
+    {
+        nodes = 0;
+        depth = 0;
+        closed = false;
+        synchronized (factory)
+        {
+            writer = factory.createXMLStreamWriter(out, ENCODING);
+        }
+        validator = schema == null ? null : schema.newValidatorHandler();
+        try
+        {
+            writer.writeStartDocument(ENCODING, "1.0");
+            if (validator != null)
+            {
+                validator.startDocument();
+                if (namespace.length() > 0)
+                {
+                    validator.startPrefixMapping(TNS, namespace);
+                }
+            }
+            String rootName = root == null ? localName(node.getName()) : root;
+            String typeName = rootType == null ? localName(node.getPrimaryNodeType().getName()) : rootType;
+            count();
+            writeNode(node, rootName, plans.get(typeName), false);
+            newLine();
+            if (validator != null)
+            {
+                if (namespace.length() > 0)
+                {
+                    validator.endPrefixMapping(TNS);
+                }
+                validator.endDocument();
+            }
+            writer.writeEndDocument();
+            writer.flush();
+        }
+        catch (SAXException ex)
+        {
+            throw new SAXException((current == null ? node : current).getPath() + ": " + ex.getMessage(), ex);
+        }
+        finally
+        {
+            writer.close();
+            writer = null;
+            validator = null;
+            current = null;
+        }
+        log.info("Exported {} nodes from {}", nodes, node.getPath());
+        return nodes;
+    }
+
+    /**
+     * Writes a node as an element of the given type.
+     * @param plan the complex type, null for a type without content
+     * @param residual true if the node matched a residual child node definition
+     */
+    private void writeNode(Node node, String element, TypePlan plan, boolean residual)
+            throws RepositoryException, XMLStreamException, SAXException, IOException
+    {
+        writeElement(node, readProperties(node), element, plan, residual);
+    }
+
+    /**
+     * Writes an element of a node whose properties have been read already.
+     */
+    private void writeElement(Node node, Map<String, Property> properties, String element, TypePlan plan,
+            boolean residual) throws RepositoryException, XMLStreamException, SAXException, IOException
+    {
+        AttributesImpl attrs = new AttributesImpl();
+        if (plan != null)
+        {
+            for (Item attr : plan.attributes)
+            {
+                Property p = properties.get(attr.jcrName);
+                if (p != null && !p.isMultiple())
+                {
+                    attrs.addAttribute("", attr.element, attr.element, CDATA, format(p.getValue(), attr.type));
+                }
+            }
+        }
+        if (residual)
+        {
+            attrs.addAttribute("", NODENAME, NODENAME, CDATA, node.getName());
+        }
+        Node parent = current;
+        current = node;
+        startElement(element, attrs);
+        if (plan != null)
+        {
+            writeContent(node, plan, properties);
+        }
+        endElement(element);
+        current = parent;
+    }
+
+    private void writeContent(Node node, TypePlan plan, Map<String, Property> properties)
+            throws RepositoryException, XMLStreamException, SAXException, IOException
+    {
+        for (Item supertype : plan.supertypes)
+        {
+            TypePlan superPlan = plans.get(supertype.type);
+            if (superPlan != null)
+            {
+                writeElement(node, properties, supertype.element, superPlan, false);
+            }
+            else
+            {
+                //a type made of the attributes of the property map, or an empty placeholder
+                AttributesImpl attrs = new AttributesImpl();
+                if (supertype.attributes != null)
+                {
+                    for (String attr : supertype.attributes)
+                    {
+                        Property p = properties.get(attr);
+                        if (p != null && !p.isMultiple())
+                        {
+                            String name = localName(attr);
+                            attrs.addAttribute("", name, name, CDATA, p.getString());
+                        }
+                    }
+                }
+                startElement(supertype.element, attrs);
+                endElement(supertype.element);
+            }
+        }
+        for (int i = 0; i < plan.children.size(); i++)
+        {
+            Item child = plan.children.get(i);
+            TypePlan childPlan = plans.get(child.type);
+            if (RESIDUAL.equals(child.jcrName))
+            {
+                NodeIterator it = node.getNodes();
+                while (it.hasNext())
+                {
+                    Node n = it.nextNode();
+                    if (plan.residualIndex(n) == i)
+                    {
+                        count();
+                        writeNode(n, child.element, childPlan, true);
+                    }
+                }
+            }
+            else
+            {
+                NodeIterator it = node.getNodes(child.jcrName);
+                while (it.hasNext())
+                {
+                    count();
+                    writeNode(it.nextNode(), child.element, childPlan, false);
+                    if (!child.multiple)
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+        for (Item multi : plan.multiValued)
+        {
+            //the element is mandatory, a missing property is written as no values
+            startElement(multi.element, new AttributesImpl());
+            Property p = properties.get(multi.jcrName);
+            if (p != null)
+            {
+                for (Value value : p.isMultiple() ? p.getValues() : new Value[] {p.getValue()})
+                {
+                    startElement(multi.element, new AttributesImpl());
+                    writeValue(value, multi.type);
+                    endElement(multi.element);
+                }
+            }
+            endElement(multi.element);
+        }
+    }
+
+    private void count()
+    {
+        if (++nodes % BATCH_SIZE == 0)
+        {
+            log.debug("Exported {} nodes", nodes);
+        }
+    }
+
+    /**
+     * Reads all properties of a node in one pass instead of one lookup per definition.
+     */
+    private static Map<String, Property> readProperties(Node node) throws RepositoryException
+    {
+        Map<String, Property> properties = new HashMap<String, Property>();
+        PropertyIterator it = node.getProperties();
+        while (it.hasNext())
+        {
+            Property p = it.nextProperty();
+            properties.put(p.getName(), p);
+        }
+        return properties;
+    }
+
+    private void startElement(String name, AttributesImpl attrs) throws XMLStreamException, SAXException
+    {
+        newLine();
+        if (namespace.length() == 0)
+        {
+            writer.writeStartElement(name);
+        }
+        else
+        {
+            writer.writeStartElement(TNS, name, namespace);
+            if (depth == 0)
+            {
+                writer.writeNamespace(TNS, namespace);
+            }
+        }
+        for (int i = 0; i < attrs.getLength(); i++)
+        {
+            writer.writeAttribute(attrs.getLocalName(i), attrs.getValue(i));
+        }
+        if (validator != null)
+        {
+            validator.startElement(namespace, name, qName(name), attrs);
+        }
+        depth++;
+        closed = false;
+    }
+
+    private void endElement(String name) throws XMLStreamException, SAXException
+    {
+        depth--;
+        if (closed)
+        {
+            newLine();
+        }
+        if (validator != null)
+        {
+            validator.endElement(namespace, name, qName(name));
+        }
+        writer.writeEndElement();
+        closed = true;
+    }
+
+    private String qName(String name)
+    {
+        return namespace.length() == 0 ? name : TNS + ":" + name;
+    }
+
+    private void characters(String text) throws XMLStreamException, SAXException
+    {
+        writer.writeCharacters(text);
+        closed = false;
+        if (validator != null)
+        {
+            char[] chars = text.toCharArray();
+            validator.characters(chars, 0, chars.length);
+        }
+    }
+
+    /**
+     * Writes the text of a value element, binary values are encoded chunk by chunk.
+     */
+    private void writeValue(Value value, String xsdType)
+            throws RepositoryException, XMLStreamException, SAXException, IOException
+    {
+        if (!"base64Binary".equals(xsdType))
+        {
+            characters(format(value, xsdType));
+            return;
+        }
+        Binary binary = value.getBinary();
+        try
+        {
+            InputStream in = binary.getStream();
+            try
+            {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int n;
+                while ((n = fill(in, chunk)) > 0)
+                {
+                    characters(DatatypeConverter.printBase64Binary(
+                            n == chunk.length ? chunk : copy(chunk, n)));
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        finally
+        {
+            binary.dispose();
+        }
+    }
+
+    /**
+     * Reads until the buffer is full or the stream ends, so only the last chunk is padded.
+     */
+    private static int fill(InputStream in, byte[] buffer) throws IOException
+    {
+        int total = 0;
+        int n;
+        while (total < buffer.length && (n = in.read(buffer, total, buffer.length - total)) > 0)
+        {
+            total += n;
+        }
+        return total;
+    }
+
+    private static byte[] copy(byte[] bytes, int length)
+    {
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Formats a value in the lexical space of the XSD type of its property.
+     */
+    private static String format(Value value, String xsdType) throws RepositoryException, IOException
+    {
+        if ("base64Binary".equals(xsdType) || "hexBinary".equals(xsdType))
+        {
+            Binary binary = value.getBinary();
+            try
+            {
+                InputStream in = binary.getStream();
+                try
+                {
+                    byte[] bytes = new byte[(int) binary.getSize()];
+                    bytes = copy(bytes, fill(in, bytes));
+                    return "hexBinary".equals(xsdType) ? DatatypeConverter.printHexBinary(bytes)
+                            : DatatypeConverter.printBase64Binary(bytes);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            finally
+            {
+                binary.dispose();
+            }
+        }
+        if ("dateTime".equals(xsdType))
+        {
+            return DatatypeConverter.printDateTime(value.getDate());
+        }
+        if ("date".equals(xsdType))
+        {
+            return DatatypeConverter.printDate(value.getDate());
+        }
+        if ("decimal".equals(xsdType))
+        {
+            return value.getDecimal().toPlainString();
+        }
+        if ("double".equals(xsdType) || "float".equals(xsdType))
+        {
+            double d = value.getDouble();
+            return Double.isInfinite(d) ? (d > 0 ? "INF" : "-INF") : String.valueOf(d);
+        }
+        if ("boolean".equals(xsdType))
+        {
+            return String.valueOf(value.getBoolean());
+        }
+        return value.getString();
+    }
+
+    private void newLine() throws XMLStreamException
+    {
+        if (compact)
+        {
+            return;
+        }
+        StringBuilder sb = new StringBuilder("\n");
+        for (int i = 0; i < depth; i++)
+        {
+            sb.append(INDENT);
+        }
+        writer.writeCharacters(sb.toString());
+    }
+
+    private String localName(String jcrName)
+    {
+        return names.localName(jcrName);
+    }
+
+    private static String getDefaultType(NodeDef nd)
+    {
+        String defaultNT = nd.getDefaultPrimaryType();
+        if (defaultNT == null)
+        {
+            String[] nts = nd.getRequiredPrimaryTypes();
+            if (nts != null && nts.length > 0)
+            {
+                defaultNT = nts[0];
+            }
+        }
+        return defaultNT;
+    }
+
+    /**
+     * The elements and attributes the schema declares for the complex type of a node type,
+     * in the order of its sequence. See {@link StreamingSchemaWriter}.
+     */
+    private class TypePlan
+    {
+        private List<Item> attributes = new ArrayList<Item>();
+
+        private List<Item> supertypes = new ArrayList<Item>();
+
+        private List<Item> children = new ArrayList<Item>();
+
+        private List<Item> multiValued = new ArrayList<Item>();
+
+        TypePlan(NodeTypeDef nt, Map<String, String[]> attrMap)
+        {
+            String[] ntAttrs = attrMap.get(nt.getName());
+            if (ntAttrs != null)
+            {
+                for (String attr : ntAttrs)
+                {
+                    attributes.add(new Item(attr, localName(attr), Constants.STRING));
+                }
+            }
+            for (String pt : nt.getDeclaredSupertypes())
+            {
+                if (!attrMap.containsKey(pt) || attrMap.get(pt) != null)
+                {
+                    Item supertype = new Item(pt, localName(pt), localName(pt));
+                    supertype.attributes = attrMap.get(pt);
+                    supertypes.add(supertype);
+                }
+            }
+            for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+            {
+                String defaultNT = getDefaultType(nd);
+                if (defaultNT != null)
+                {
+                    String type = localName(defaultNT);
+                    Item child = new Item(nd.getName(), RESIDUAL.equals(nd.getName()) ? type : localName(nd.getName()), type);
+                    child.defaultType = defaultNT;
+                    child.multiple = nd.allowsSameNameSiblings();
+                    children.add(child);
+                }
+            }
+            for (PropertyDef pDef : nt.getDeclaredPropertyDefinitions())
+            {
+                if (RESIDUAL.equals(pDef.getName()))
+                {
+                    continue;
+                }
+                Item item = new Item(pDef.getName(), localName(pDef.getName()),
+                        names.propertyType(pDef.getRequiredType()).getLocalPart());
+                (pDef.isMultiple() ? multiValued : attributes).add(item);
+            }
+        }
+
+        /**
+         * @return the index of the residual child definition a child node is written for,
+         * the first one of its type or else the first one, -1 for a named child node
+         */
+        int residualIndex(Node node) throws RepositoryException
+        {
+            if (hasNamedDefinition(node.getName()))
+            {
+                return -1;
+            }
+            int first = -1;
+            for (int i = 0; i < children.size(); i++)
+            {
+                Item child = children.get(i);
+                if (RESIDUAL.equals(child.jcrName))
+                {
+                    if (node.isNodeType(child.defaultType))
+                    {
+                        return i;
+                    }
+                    if (first < 0)
+                    {
+                        first = i;
+                    }
+                }
+            }
+            return first;
+        }
+
+        private boolean hasNamedDefinition(String name)
+        {
+            for (Item child : children)
+            {
+                if (child.jcrName.equals(name))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Item
+    {
+        private final String jcrName;
+
+        private final String element;
+
+        /** the XSD type of a property or the complex type of a node */
+        private final String type;
+
+        /** attributes of a supertype from the property map */
+        private String[] attributes;
+
+        private String defaultType;
+
+        private boolean multiple;
+
+        Item(String jcrName, String element, String type)
+        {
+            this.jcrName = jcrName;
+            this.element = element;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.RepositoryException;
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3.generated.ComplexType;
+import org.w3.generated.OpenAttrs;
+import org.w3.generated.SchemaElement;
+import org.w3.generated.SimpleType;
+
+/**
+ * On-disk cache of generated schemas. An entry is kept per CND and XSD path and
+ * holds the last XSD together with the hashes of its inputs: the CND, the property
+ * map, the options of the job and the kind of loader. If nothing changed the cached
+ * XSD is copied and no node types are loaded. If only the CND changed, the complex
+ * types touched by the changed node types are mapped again and spliced into the cached
+ * schema, then the complex types are put into the order of a complete conversion, see
+ * {@link SchemaMapper#typeOrder(NodeTypeDef[], ConversionJob)}, so the XSD is the same as without the cache.
+ * <p>
+ * Only a {@link CndNodeTypeLoader} is spliced: a repository keeps the first registration
+ * of a node type, so an edited type would come back unchanged and look like a hit.
+ * Jobs using other loaders and streaming jobs, a splice needs the whole schema in memory,
+ * are regenerated completely on a miss.
+ * @author adeka
+ */
+class ConversionCache
+{
+    private static Logger log = LoggerFactory.getLogger(ConversionCache.class);
+
+    static final String HIT = "hit";
+
+    static final String SPLICED = "spliced";
+
+    static final String MISS = "miss";
+
+    /**
+     * Changes when the index format or the generated XSD changes, invalidating old entries.
+     */
+    private static final String VERSION = "cnd2xsd-cache 3";
+
+    private static final String SEPARATOR = "\t";
+
+    private final File dir;
+
+    ConversionCache(File dir)
+    {
+        this.dir = dir;
+    }
+
+    /**
+     * Converts the CND of a job, reusing the cached result where the inputs did not change.
+     * @param converter converts the node types
+     * @param loader turns the CND into node type definitions, not used on a hit
+     * @param job the files and options of the conversion
+     * @param stats receives the timings and the cache outcome
+     */
+    void convert(Cnd2XsdConverter converter, NodeTypeLoader loader, ConversionJob job, ConversionStats stats)
+            throws RepositoryException, IOException, ParseException, JAXBException, XMLStreamException
+    {
+        if (!dir.isDirectory() && !dir.mkdirs())
+        {
+            throw new IOException("Cannot create the cache directory " + dir);
+        }
+        String id = hash((new File(job.getCndPath()).getAbsolutePath() + "\n"
+                + new File(job.getXsdPath()).getAbsolutePath()).getBytes("UTF-8"));
+        File cachedXsd = new File(dir, id + ".xsd");
+        File indexFile = new File(dir, id + ".idx");
+        String configHash = configHash(job, loader);
+        String cndHash = hash(readFile(new File(job.getCndPath())));
+
+        Index index = cachedXsd.isFile() ? readIndex(indexFile) : null;
+        if (index != null && !configHash.equals(index.config))
+        {
+            log.debug("Options or property map changed for {}", job.getCndPath());
+            index = null;
+        }
+        if (index != null && cndHash.equals(index.cnd))
+        {
+            log.debug("Reusing cached schema for {}", job.getCndPath());
+            copy(cachedXsd, new File(job.getXsdPath()));
+            stats.setCacheResult(HIT);
+            return;
+        }
+
+        //throws if nothing was registered, the entry is left alone
+        NodeTypeDef[] ntypes = converter.loadNodeTypes(loader, job, stats);
+        Index current = new Index(configHash, cndHash);
+        for (NodeTypeDef nt : ntypes)
+        {
+            current.add(nt.getName(), fingerprint(nt), SchemaMapper.referencedTypes(nt));
+        }
+
+        if (index != null && !job.isStreaming() && loader instanceof CndNodeTypeLoader)
+        {
+            splice(converter, job, stats, ntypes, index, current, cachedXsd);
+        }
+        else
+        {
+            converter.write(ntypes, job, stats);
+            stats.setCacheResult(MISS);
+        }
+
+        File tmp = new File(dir, id + ".xsd.tmp");
+        copy(new File(job.getXsdPath()), tmp);
+        replace(tmp, cachedXsd);
+        tmp = new File(dir, id + ".idx.tmp");
+        writeIndex(current, tmp);
+        replace(tmp, indexFile);
+    }
+
+    /**
+     * Maps the node types whose complex types are affected by a change and
+     * replaces those complex types in the cached schema.
+     */
+    private void splice(Cnd2XsdConverter converter, ConversionJob job, ConversionStats stats,
+            NodeTypeDef[] ntypes, Index previous, Index current, File cachedXsd)
+            throws IOException, JAXBException
+    {
+        //complex types touched by added, changed and removed node types
+        Set<String> affected = new HashSet<String>();
+        for (String name : current.hashes.keySet())
+        {
+            if (!current.hashes.get(name).equals(previous.hashes.get(name)))
+            {
+                affected.addAll(current.types.get(name));
+                if (previous.types.containsKey(name))
+                {
+                    affected.addAll(previous.types.get(name));
+                }
+            }
+        }
+        for (String name : previous.hashes.keySet())
+        {
+            if (!current.hashes.containsKey(name))
+            {
+                affected.addAll(previous.types.get(name));
+            }
+        }
+        if (affected.isEmpty())
+        {
+            copy(cachedXsd, new File(job.getXsdPath()));
+            stats.setCacheResult(HIT);
+            return;
+        }
+
+        //every node type sharing a complex type with an affected one is mapped again
+        boolean[] remap = new boolean[ntypes.length];
+        List<NodeTypeDef> selected = new ArrayList<NodeTypeDef>();
+        boolean grown = true;
+        while (grown)
+        {
+            grown = false;
+            for (int i = 0; i < ntypes.length; i++)
+            {
+                Set<String> types = current.types.get(ntypes[i].getName());
+                if (!remap[i] && intersects(types, affected))
+                {
+                    remap[i] = true;
+                    grown |= affected.addAll(types);
+                }
+            }
+        }
+        for (int i = 0; i < ntypes.length; i++)
+        {
+            if (remap[i])
+            {
+                selected.add(ntypes[i]);
+            }
+        }
+        log.debug("Mapping {} of {} node types again", selected.size(), ntypes.length);
+
+        stats.start(ConversionStats.Phase.PROPERTY_MAP);
+        Map<String, String[]> attrMap = Cnd2XsdConverter.loadPropertyMap(job.getPropmapPath());
+        stats.stop();
+
+        stats.start(ConversionStats.Phase.MAPPING);
+        SchemaElement schema = converter.unmarshal(cachedXsd);
+        SchemaElement partial = converter.createSchema(selected.toArray(new NodeTypeDef[selected.size()]),
+                attrMap, job);
+        Map<String, ComplexType> fresh = new LinkedHashMap<String, ComplexType>();
+        for (OpenAttrs item : partial.getIncludesAndImportsAndRedefines())
+        {
+            if (item instanceof ComplexType)
+            {
+                fresh.put(((ComplexType) item).getName(), (ComplexType) item);
+            }
+        }
+        List<OpenAttrs> items = schema.getIncludesAndImportsAndRedefines();
+        for (ListIterator<OpenAttrs> it = items.listIterator(); it.hasNext();)
+        {
+            OpenAttrs item = it.next();
+            if (item instanceof ComplexType && affected.contains(((ComplexType) item).getName()))
+            {
+                ComplexType replacement = fresh.remove(((ComplexType) item).getName());
+                if (replacement == null)
+                {
+                    it.remove();
+                }
+                else
+                {
+                    it.set(replacement);
+                }
+            }
+        }
+        //new types go to the position a complete conversion gives them, simple types are
+        //named after their restriction and rebuilt from all node types
+        List<ComplexType> complexTypes = new ArrayList<ComplexType>(fresh.values());
+        for (ListIterator<OpenAttrs> it = items.listIterator(); it.hasNext();)
+        {
+            OpenAttrs item = it.next();
+            if (item instanceof ComplexType)
+            {
+                complexTypes.add((ComplexType) item);
+                it.remove();
+            }
+            else if (item instanceof SimpleType)
+            {
+                it.remove();
+            }
+        }
+        final Map<String, Integer> position = new HashMap<String, Integer>();
+        for (String name : SchemaMapper.typeOrder(ntypes, job))
+        {
+            position.put(name, Integer.valueOf(position.size()));
+        }
+        Collections.sort(complexTypes, new Comparator<ComplexType>()
+        {
+            public int compare(ComplexType a, ComplexType b)
+            {
+                return position(a).compareTo(position(b));
+            }
+
+            private Integer position(ComplexType ct)
+            {
+                Integer p = position.get(ct.getName());
+                return p == null ? Integer.valueOf(Integer.MAX_VALUE) : p;
+            }
+        });
+        items.addAll(complexTypes);
+        QNameCache names = new QNameCache(job.getNamespace(), TypeMapping.fromPropertyMap(attrMap));
+        for (ValueConstraintTypes.Restriction r : new ValueConstraintTypes(ntypes, names).getRestrictions())
+        {
+            items.add(r.toSimpleType());
+        }
+        if (job.isSort())
+        {
+            SchemaOrder.sort(items);
+        }
+        stats.stop();
+        stats.count(schema);
+
+        stats.start(ConversionStats.Phase.MARSHALLING);
+        try
+        {
+            converter.write(schema, job.getXsdPath(), job);
+        }
+        finally
+        {
+            stats.stop();
+        }
+        stats.setCacheResult(SPLICED);
+    }
+
+    private static boolean intersects(Set<String> a, Set<String> b)
+    {
+        for (String s : a)
+        {
+            if (b.contains(s))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a hash over the options of the job, its property map and the kind of loader,
+     *         the loader decides e.g. which external supertypes are mixins
+     */
+    static String configHash(ConversionJob job, NodeTypeLoader loader) throws IOException
+    {
+        StringBuilder sb = new StringBuilder(VERSION);
+        sb.append('\0').append(loader.getClass().getName());
+        sb.append('\0').append(job.getNamespace());
+        sb.append('\0').append(job.getPrefix());
+        sb.append('\0').append(job.getRoot());
+        sb.append('\0').append(job.getRootType());
+        sb.append('\0').append(job.isStreaming());
+        sb.append('\0').append(job.isCompact());
+        sb.append('\0').append(job.isReach());
+        sb.append('\0').append(job.isSort());
+        sb.append('\0');
+        File propmap = job.getPropmapPath() == null ? null : new File(job.getPropmapPath());
+        if (propmap != null && propmap.isFile())
+        {
+            sb.append(hash(readFile(propmap)));
+        }
+        return hash(sb.toString().getBytes("UTF-8"));
+    }
+
+    /**
+     * @return a hash over everything of a node type that ends up in the XSD
+     */
+    static String fingerprint(NodeTypeDef nt) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(nt.getName()).append('\0').append(nt.isMixin()).append('\0').append(nt.isAbstract());
+        for (String st : nt.getDeclaredSupertypes())
+        {
+            sb.append("\0>").append(st);
+        }
+        for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+        {
+            sb.append("\0+").append(nd.getName()).append('\0').append(nd.getDefaultPrimaryType());
+            for (String rt : nd.getRequiredPrimaryTypes())
+            {
+                sb.append('\0').append(rt);
+            }
+            sb.append('\0').append(nd.isMandatory()).append('\0').append(nd.allowsSameNameSiblings());
+        }
+        for (PropertyDef pd : nt.getDeclaredPropertyDefinitions())
+        {
+            sb.append("\0-").append(pd.getName()).append('\0').append(pd.getRequiredType())
+                    .append('\0').append(pd.isMultiple()).append('\0').append(pd.isMandatory());
+            appendAll(sb, "\0=", pd.getDefaultValues());
+            appendAll(sb, "\0<", pd.getValueConstraints());
+        }
+        return hash(sb.toString().getBytes("UTF-8"));
+    }
+
+    private static void appendAll(StringBuilder sb, String marker, String[] values)
+    {
+        if (values != null)
+        {
+            for (String v : values)
+            {
+                sb.append(marker).append(v);
+            }
+        }
+    }
+
+    static String hash(byte[] data) throws IOException
+    {
+        MessageDigest md;
+        try
+        {
+            md = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IOException("SHA-1 not available: " + ex.getMessage());
+        }
+        byte[] digest = md.digest(data);
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest)
+        {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    static byte[] readFile(File file) throws IOException
+    {
+        byte[] data = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            int off = 0;
+            int n;
+            while (off < data.length && (n = in.read(data, off, data.length - off)) > 0)
+            {
+                off += n;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return data;
+    }
+
+    private static void copy(File from, File to) throws IOException
+    {
+        InputStream in = new FileInputStream(from);
+        try
+        {
+            OutputStream out = new FileOutputStream(to);
+            try
+            {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0)
+                {
+                    out.write(buffer, 0, n);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static void replace(File tmp, File target) throws IOException
+    {
+        if (!tmp.renameTo(target))
+        {
+            //renameTo does not overwrite on every platform
+            target.delete();
+            if (!tmp.renameTo(target))
+            {
+                throw new IOException("Cannot update cache entry " + target);
+            }
+        }
+    }
+
+    /**
+     * @return the index or null if it is missing or was written by another version
+     */
+    private static Index readIndex(File file)
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+        try
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try
+            {
+                if (!VERSION.equals(reader.readLine()))
+                {
+                    return null;
+                }
+                Index index = new Index(reader.readLine(), reader.readLine());
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    String[] tokens = line.split(SEPARATOR);
+                    Set<String> types = new HashSet<String>();
+                    for (int i = 2; i < tokens.length; i++)
+                    {
+                        types.add(tokens[i]);
+                    }
+                    index.add(tokens[0], tokens[1], types);
+                }
+                return index.config == null || index.cnd == null ? null : index;
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (IOException ex)
+        {
+            log.warn("Ignoring unreadable cache index {}: {}", file, ex.getMessage());
+            return null;
+        }
+        catch (ArrayIndexOutOfBoundsException ex)
+        {
+            log.warn("Ignoring corrupt cache index {}", file);
+            return null;
+        }
+    }
+
+    private static void writeIndex(Index index, File file) throws IOException
+    {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try
+        {
+            out.print(VERSION + "\n");
+            out.print(index.config + "\n");
+            out.print(index.cnd + "\n");
+            for (String name : index.hashes.keySet())
+            {
+                StringBuilder sb = new StringBuilder(name).append(SEPARATOR).append(index.hashes.get(name));
+                for (String type : index.types.get(name))
+                {
+                    sb.append(SEPARATOR).append(type);
+                }
+                out.print(sb.append("\n"));
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        if (out.checkError())
+        {
+            throw new IOException("Cannot write cache index " + file);
+        }
+    }
+
+    /**
+     * Input hashes of a cache entry and the fingerprint and referenced complex types of every node type.
+     */
+    private static class Index
+    {
+        private String config;
+
+        private String cnd;
+
+        private Map<String, String> hashes = new LinkedHashMap<String, String>();
+
+        private Map<String, Set<String>> types = new HashMap<String, Set<String>>();
+
+        Index(String config, String cnd)
+        {
+            this.config = config;
+            this.cnd = cnd;
+        }
+
+        void add(String name, String hash, Set<String> referenced)
+        {
+            hashes.put(name, hash);
+            types.put(name, referenced);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a job to a {@link ConversionServer} on the local machine. The server is trusted
+ * like any local process, see its comment.
+ * @author adeka
+ */
+public class ConversionClient
+{
+    private static Logger log = LoggerFactory.getLogger(ConversionClient.class);
+
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    /**
+     * Milliseconds the client waits for the next bytes of the answer, the server only
+     * answers after the conversion, so this also limits the time of the conversion.
+     */
+    static final int READ_TIMEOUT = 5 * 60 * 1000;
+
+    private final int port;
+
+    public ConversionClient(int port)
+    {
+        this.port = port;
+    }
+
+    /**
+     * Converts the job on the server and writes the XSD to the file of the job.
+     * @param job the files and options of the conversion
+     * @return false if no server is listening, the caller should then convert in process
+     * @throws IOException if the files cannot be read or written, the server reports an error
+     *         or does not answer in time
+     * @throws IllegalArgumentException if the job has no CND or XSD file
+     */
+    public boolean convert(ConversionJob job) throws IOException
+    {
+        check(job);
+        Socket socket = new Socket();
+        try
+        {
+            try
+            {
+                socket.connect(new InetSocketAddress(InetAddress.getByName(null), port), CONNECT_TIMEOUT);
+            }
+            catch (ConnectException ex)
+            {
+                log.debug("No conversion server on port {}", port);
+                return false;
+            }
+            catch (SocketTimeoutException ex)
+            {
+                log.debug("No conversion server on port {}", port);
+                return false;
+            }
+            socket.setSoTimeout(READ_TIMEOUT);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Map<String, String> options = new LinkedHashMap<String, String>();
+            putOption(options, "ns", job.getNamespace());
+            putOption(options, "nsp", job.getPrefix());
+            putOption(options, "r", job.getRoot());
+            putOption(options, "rtype", job.getRootType());
+            putOption(options, "stream", String.valueOf(job.isStreaming()));
+            putOption(options, "dedup", String.valueOf(job.isDedup()));
+            putOption(options, "compact", String.valueOf(job.isCompact()));
+            putOption(options, "gzip", String.valueOf(job.isGzip()));
+            putOption(options, "reach", String.valueOf(job.isReach()));
+            putOption(options, "sort", String.valueOf(job.isSort()));
+            out.writeInt(ConversionServer.VERSION);
+            out.writeInt(options.size());
+            for (Map.Entry<String, String> option : options.entrySet())
+            {
+                out.writeUTF(option.getKey());
+                out.writeUTF(option.getValue());
+            }
+            out.writeUTF(job.getCndPath());
+            writeFile(out, job.getCndPath());
+            writeFile(out, job.getPropmapPath());
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte[] xsd;
+            try
+            {
+                if (in.readByte() != ConversionServer.OK)
+                {
+                    throw new IOException("Conversion of " + job.getCndPath() + " failed: " + in.readUTF());
+                }
+                xsd = ConversionServer.readBlock(in);
+            }
+            catch (SocketTimeoutException ex)
+            {
+                throw new IOException("No answer from the conversion server on port " + port + " within "
+                        + READ_TIMEOUT / 1000 + " s");
+            }
+            OutputStream fout = new FileOutputStream(job.getXsdPath());
+            try
+            {
+                fout.write(xsd);
+            }
+            finally
+            {
+                fout.close();
+            }
+            return true;
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * Fails before connecting if the job cannot be sent.
+     */
+    private static void check(ConversionJob job) throws IOException
+    {
+        if (job.getCndPath() == null)
+        {
+            throw new IllegalArgumentException("No cnd file given");
+        }
+        if (job.getXsdPath() == null)
+        {
+            throw new IllegalArgumentException("No xsd file given for " + job.getCndPath());
+        }
+        if (!new File(job.getCndPath()).isFile())
+        {
+            throw new IOException("Cannot read " + job.getCndPath());
+        }
+        if (job.getPropmapPath() != null && !new File(job.getPropmapPath()).isFile())
+        {
+            throw new IOException("Cannot read " + job.getPropmapPath());
+        }
+    }
+
+    private static void putOption(Map<String, String> options, String key, String value)
+    {
+        if (value != null)
+        {
+            options.put(key, value);
+        }
+    }
+
+    /**
+     * Writes a file as a length prefixed block, a missing path is written as -1.
+     */
+    private static void writeFile(DataOutputStream out, String path) throws IOException
+    {
+        if (path == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        File file = new File(path);
+        long length = file.length();
+        if (length > ConversionServer.MAX_LENGTH)
+        {
+            throw new IOException(path + " is too large");
+        }
+        out.writeInt((int) length);
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            byte[] buffer = new byte[8192];
+            long left = length;
+            int n;
+            while (left > 0 && (n = in.read(buffer, 0, (int) Math.min(buffer.length, left))) > 0)
+            {
+                out.write(buffer, 0, n);
+                left -= n;
+            }
+            if (left > 0)
+            {
+                throw new IOException(path + " changed while it was sent");
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * The files and options of one CND to XSD conversion.
+ * A job is immutable, the with methods return modified copies.
+ * @author adeka
+ */
+public class ConversionJob
+{
+    private final String cndPath;
+
+    private final String xsdPath;
+
+    private final String propmapPath;
+
+    private final String namespace;
+
+    private final String prefix;
+
+    private final String root;
+
+    private final String rootType;
+
+    private boolean streaming;
+
+    private String cacheDir;
+
+    private String split;
+
+    private boolean dedup;
+
+    private boolean compact;
+
+    private boolean gzip;
+
+    private boolean reach;
+
+    private boolean sort;
+
+    public ConversionJob(String cndPath, String xsdPath, String propmapPath,
+            String namespace, String prefix, String root, String rootType)
+    {
+        this.cndPath = cndPath;
+        this.xsdPath = xsdPath;
+        this.propmapPath = propmapPath;
+        this.namespace = namespace;
+        this.prefix = prefix;
+        this.root = root;
+        this.rootType = rootType;
+    }
+
+    /**
+     * Creates a job from the -fc/-fx/-fp/-ns/-nsp/-r/-rtype options.
+     * @param cl the parsed command line
+     * @param defaults values used for options that are not given, may be null
+     * @return the job
+     */
+    public static ConversionJob fromCommandLine(CommandLine cl, ConversionJob defaults)
+    {
+        if (defaults == null)
+        {
+            defaults = new ConversionJob(null, null, null, null, null, null, null);
+        }
+        ConversionJob job = new ConversionJob(cl.getOptionValue("fc", defaults.cndPath),
+                cl.getOptionValue("fx", defaults.xsdPath),
+                cl.getOptionValue("fp", defaults.propmapPath),
+                cl.getOptionValue("ns", defaults.namespace),
+                cl.getOptionValue("nsp", defaults.prefix),
+                cl.getOptionValue("r", defaults.root),
+                cl.getOptionValue("rtype", defaults.rootType));
+        job.copyFlags(defaults);
+        job.streaming |= cl.hasOption("stream");
+        job.cacheDir = cl.getOptionValue("cache", job.cacheDir);
+        job.dedup |= cl.hasOption("dedup");
+        job.compact |= cl.hasOption("compact");
+        job.gzip |= cl.hasOption("gzip");
+        job.reach |= cl.hasOption("reach");
+        job.sort |= cl.hasOption("sort");
+        if (cl.hasOption("split"))
+        {
+            job.split = cl.getOptionValue("split", "");
+        }
+        return job;
+    }
+
+    private void copyFlags(ConversionJob other)
+    {
+        this.streaming = other.streaming;
+        this.cacheDir = other.cacheDir;
+        this.split = other.split;
+        this.dedup = other.dedup;
+        this.compact = other.compact;
+        this.gzip = other.gzip;
+        this.reach = other.reach;
+        this.sort = other.sort;
+    }
+
+    /**
+     * @return a copy of this job for other input and output files
+     */
+    public ConversionJob forFiles(String cnd, String xsd)
+    {
+        ConversionJob job = new ConversionJob(cnd, xsd, propmapPath, namespace, prefix, root, rootType);
+        job.copyFlags(this);
+        return job;
+    }
+
+    /**
+     * @return a copy of this job writing the XSD with the StAX backend if streaming is true
+     */
+    public ConversionJob withStreaming(boolean streaming)
+    {
+        ConversionJob job = forFiles(cndPath, xsdPath);
+        job.streaming = streaming;
+        return job;
+    }
+
+    /**
+     * @return a copy of this job reusing the results of earlier runs kept in the directory,
+     * no cache is used if the directory is null
+     */
+    public ConversionJob withCacheDir(String cacheDir)
+    {
+        ConversionJob job = forFiles(cndPath, xsdPath);
+        job.cacheDir = cacheDir;
+        return job;
+    }
+
+    /**
+     * @return a copy of this job writing one XSD per namespace prefix, see {@link #getSplit()}
+     */
+    public ConversionJob withSplit(String split)
+    {
+        ConversionJob job = forFiles(cndPath, xsdPath);
+        job.split = split;
+        return job;
+    }
+
+    /**
+     * @return a copy of this job merging structurally identical complex types if dedup is true
+     */
+    public ConversionJob withDedup(boolean dedup)
+    {
+        ConversionJob job = forFiles(cndPath, xsdPath);
+        job.dedup = dedup;
+        return job;
+    }
+
+    /**
+     * @return a copy of this job writing the XSD without line breaks and indentation if compact is true
+     */
+    public ConversionJob withCompact(boolean compact)
+    {
+        ConversionJob job = forFiles(cndPath, xsdPath);
+        job.compact = compact;
+        return job;
+    }
+
+    /**
+     * @return a copy of this job gzip compressing the XSD if gzip is true
+     */
+    public ConversionJob withGzip(boolean gzip)
+    {
+        ConversionJob job = forFiles(cndPath, xsdPath);
+        job.gzip = gzip;
+        return job;
+    }
+
+    /**
+     * @return a copy of this job converting only the node types reachable from the root type if reach is true
+     */
+    public ConversionJob withReach(boolean reach)
+    {
+        ConversionJob job = forFiles(cndPath, xsdPath);
+        job.reach = reach;
+        return job;
+    }
+
+    /**
+     * @return a copy of this job ordering the types of the XSD by name if sort is true
+     */
+    public ConversionJob withSort(boolean sort)
+    {
+        ConversionJob job = forFiles(cndPath, xsdPath);
+        job.sort = sort;
+        return job;
+    }
+
+    public String getCndPath()
+    {
+        return cndPath;
+    }
+
+    public String getXsdPath()
+    {
+        return xsdPath;
+    }
+
+    public String getPropmapPath()
+    {
+        return propmapPath;
+    }
+
+    public String getNamespace()
+    {
+        return namespace;
+    }
+
+    public String getPrefix()
+    {
+        return prefix;
+    }
+
+    public String getRoot()
+    {
+        return root;
+    }
+
+    public String getRootType()
+    {
+        return rootType;
+    }
+
+    /**
+     * @return true if the XSD is written incrementally through StAX instead of JAXB
+     */
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
+    /**
+     * @return the directory of the conversion cache or null if no cache is used
+     */
+    public String getCacheDir()
+    {
+        return cacheDir;
+    }
+
+    /**
+     * @return null if a single XSD is written, otherwise the grouping of the prefixes into
+     * files as comma separated prefix=group pairs, empty for one file per prefix
+     */
+    public String getSplit()
+    {
+        return split;
+    }
+
+    /**
+     * @return true if structurally identical complex types are merged into one
+     */
+    public boolean isDedup()
+    {
+        return dedup;
+    }
+
+    /**
+     * @return true if the XSD is written without line breaks and indentation
+     */
+    public boolean isCompact()
+    {
+        return compact;
+    }
+
+    /**
+     * @return true if the XSD files are gzip compressed, their names are not changed
+     */
+    public boolean isGzip()
+    {
+        return gzip;
+    }
+
+    /**
+     * @return true if only the node types reachable from the root type are converted
+     */
+    public boolean isReach()
+    {
+        return reach;
+    }
+
+    /**
+     * @return true if the types of the XSD are ordered by name instead of by their first use
+     */
+    public boolean isSort()
+    {
+        return sort;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves conversions on a loopback port so that build tools reuse one warm converter.
+ * Every connection carries one request:
+ * <pre>
+ * int     protocol version
+ * int     number of options, followed by that many UTF key/value pairs (ns, nsp, r, rtype, stream)
+ * UTF     name of the CND used in messages
+ * int     length of the CND, followed by its UTF-8 bytes
+ * int     length of the property map or -1, followed by its bytes
+ * </pre>
+ * and gets one response: a byte {@link #OK} followed by the length and bytes of the XSD,
+ * or a byte {@link #ERROR} followed by a UTF message. Requests are converted concurrently
+ * on a fixed pool of threads. Every request parses its CND with a {@link CndNodeTypeLoader}
+ * of its own: a shared repository keeps the first registration of a node type and would
+ * answer with stale types or the types of another request. A connection that stays silent
+ * for {@link #READ_TIMEOUT} ms is dropped, so a stalled client cannot hold a thread.
+ * <p>
+ * The server only listens on the loopback interface but does not authenticate: every local
+ * user and process can connect and have CNDs converted. The server never reads files,
+ * the client sends the content. Run it only where all local users are trusted.
+ * @author adeka
+ */
+public class ConversionServer
+{
+    private static Logger log = LoggerFactory.getLogger(ConversionServer.class);
+
+    static final int VERSION = 1;
+
+    static final byte OK = 0;
+
+    static final byte ERROR = 1;
+
+    /**
+     * Requests larger than this are rejected instead of exhausting the heap.
+     */
+    static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * Milliseconds the server waits for the next bytes of a request.
+     */
+    static final int READ_TIMEOUT = 30 * 1000;
+
+    private final Cnd2XsdConverter converter;
+
+    private final int threads;
+
+    private ServerSocket serverSocket;
+
+    public ConversionServer(Cnd2XsdConverter converter, int threads)
+    {
+        this.converter = converter;
+        this.threads = threads;
+    }
+
+    /**
+     * Accepts requests on the loopback interface until the server is closed.
+     * @param port the port to listen on
+     */
+    public void serve(int port) throws IOException
+    {
+        synchronized (this)
+        {
+            serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+        }
+        log.info("Listening on {}", serverSocket.getLocalSocketAddress());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try
+        {
+            while (!serverSocket.isClosed())
+            {
+                final Socket socket;
+                try
+                {
+                    socket = serverSocket.accept();
+                }
+                catch (IOException ex)
+                {
+                    if (serverSocket.isClosed())
+                    {
+                        break;
+                    }
+                    throw ex;
+                }
+                pool.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        handle(socket);
+                    }
+                });
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return the port the server listens on, -1 if it is not listening yet
+     */
+    public synchronized int getLocalPort()
+    {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting requests, requests already accepted are completed.
+     */
+    public synchronized void close() throws IOException
+    {
+        if (serverSocket != null)
+        {
+            serverSocket.close();
+        }
+    }
+
+    private void handle(Socket socket)
+    {
+        try
+        {
+            try
+            {
+                socket.setSoTimeout(READ_TIMEOUT);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                byte[] xsd;
+                try
+                {
+                    xsd = convert(in);
+                }
+                catch (Exception ex)
+                {
+                    log.debug("Request failed", ex);
+                    out.writeByte(ERROR);
+                    out.writeUTF(String.valueOf(ex.getMessage()));
+                    out.flush();
+                    return;
+                }
+                out.writeByte(OK);
+                out.writeInt(xsd.length);
+                out.write(xsd);
+                out.flush();
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+        catch (IOException ex)
+        {
+            log.warn("Connection failed: {}", ex.getMessage());
+        }
+    }
+
+    private byte[] convert(DataInputStream in) throws Exception
+    {
+        int version = in.readInt();
+        if (version != VERSION)
+        {
+            throw new IOException("Unsupported protocol version " + version);
+        }
+        Map<String, String> options = new HashMap<String, String>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            options.put(in.readUTF(), in.readUTF());
+        }
+        String systemId = in.readUTF();
+        byte[] cnd = readBlock(in);
+        byte[] propmap = readBlock(in);
+
+        ConversionJob job = new ConversionJob(systemId, null, null, options.get("ns"), options.get("nsp"),
+                options.get("r"), options.get("rtype"));
+        job = job.withStreaming(Boolean.parseBoolean(options.get("stream")));
+        job = job.withDedup(Boolean.parseBoolean(options.get("dedup")));
+        job = job.withCompact(Boolean.parseBoolean(options.get("compact")));
+        job = job.withGzip(Boolean.parseBoolean(options.get("gzip")));
+        job = job.withReach(Boolean.parseBoolean(options.get("reach")));
+        job = job.withSort(Boolean.parseBoolean(options.get("sort")));
+        Map<String, String[]> attrMap = propmap == null ? new HashMap<String, String[]>()
+                : Cnd2XsdConverter.loadPropertyMap(new ByteArrayInputStream(propmap));
+        NodeTypeDef[] ntypes = converter.loadNodeTypes(new CndNodeTypeLoader(),
+                new InputStreamReader(new ByteArrayInputStream(cnd), "UTF-8"), systemId, job);
+        ByteArrayOutputStream xsd = new ByteArrayOutputStream();
+        converter.write(ntypes, attrMap, job, xsd);
+        log.debug("Converted {}", systemId);
+        return xsd.toByteArray();
+    }
+
+    /**
+     * @return the bytes of a length prefixed block or null if the length is -1
+     */
+    static byte[] readBlock(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length == -1)
+        {
+            return null;
+        }
+        if (length < 0 || length > MAX_LENGTH)
+        {
+            throw new IOException("Invalid block length " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+}
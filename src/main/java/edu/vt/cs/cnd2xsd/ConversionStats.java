@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3.generated.ComplexType;
+import org.w3.generated.ElementElement;
+import org.w3.generated.OpenAttrs;
+import org.w3.generated.SchemaElement;
+
+/**
+ * Wall time and allocated bytes of the phases of one conversion, and the number
+ * of items it produced. The phases of a conversion run on one thread, which is
+ * the thread the allocations are measured for. Not thread safe.
+ * @author adeka
+ */
+public class ConversionStats
+{
+    private static Logger log = LoggerFactory.getLogger(ConversionStats.class);
+
+    /**
+     * The measured phases. The streaming backend maps and writes in one pass,
+     * its time is reported as marshalling.
+     */
+    public enum Phase
+    {
+        STARTUP("repositoryStartup"),
+        REGISTRATION("registration"),
+        PROPERTY_MAP("propertyMap"),
+        MAPPING("mapping"),
+        MARSHALLING("marshalling");
+
+        private final String key;
+
+        private Phase(String key)
+        {
+            this.key = key;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = getThreadBean();
+
+    private final String cndPath;
+
+    private long[] nanos = new long[Phase.values().length];
+
+    private long[] bytes = new long[Phase.values().length];
+
+    private Phase running;
+
+    private long startNanos;
+
+    private long startBytes;
+
+    private int nodeTypes;
+
+    private String cacheResult;
+
+    private int complexTypes;
+
+    private int elements;
+
+    private int attributes;
+
+    public ConversionStats(String cndPath)
+    {
+        this.cndPath = cndPath;
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean()
+    {
+        try
+        {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean)
+            {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported())
+                {
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                    return sunBean;
+                }
+            }
+        }
+        catch (Throwable ex)
+        {
+            log.debug("Allocation measurement not available: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    private static long allocatedBytes()
+    {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Starts measuring a phase, phases do not nest.
+     */
+    public void start(Phase phase)
+    {
+        running = phase;
+        startBytes = allocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring the running phase and adds the time and bytes to it.
+     */
+    public void stop()
+    {
+        if (running == null)
+        {
+            return;
+        }
+        nanos[running.ordinal()] += System.nanoTime() - startNanos;
+        bytes[running.ordinal()] += allocatedBytes() - startBytes;
+        running = null;
+    }
+
+    public long getNanos(Phase phase)
+    {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @return the bytes allocated during the phase, 0 if the JVM cannot measure it
+     */
+    public long getAllocatedBytes(Phase phase)
+    {
+        return bytes[phase.ordinal()];
+    }
+
+    public long getTotalNanos()
+    {
+        long total = 0;
+        for (long n : nanos)
+        {
+            total += n;
+        }
+        return total;
+    }
+
+    public String getCndPath()
+    {
+        return cndPath;
+    }
+
+    public int getNodeTypes()
+    {
+        return nodeTypes;
+    }
+
+    void setNodeTypes(int nodeTypes)
+    {
+        this.nodeTypes = nodeTypes;
+    }
+
+    /**
+     * @return hit, spliced or miss if the conversion used a cache, null otherwise
+     */
+    public String getCacheResult()
+    {
+        return cacheResult;
+    }
+
+    void setCacheResult(String cacheResult)
+    {
+        this.cacheResult = cacheResult;
+    }
+
+    public int getComplexTypes()
+    {
+        return complexTypes;
+    }
+
+    public int getElements()
+    {
+        return elements;
+    }
+
+    public int getAttributes()
+    {
+        return attributes;
+    }
+
+    void addCounts(int complexTypes, int elements, int attributes)
+    {
+        this.complexTypes += complexTypes;
+        this.elements += elements;
+        this.attributes += attributes;
+    }
+
+    /**
+     * Counts the complex types, elements and attributes of a schema.
+     */
+    void count(SchemaElement schema)
+    {
+        for (OpenAttrs item : schema.getIncludesAndImportsAndRedefines())
+        {
+            if (item instanceof ComplexType)
+            {
+                ComplexType ct = (ComplexType) item;
+                complexTypes++;
+                attributes += ct.getAttributesAndAttributeGroups().size();
+                if (ct.getSequence() != null)
+                {
+                    elements += ct.getSequence().getElementsAndGroupsAndAlls().size();
+                }
+            }
+            else if (item instanceof ElementElement)
+            {
+                elements++;
+            }
+        }
+    }
+
+    /**
+     * Prints the stats in a human readable form.
+     */
+    public void print(PrintStream out)
+    {
+        out.println("Conversion of " + cndPath);
+        for (Phase phase : Phase.values())
+        {
+            out.println(String.format("  %-18s %10.1f ms %12d bytes", phase.getKey(),
+                    getNanos(phase) / 1e6, getAllocatedBytes(phase)));
+        }
+        out.println(String.format("  %-18s %10.1f ms", "total", getTotalNanos() / 1e6));
+        out.println(String.format("  %d node types, %d complex types, %d elements, %d attributes",
+                nodeTypes, complexTypes, elements, attributes));
+        if (cacheResult != null)
+        {
+            out.println("  cache " + cacheResult);
+        }
+    }
+
+    /**
+     * @return the stats as a JSON object
+     */
+    public String toJson()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"cnd\":").append(quote(cndPath));
+        sb.append(",\"phases\":{");
+        for (Phase phase : Phase.values())
+        {
+            if (phase.ordinal() > 0)
+            {
+                sb.append(',');
+            }
+            sb.append('"').append(phase.getKey()).append("\":{\"nanos\":").append(getNanos(phase))
+                    .append(",\"allocatedBytes\":").append(getAllocatedBytes(phase)).append('}');
+        }
+        sb.append("},\"totalNanos\":").append(getTotalNanos());
+        sb.append(",\"nodeTypes\":").append(nodeTypes);
+        sb.append(",\"complexTypes\":").append(complexTypes);
+        sb.append(",\"elements\":").append(elements);
+        sb.append(",\"attributes\":").append(attributes);
+        sb.append(",\"cache\":").append(quote(cacheResult));
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * @return the stats of several conversions as a JSON array
+     */
+    public static String toJson(List<ConversionStats> stats)
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < stats.size(); i++)
+        {
+            if (i > 0)
+            {
+                sb.append(",\n");
+            }
+            sb.append(stats.get(i).toJson());
+        }
+        return sb.append("]").toString();
+    }
+
+    private static String quote(String value)
+    {
+        if (value == null)
+        {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                default:
+                    if (c < 0x20)
+                    {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
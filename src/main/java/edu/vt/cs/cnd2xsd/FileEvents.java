@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for file system events on a few files through the NIO WatchService of Java 7.
+ * The directories of the files are watched, events on other files are ignored.
+ * Only used by {@link SchemaWatcher} when the runtime has java.nio.file.
+ * @author adeka
+ */
+class FileEvents
+{
+    private final WatchService service;
+
+    private final Set<Path> paths = new HashSet<Path>();
+
+    FileEvents(File[] files) throws IOException
+    {
+        service = FileSystems.getDefault().newWatchService();
+        Set<Path> dirs = new HashSet<Path>();
+        for (File file : files)
+        {
+            Path path = file.getAbsoluteFile().toPath().normalize();
+            paths.add(path);
+            Path dir = path.getParent();
+            if (dirs.add(dir))
+            {
+                dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    /**
+     * Waits until one of the files may have changed or the time is up.
+     * @param millis the longest time to wait
+     * @return true if one of the files got an event or events were lost
+     */
+    boolean await(long millis) throws InterruptedException
+    {
+        boolean touched = false;
+        WatchKey key = service.poll(millis, TimeUnit.MILLISECONDS);
+        while (key != null)
+        {
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents())
+            {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || paths.contains(dir.resolve((Path) event.context())))
+                {
+                    touched = true;
+                }
+            }
+            key.reset();
+            key = service.poll();
+        }
+        return touched;
+    }
+
+    void close()
+    {
+        try
+        {
+            service.close();
+        }
+        catch (IOException ex)
+        {
+            //nothing is watched any more either way
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+/**
+ * In-memory child node definition of a {@link NodeTypeDef}.
+ * @author adeka
+ */
+public class NodeDef
+{
+    private String name;
+
+    private String defaultPrimaryType;
+
+    private String[] requiredPrimaryTypes = new String[0];
+
+    private boolean mandatory;
+
+    private boolean allowsSameNameSiblings;
+
+    public NodeDef(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the name of the default primary type or null if there is none
+     */
+    public String getDefaultPrimaryType()
+    {
+        return defaultPrimaryType;
+    }
+
+    void setDefaultPrimaryType(String defaultPrimaryType)
+    {
+        this.defaultPrimaryType = defaultPrimaryType;
+    }
+
+    public String[] getRequiredPrimaryTypes()
+    {
+        return requiredPrimaryTypes;
+    }
+
+    void setRequiredPrimaryTypes(String[] requiredPrimaryTypes)
+    {
+        this.requiredPrimaryTypes = requiredPrimaryTypes;
+    }
+
+    public boolean isMandatory()
+    {
+        return mandatory;
+    }
+
+    void setMandatory(boolean mandatory)
+    {
+        this.mandatory = mandatory;
+    }
+
+    public boolean allowsSameNameSiblings()
+    {
+        return allowsSameNameSiblings;
+    }
+
+    void setAllowsSameNameSiblings(boolean allowsSameNameSiblings)
+    {
+        this.allowsSameNameSiblings = allowsSameNameSiblings;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeDefinition;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.PropertyDefinition;
+
+/**
+ * In-memory node type definition used as the input of the XSD conversion.
+ * Only the declared items are kept, names are the JCR names as found in the CND.
+ * @author adeka
+ */
+public class NodeTypeDef
+{
+    private String name;
+
+    private boolean mixin;
+
+    private boolean abstractType;
+
+    private List<String> supertypes = new ArrayList<String>();
+
+    private List<NodeDef> childNodes = new ArrayList<NodeDef>();
+
+    private List<PropertyDef> properties = new ArrayList<PropertyDef>();
+
+    public NodeTypeDef(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Copies the declared part of a registered node type into the model.
+     * @param nt the node type as returned by the repository
+     * @return the model of the node type
+     * @throws RepositoryException
+     */
+    public static NodeTypeDef fromNodeType(NodeType nt) throws RepositoryException
+    {
+        NodeTypeDef def = new NodeTypeDef(nt.getName());
+        def.setMixin(nt.isMixin());
+        def.setAbstract(nt.isAbstract());
+        for (String st : nt.getDeclaredSupertypeNames())
+        {
+            def.addSupertype(st);
+        }
+        for (NodeDefinition nd : nt.getDeclaredChildNodeDefinitions())
+        {
+            NodeDef child = new NodeDef(nd.getName());
+            child.setDefaultPrimaryType(nd.getDefaultPrimaryTypeName());
+            child.setRequiredPrimaryTypes(nd.getRequiredPrimaryTypeNames());
+            child.setMandatory(nd.isMandatory());
+            child.setAllowsSameNameSiblings(nd.allowsSameNameSiblings());
+            def.addChildNode(child);
+        }
+        for (PropertyDefinition pd : nt.getDeclaredPropertyDefinitions())
+        {
+            PropertyDef prop = new PropertyDef(pd.getName());
+            prop.setRequiredType(pd.getRequiredType());
+            prop.setMultiple(pd.isMultiple());
+            prop.setMandatory(pd.isMandatory());
+            Value[] values = pd.getDefaultValues();
+            if (values != null)
+            {
+                String[] defaults = new String[values.length];
+                for (int i = 0; i < values.length; i++)
+                {
+                    defaults[i] = values[i].getString();
+                }
+                prop.setDefaultValues(defaults);
+            }
+            prop.setValueConstraints(pd.getValueConstraints());
+            def.addProperty(prop);
+        }
+        return def;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isMixin()
+    {
+        return mixin;
+    }
+
+    void setMixin(boolean mixin)
+    {
+        this.mixin = mixin;
+    }
+
+    public boolean isAbstract()
+    {
+        return abstractType;
+    }
+
+    void setAbstract(boolean abstractType)
+    {
+        this.abstractType = abstractType;
+    }
+
+    /**
+     * @return the names of the declared supertypes
+     */
+    public List<String> getDeclaredSupertypes()
+    {
+        return supertypes;
+    }
+
+    void addSupertype(String supertype)
+    {
+        supertypes.add(supertype);
+    }
+
+    public List<NodeDef> getDeclaredChildNodeDefinitions()
+    {
+        return childNodes;
+    }
+
+    void addChildNode(NodeDef child)
+    {
+        childNodes.add(child);
+    }
+
+    public List<PropertyDef> getDeclaredPropertyDefinitions()
+    {
+        return properties;
+    }
+
+    void addProperty(PropertyDef property)
+    {
+        properties.add(property);
+    }
+
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.jcr.RepositoryException;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+
+/**
+ * Turns a CND into node type definitions. A loader may be used for several CNDs
+ * and keeps its resources until it is closed.
+ * @author adeka
+ */
+public interface NodeTypeLoader
+{
+    /**
+     * Acquires the resources of the loader, e.g. starts the repository. Calling it is
+     * optional, load starts the loader when needed. Calling it again has no effect.
+     */
+    void start() throws RepositoryException;
+
+    /**
+     * @param reader the CND source, left open
+     * @param systemId the name of the source used in messages
+     * @param prefix the namespace prefix of the node types
+     * @return the node types defined by the CND
+     */
+    NodeTypeDef[] load(Reader reader, String systemId, String prefix)
+            throws RepositoryException, IOException, ParseException;
+
+    /**
+     * Loads only the node types reachable from a root type, see {@link ReachableTypes}.
+     * @param reader the CND source, left open
+     * @param systemId the name of the source used in messages
+     * @param prefix the namespace prefix of the node types
+     * @param rootType the name or local name of the root type, null to load all node types
+     * @return the reachable node types
+     */
+    NodeTypeDef[] load(Reader reader, String systemId, String prefix, String rootType)
+            throws RepositoryException, IOException, ParseException;
+
+    /**
+     * Releases the resources held by the loader.
+     */
+    void close();
+}
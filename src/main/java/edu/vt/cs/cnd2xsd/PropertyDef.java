@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import javax.jcr.PropertyType;
+
+/**
+ * In-memory property definition of a {@link NodeTypeDef}.
+ * Default values and value constraints are kept in their string form.
+ * @author adeka
+ */
+public class PropertyDef
+{
+    private String name;
+
+    private int requiredType = PropertyType.STRING;
+
+    private boolean multiple;
+
+    private boolean mandatory;
+
+    private String[] defaultValues;
+
+    private String[] valueConstraints;
+
+    public PropertyDef(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getRequiredType()
+    {
+        return requiredType;
+    }
+
+    void setRequiredType(int requiredType)
+    {
+        this.requiredType = requiredType;
+    }
+
+    public boolean isMultiple()
+    {
+        return multiple;
+    }
+
+    void setMultiple(boolean multiple)
+    {
+        this.multiple = multiple;
+    }
+
+    public boolean isMandatory()
+    {
+        return mandatory;
+    }
+
+    void setMandatory(boolean mandatory)
+    {
+        this.mandatory = mandatory;
+    }
+
+    /**
+     * @return the default values or null if none are defined
+     */
+    public String[] getDefaultValues()
+    {
+        return defaultValues;
+    }
+
+    void setDefaultValues(String[] defaultValues)
+    {
+        this.defaultValues = defaultValues;
+    }
+
+    /**
+     * @return the value constraints or null if none are defined
+     */
+    public String[] getValueConstraints()
+    {
+        return valueConstraints;
+    }
+
+    void setValueConstraints(String[] valueConstraints)
+    {
+        this.valueConstraints = valueConstraints;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.IOException;
+
+/**
+ * A property map that cannot be parsed. The message starts with the source and the line.
+ * @author adeka
+ */
+public class PropertyMapException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+
+    public PropertyMapException(String source, int line, String message)
+    {
+        super(source + ":" + line + ": " + message);
+        this.line = line;
+    }
+
+    /**
+     * @return the line of the error, starting at 1
+     */
+    public int getLine()
+    {
+        return line;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the property map of the -fp option. Every line maps a node type to the
+ * attributes of its complex type:
+ * <pre>
+ * # comment
+ * nt:base
+ * mix:versionable#jcr:versionHistory, jcr:baseVersion
+ * &#64;DATE#date
+ * </pre>
+ * A node type without attributes maps to null. Keys starting with @ change the XSD
+ * type of a property type, see {@link TypeMapping}. The file is UTF-8, lines may end with
+ * CRLF and keys and values are trimmed. Large files are memory mapped, the text is
+ * decoded once and parsed in a single pass. Keys and values are interned, the map is
+ * unmodifiable.
+ * @author adeka
+ */
+public class PropertyMapLoader
+{
+    private static Logger log = LoggerFactory.getLogger(PropertyMapLoader.class);
+
+    /**
+     * Files of at least this size are memory mapped instead of read.
+     */
+    static final long MAP_THRESHOLD = 256 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final char SEPARATOR = '#';
+
+    private static final char LIST_SEPARATOR = ',';
+
+    private PropertyMapLoader()
+    {
+    }
+
+    /**
+     * @param file the property map
+     * @return the unmodifiable map of node type names to attribute names
+     * @throws PropertyMapException if the file is not valid
+     */
+    public static Map<String, String[]> load(File file) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD)
+            {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            else
+            {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0)
+                {
+                }
+                bytes.flip();
+            }
+            return parse(bytes, file.getPath());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a property map from a stream, the stream is left open.
+     * @param in the property map content
+     * @param source the name of the source used in error messages
+     * @return the unmodifiable map of node type names to attribute names
+     * @throws PropertyMapException if the content is not valid
+     */
+    public static Map<String, String[]> load(InputStream in, String source) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+        {
+            out.write(buffer, 0, n);
+        }
+        return parse(ByteBuffer.wrap(out.toByteArray()), source);
+    }
+
+    /**
+     * Reads a property map from the remaining bytes of a buffer, the position of the buffer is not changed.
+     * @param bytes the property map content
+     * @param source the name of the source used in error messages
+     * @return the unmodifiable map of node type names to attribute names
+     * @throws PropertyMapException if the content is not valid
+     */
+    public static Map<String, String[]> load(ByteBuffer bytes, String source) throws IOException
+    {
+        return parse(bytes.duplicate(), source);
+    }
+
+    static Map<String, String[]> parse(ByteBuffer bytes, String source) throws PropertyMapException
+    {
+        CharBuffer text = decode(bytes, source);
+        Map<String, String[]> map = new HashMap<String, String[]>();
+        List<String> values = new ArrayList<String>();
+        int length = text.limit();
+        int lineNo = 0;
+        int pos = 0;
+        while (pos < length)
+        {
+            lineNo++;
+            int end = pos;
+            while (end < length && text.get(end) != '\n')
+            {
+                end++;
+            }
+            int next = end + 1;
+            int start = skipSpace(text, pos, end);
+            end = trimSpace(text, start, end);
+            pos = next;
+            if (start == end || text.get(start) == SEPARATOR)
+            {
+                //empty or comment line
+                continue;
+            }
+            int separator = -1;
+            for (int i = start; i < end; i++)
+            {
+                if (text.get(i) == SEPARATOR)
+                {
+                    if (separator >= 0)
+                    {
+                        throw new PropertyMapException(source, lineNo, "more than one '" + SEPARATOR + "'");
+                    }
+                    separator = i;
+                }
+            }
+            int keyEnd = separator < 0 ? end : trimSpace(text, start, separator);
+            String key = text.subSequence(start, keyEnd).toString().intern();
+            String[] attrs = null;
+            if (separator >= 0)
+            {
+                values.clear();
+                int v = separator + 1;
+                while (v <= end)
+                {
+                    int vEnd = v;
+                    while (vEnd < end && text.get(vEnd) != LIST_SEPARATOR)
+                    {
+                        vEnd++;
+                    }
+                    int vStart = skipSpace(text, v, vEnd);
+                    int vStop = trimSpace(text, vStart, vEnd);
+                    if (vStart < vStop)
+                    {
+                        values.add(text.subSequence(vStart, vStop).toString().intern());
+                    }
+                    v = vEnd + 1;
+                }
+                if (!values.isEmpty())
+                {
+                    attrs = values.toArray(new String[values.size()]);
+                }
+            }
+            if (map.put(key, attrs) != null)
+            {
+                log.debug("{} redefined at {}", key, source + ":" + lineNo);
+            }
+        }
+        log.debug("Read {} entries from {}", map.size(), source);
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static CharBuffer decode(ByteBuffer bytes, String source) throws PropertyMapException
+    {
+        CharsetDecoder decoder = UTF8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer text = CharBuffer.allocate(bytes.remaining());
+        CoderResult result = decoder.decode(bytes, text, true);
+        if (result.isUnderflow())
+        {
+            result = decoder.flush(text);
+        }
+        if (result.isError())
+        {
+            text.flip();
+            int lineNo = 1;
+            while (text.hasRemaining())
+            {
+                if (text.get() == '\n')
+                {
+                    lineNo++;
+                }
+            }
+            throw new PropertyMapException(source, lineNo, "invalid UTF-8 at byte " + bytes.position());
+        }
+        text.flip();
+        //skip a byte order mark
+        if (text.hasRemaining() && text.get(0) == '\uFEFF')
+        {
+            text.position(1);
+            text = text.slice();
+        }
+        return text;
+    }
+
+    private static int skipSpace(CharBuffer text, int start, int end)
+    {
+        while (start < end && Character.isWhitespace(text.get(start)))
+        {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimSpace(CharBuffer text, int start, int end)
+    {
+        while (end > start && Character.isWhitespace(text.get(end - 1)))
+        {
+            end--;
+        }
+        return end;
+    }
+}
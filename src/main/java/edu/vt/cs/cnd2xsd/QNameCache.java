@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Parsed JCR names and XSD type names of one conversion. A name is parsed or a
+ * QName created once per run, every further reference shares it; QNames are
+ * immutable, so sharing them in the JAXB model is safe. Not thread safe.
+ * @author adeka
+ */
+public class QNameCache
+{
+    /**
+     * xs:string, the type of every attribute from the property map.
+     */
+    public static final QName XS_STRING = new QName(Constants.XML_NAMESPACE, Constants.STRING);
+
+    private final String namespace;
+
+    private final Map<String, QName> jcrNames = new HashMap<String, QName>();
+
+    private final Map<String, QName> targetTypes = new HashMap<String, QName>();
+
+    private final TypeMapping typeMapping;
+
+    /**
+     * @param namespace the target namespace of the schema
+     */
+    public QNameCache(String namespace)
+    {
+        this(namespace, TypeMapping.getDefault());
+    }
+
+    /**
+     * @param namespace the target namespace of the schema
+     * @param typeMapping the XSD types of the property types
+     */
+    public QNameCache(String namespace, TypeMapping typeMapping)
+    {
+        this.namespace = namespace;
+        this.typeMapping = typeMapping;
+    }
+
+    /**
+     * @param name a prefixed JCR name
+     * @return the prefix and local name, null if the name has no prefix
+     */
+    public QName jcrName(String name)
+    {
+        QName qname = jcrNames.get(name);
+        if (qname == null && !jcrNames.containsKey(name))
+        {
+            qname = SchemaMapper.getQualifiedName(name);
+            jcrNames.put(name, qname);
+        }
+        return qname;
+    }
+
+    /**
+     * @return the local part of a JCR name, the name itself if it has no prefix
+     */
+    public String localName(String name)
+    {
+        QName qname = jcrName(name);
+        return qname == null ? name : qname.getLocalPart();
+    }
+
+    /**
+     * @param localName the name of a complex type of the schema
+     * @return the name qualified with the target namespace
+     */
+    public QName targetType(String localName)
+    {
+        QName qname = targetTypes.get(localName);
+        if (qname == null)
+        {
+            qname = new QName(namespace, localName);
+            targetTypes.put(localName, qname);
+        }
+        return qname;
+    }
+
+    /**
+     * @param requiredType a {@link javax.jcr.PropertyType} value
+     * @return the XSD type of a property of that type
+     */
+    public QName propertyType(int requiredType)
+    {
+        return typeMapping.get(requiredType);
+    }
+}
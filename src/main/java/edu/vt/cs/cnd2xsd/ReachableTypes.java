@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.RepositoryException;
+import javax.xml.namespace.QName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the node types reachable from the root type of a conversion: the root type,
+ * its supertypes, the types of its child nodes and the types sharing the name of its
+ * multi-valued properties, and so on for every type found. Node types are resolved on
+ * demand, so a loader only has to build the definitions that end up in the XSD.
+ * @author adeka
+ */
+class ReachableTypes
+{
+    private static Logger log = LoggerFactory.getLogger(ReachableTypes.class);
+
+    /**
+     * Looks up node type definitions by name.
+     */
+    interface Resolver
+    {
+        /**
+         * @param name a node type name as referenced by a definition
+         * @return the definitions known under the name, empty if there are none
+         */
+        List<NodeTypeDef> resolve(String name) throws RepositoryException;
+    }
+
+    private ReachableTypes()
+    {
+    }
+
+    /**
+     * @param root the name of the root type
+     * @param resolver looks up the referenced types
+     * @return the reachable definitions in the order they were found
+     */
+    static List<NodeTypeDef> collect(String root, Resolver resolver) throws RepositoryException
+    {
+        List<NodeTypeDef> found = new ArrayList<NodeTypeDef>();
+        Set<String> seen = new HashSet<String>();
+        LinkedList<String> queue = new LinkedList<String>();
+        seen.add(root);
+        queue.add(root);
+        while (!queue.isEmpty())
+        {
+            for (NodeTypeDef nt : resolver.resolve(queue.removeFirst()))
+            {
+                found.add(nt);
+                for (String ref : references(nt))
+                {
+                    if (seen.add(ref))
+                    {
+                        queue.add(ref);
+                    }
+                }
+            }
+        }
+        log.debug("{} node types reachable from {}", found.size(), root);
+        return found;
+    }
+
+    /**
+     * @return the names of the node types a definition refers to
+     */
+    static Set<String> references(NodeTypeDef nt)
+    {
+        Set<String> refs = new HashSet<String>();
+        for (String st : nt.getDeclaredSupertypes())
+        {
+            refs.add(st);
+        }
+        for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+        {
+            String defaultNT = SupertypeTable.defaultType(nd);
+            if (defaultNT != null)
+            {
+                refs.add(defaultNT);
+            }
+        }
+        //multi-valued properties share the complex type of a node type with the same local name
+        for (PropertyDef pDef : nt.getDeclaredPropertyDefinitions())
+        {
+            if (pDef.isMultiple())
+            {
+                refs.add(pDef.getName());
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Selects the reachable types of parsed definitions. Names are matched by local name,
+     * the way the mapper merges them into complex types.
+     * @param ntypes all node types of the CND
+     * @param rootType the name or the local name of the root type
+     * @return the reachable node types in CND order
+     */
+    static NodeTypeDef[] select(NodeTypeDef[] ntypes, String rootType) throws RepositoryException
+    {
+        final Map<String, List<NodeTypeDef>> byName = new HashMap<String, List<NodeTypeDef>>();
+        for (NodeTypeDef nt : ntypes)
+        {
+            String local = localName(nt.getName());
+            List<NodeTypeDef> list = byName.get(local);
+            if (list == null)
+            {
+                list = new ArrayList<NodeTypeDef>(1);
+                byName.put(local, list);
+            }
+            list.add(nt);
+        }
+        List<NodeTypeDef> found = collect(localName(rootType), new Resolver()
+        {
+            public List<NodeTypeDef> resolve(String name)
+            {
+                List<NodeTypeDef> list = byName.remove(localName(name));
+                return list == null ? new ArrayList<NodeTypeDef>(0) : list;
+            }
+        });
+        if (found.isEmpty())
+        {
+            log.warn("Root type {} is not defined", rootType);
+        }
+        Set<NodeTypeDef> reachable = new HashSet<NodeTypeDef>(found);
+        List<NodeTypeDef> selected = new ArrayList<NodeTypeDef>(found.size());
+        for (NodeTypeDef nt : ntypes)
+        {
+            if (reachable.contains(nt))
+            {
+                selected.add(nt);
+            }
+        }
+        return selected.toArray(new NodeTypeDef[selected.size()]);
+    }
+
+    private static String localName(String name)
+    {
+        QName qn = SchemaMapper.getQualifiedName(name);
+        return qn == null ? name : qn.getLocalPart();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Credentials;
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.NodeTypeManager;
+import org.apache.jackrabbit.commons.cnd.CndImporter;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+import org.apache.jackrabbit.core.TransientRepository;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads node types by registering the CND with a TransientRepository.
+ * The repository is started on the first load and the session is kept
+ * until close, so several CNDs share one repository. The session is not
+ * thread safe, concurrent loads are serialized.
+ * <p>
+ * By default the repository lives in ./repository with the default configuration,
+ * another directory may be given. In memory mode it uses the in-memory file systems and persistence managers of
+ * repository-inmemory.xml, so registering node types writes nothing to disk except the
+ * lock file of a temporary home directory, which is deleted on close.
+ * @author adeka
+ */
+public class RepositoryNodeTypeLoader implements NodeTypeLoader
+{
+    private static Logger log = LoggerFactory.getLogger(RepositoryNodeTypeLoader.class);
+
+    private static final String INMEMORY_CONFIG = "/repository-inmemory.xml";
+
+    private final boolean inMemory;
+
+    /**
+     * directory of the persistent repository, null for ./repository
+     */
+    private final File directory;
+
+    private Session session;
+
+    /**
+     * home directory of the in-memory repository
+     */
+    private File home;
+
+    public RepositoryNodeTypeLoader()
+    {
+        this(false);
+    }
+
+    /**
+     * @param inMemory true to keep the repository in memory instead of ./repository
+     */
+    public RepositoryNodeTypeLoader(boolean inMemory)
+    {
+        this.inMemory = inMemory;
+        this.directory = null;
+    }
+
+    /**
+     * @param directory the home of the persistent repository, created with the default
+     *        configuration if it is empty and kept on close
+     */
+    public RepositoryNodeTypeLoader(File directory)
+    {
+        this.inMemory = false;
+        this.directory = directory;
+    }
+
+    public synchronized void start() throws RepositoryException
+    {
+        getSession();
+    }
+
+    public synchronized NodeTypeDef[] load(Reader reader, String systemId, String prefix)
+            throws RepositoryException, IOException
+    {
+        Session s = getSession();
+        //now lets load a NodeTypeDef to the session
+        NodeType[] registered = Cnd2XsdConverter.RegisterCustomNodeTypes(s, reader, prefix);
+        s.save();
+        if (registered == null)
+        {
+            return null;
+        }
+        NodeTypeDef[] defs = new NodeTypeDef[registered.length];
+        for (int i = 0; i < registered.length; i++)
+        {
+            defs[i] = NodeTypeDef.fromNodeType(registered[i]);
+        }
+        return defs;
+    }
+
+    /**
+     * Registers the whole CND, but builds definitions only for the types reachable from the
+     * root type, looking them up in the node type manager as they are referenced. Only types
+     * with the namespace prefix of the conversion are followed, built-in types are not mapped.
+     */
+    public synchronized NodeTypeDef[] load(Reader reader, String systemId, final String prefix, String rootType)
+            throws RepositoryException, IOException, ParseException
+    {
+        if (rootType == null)
+        {
+            return load(reader, systemId, prefix);
+        }
+        if (prefix == null)
+        {
+            //nothing tells the custom types from the built-in ones, select from the registered types
+            NodeTypeDef[] ntypes = load(reader, systemId, prefix);
+            return ntypes == null ? null : ReachableTypes.select(ntypes, rootType);
+        }
+        Session s = getSession();
+        NodeType[] registered = CndImporter.registerNodeTypes(reader, s);
+        s.save();
+        log.debug("Registered {} node types from {}", registered.length, systemId);
+
+        final NodeTypeManager manager = s.getWorkspace().getNodeTypeManager();
+        String root = rootType.indexOf(':') < 0 ? prefix + ":" + rootType : rootType;
+        List<NodeTypeDef> found = ReachableTypes.collect(root, new ReachableTypes.Resolver()
+        {
+            public List<NodeTypeDef> resolve(String name) throws RepositoryException
+            {
+                List<NodeTypeDef> defs = new ArrayList<NodeTypeDef>(1);
+                if (name.startsWith(prefix + ":") && manager.hasNodeType(name))
+                {
+                    defs.add(NodeTypeDef.fromNodeType(manager.getNodeType(name)));
+                }
+                return defs;
+            }
+        });
+        if (found.isEmpty())
+        {
+            log.warn("Root type {} is not registered", root);
+        }
+        return found.toArray(new NodeTypeDef[found.size()]);
+    }
+
+    /**
+     * @return the session of the loader, logging in to the repository on first use
+     */
+    public synchronized Session getSession() throws RepositoryException
+    {
+        if (session == null)
+        {
+            //first register the CND with the repository
+            Repository repository = inMemory ? createInMemoryRepository()
+                    : directory == null ? new TransientRepository() : new TransientRepository(directory);
+            Credentials c = new SimpleCredentials(Constants.DEFAULT_USERID, Constants.DEFAULT_PASS.toCharArray());
+            session = repository.login(c);
+            String user = session.getUserID();
+            String name = repository.getDescriptor(Repository.REP_NAME_DESC);
+            log.debug("Logged in as {} to a repository :{}", user,  name );
+        }
+        return session;
+    }
+
+    private Repository createInMemoryRepository() throws RepositoryException
+    {
+        try
+        {
+            home = File.createTempFile("cnd2xsd", ".repository");
+            if (!home.delete() || !home.mkdir())
+            {
+                throw new IOException("Cannot create " + home);
+            }
+            InputStream in = RepositoryNodeTypeLoader.class.getResourceAsStream(INMEMORY_CONFIG);
+            if (in == null)
+            {
+                throw new IOException("Missing " + INMEMORY_CONFIG);
+            }
+            try
+            {
+                log.debug("Starting an in-memory repository in {}", home);
+                return new TransientRepository(RepositoryConfig.create(in, home.getPath()));
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new RepositoryException("Cannot start the in-memory repository", ex);
+        }
+    }
+
+    public synchronized void close()
+    {
+        if (session != null)
+        {
+            //the last logout shuts the transient repository down
+            session.logout();
+            session = null;
+        }
+        if (home != null)
+        {
+            delete(home);
+            home = null;
+        }
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        if (!file.delete())
+        {
+            log.warn("Cannot delete {}", file);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.jcr.RepositoryException;
+import javax.xml.bind.JAXBException;
+import javax.xml.validation.Schema;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Keeps the compiled schemas of the most recently used CNDs. Entries are keyed by a
+ * hash of the CND, the property map and the options, so an edited CND is compiled
+ * again. Threads asking for the same schema at once wait for a single compilation.
+ * @author adeka
+ */
+public class SchemaCache
+{
+    private static Logger log = LoggerFactory.getLogger(SchemaCache.class);
+
+    private final Cnd2XsdConverter converter;
+
+    private final NodeTypeLoader loader;
+
+    private final Map<String, FutureTask<Schema>> schemas;
+
+    /**
+     * @param converter compiles the schemas
+     * @param loader turns the CNDs into node type definitions
+     * @param capacity the number of compiled schemas kept
+     */
+    public SchemaCache(Cnd2XsdConverter converter, NodeTypeLoader loader, final int capacity)
+    {
+        this.converter = converter;
+        this.loader = loader;
+        this.schemas = new LinkedHashMap<String, FutureTask<Schema>>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, FutureTask<Schema>> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param job the CND, property map and options of the schema, the XSD path is not used
+     * @return the compiled schema
+     */
+    public Schema getSchema(final ConversionJob job)
+            throws RepositoryException, IOException, ParseException, JAXBException, SAXException
+    {
+        String key = ConversionCache.hash((ConversionCache.configHash(job, loader) + "\0"
+                + ConversionCache.hash(ConversionCache.readFile(new File(job.getCndPath())))).getBytes("UTF-8"));
+        FutureTask<Schema> task;
+        boolean compile = false;
+        synchronized (schemas)
+        {
+            task = schemas.get(key);
+            if (task == null)
+            {
+                task = new FutureTask<Schema>(new Callable<Schema>()
+                {
+                    public Schema call() throws Exception
+                    {
+                        return converter.compileSchema(loader, job);
+                    }
+                });
+                schemas.put(key, task);
+                compile = true;
+            }
+        }
+        if (compile)
+        {
+            log.debug("Compiling schema of {}", job.getCndPath());
+            task.run();
+        }
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the schema of " + job.getCndPath());
+        }
+        catch (ExecutionException ex)
+        {
+            //do not keep the failure, the next call tries again
+            synchronized (schemas)
+            {
+                if (schemas.get(key) == task)
+                {
+                    schemas.remove(key);
+                }
+            }
+            throw rethrow(ex.getCause());
+        }
+    }
+
+    /**
+     * Removes all compiled schemas.
+     */
+    public void clear()
+    {
+        synchronized (schemas)
+        {
+            schemas.clear();
+        }
+    }
+
+    private static IOException rethrow(Throwable cause)
+            throws RepositoryException, ParseException, JAXBException, SAXException
+    {
+        if (cause instanceof IOException)
+        {
+            return (IOException) cause;
+        }
+        if (cause instanceof RepositoryException)
+        {
+            throw (RepositoryException) cause;
+        }
+        if (cause instanceof ParseException)
+        {
+            throw (ParseException) cause;
+        }
+        if (cause instanceof JAXBException)
+        {
+            throw (JAXBException) cause;
+        }
+        if (cause instanceof SAXException)
+        {
+            throw (SAXException) cause;
+        }
+        if (cause instanceof RuntimeException)
+        {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error)
+        {
+            throw (Error) cause;
+        }
+        IOException io = new IOException(cause.getMessage());
+        io.initCause(cause);
+        return io;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3.generated.Annotated;
+import org.w3.generated.Attribute;
+import org.w3.generated.ComplexType;
+import org.w3.generated.Element;
+import org.w3.generated.OpenAttrs;
+import org.w3.generated.SchemaElement;
+
+/**
+ * Merges structurally identical complex types of a schema into the first of them and
+ * points all references to the merged types at it. Two types are identical if they have
+ * the same attributes, in any order, and the same sequence of elements. Merging types can
+ * make the types referencing them identical, so the pass repeats until nothing changes.
+ * @author adeka
+ */
+class SchemaDeduplicator
+{
+    private static Logger log = LoggerFactory.getLogger(SchemaDeduplicator.class);
+
+    private final String namespace;
+
+    /**
+     * local name of a merged type to the local name of the type it was merged into
+     */
+    private final Map<String, String> merged = new HashMap<String, String>();
+
+    /**
+     * @param namespace the target namespace of the schema
+     */
+    SchemaDeduplicator(String namespace)
+    {
+        this.namespace = namespace;
+    }
+
+    /**
+     * Removes the duplicate complex types of a schema and rewrites the references in place.
+     * @param schema the schema created by {@link SchemaMapper}
+     * @return the number of removed complex types
+     */
+    int dedup(SchemaElement schema)
+    {
+        List<OpenAttrs> items = schema.getIncludesAndImportsAndRedefines();
+        int removed = 0;
+        int round;
+        do
+        {
+            round = 0;
+            Map<String, String> canonical = new HashMap<String, String>();
+            for (Iterator<OpenAttrs> it = items.iterator(); it.hasNext();)
+            {
+                OpenAttrs item = it.next();
+                if (!(item instanceof ComplexType))
+                {
+                    continue;
+                }
+                ComplexType ct = (ComplexType) item;
+                String signature = signature(ct);
+                String first = canonical.get(signature);
+                if (first == null)
+                {
+                    canonical.put(signature, ct.getName());
+                }
+                else
+                {
+                    log.debug("Merged {} into {}", ct.getName(), first);
+                    merged.put(ct.getName(), first);
+                    it.remove();
+                    round++;
+                }
+            }
+            if (round > 0)
+            {
+                rewrite(items);
+                removed += round;
+            }
+        }
+        while (round > 0);
+        log.debug("Removed {} duplicate complex types", removed);
+        return removed;
+    }
+
+    /**
+     * @return the structure of a type without its name, references already resolved
+     */
+    private String signature(ComplexType ct)
+    {
+        List<String> attributes = new ArrayList<String>();
+        for (Annotated a : ct.getAttributesAndAttributeGroups())
+        {
+            if (a instanceof Attribute)
+            {
+                Attribute attr = (Attribute) a;
+                attributes.add(attr.getName() + '\0' + attr.getType() + '\0' + attr.getDefault());
+            }
+            else
+            {
+                //attribute groups are not generated, never merge a type using them
+                attributes.add('\0' + ct.getName());
+            }
+        }
+        Collections.sort(attributes);
+        StringBuilder sb = new StringBuilder();
+        for (String attr : attributes)
+        {
+            sb.append('@').append(attr).append('\n');
+        }
+        if (ct.getSequence() != null)
+        {
+            sb.append('[');
+            for (Object o : ct.getSequence().getElementsAndGroupsAndAlls())
+            {
+                if (o instanceof JAXBElement<?>)
+                {
+                    o = ((JAXBElement<?>) o).getValue();
+                }
+                if (!(o instanceof Element))
+                {
+                    return '\0' + ct.getName();
+                }
+                Element e = (Element) o;
+                sb.append('<').append(e.getName()).append('\0').append(e.getType())
+                        .append('\0').append(e.getMinOccurs()).append('\0').append(e.getMaxOccurs()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private void rewrite(List<OpenAttrs> items)
+    {
+        for (OpenAttrs item : items)
+        {
+            if (item instanceof Element)
+            {
+                rewrite((Element) item);
+            }
+            else if (item instanceof ComplexType)
+            {
+                ComplexType ct = (ComplexType) item;
+                if (ct.getSequence() == null)
+                {
+                    continue;
+                }
+                for (Object o : ct.getSequence().getElementsAndGroupsAndAlls())
+                {
+                    if (o instanceof JAXBElement<?>)
+                    {
+                        o = ((JAXBElement<?>) o).getValue();
+                    }
+                    if (o instanceof Element)
+                    {
+                        rewrite((Element) o);
+                    }
+                }
+            }
+        }
+    }
+
+    private void rewrite(Element e)
+    {
+        QName type = e.getType();
+        if (type != null && namespace != null && namespace.equals(type.getNamespaceURI()))
+        {
+            String target = merged.get(type.getLocalPart());
+            if (target != null)
+            {
+                e.setType(new QName(type.getNamespaceURI(), target, type.getPrefix()));
+            }
+        }
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3.generated.Attribute;
+import org.w3.generated.ComplexType;
+import org.w3.generated.ComplexTypeElement;
+import org.w3.generated.ElementElement;
+import org.w3.generated.ExplicitGroup;
+import org.w3.generated.FormChoice;
+import org.w3.generated.SchemaElement;
+
+/**
+ * Maps node type definitions onto the JAXB model of an XML schema.
+ * A mapper holds the state of a single conversion and is not shared between threads.
+ * <p>
+ * By default a complex type comes at the position where it is first referenced, a type
+ * holding multi-valued properties gets an element for each of them and the nodename attribute
+ * of types used for residual child nodes is added where the type is first used that way.
+ * Streaming and sorted jobs get the layout {@link StreamingSchemaWriter} can write without
+ * a model: the complex type of a node type comes at the position of the node type, even if
+ * an earlier node type referenced it, followed by the types it created on the fly. A type
+ * holding multi-valued properties gets the element of the first of them only, and the
+ * nodename attribute comes after all other attributes.
+ * <p>
+ * The property map attributes of a type are those of its own entry, whichever node type
+ * created the type; types holding multi-valued properties get none.
+ * @author adeka
+ */
+class SchemaMapper
+{
+    private static Logger log = LoggerFactory.getLogger(SchemaMapper.class);
+
+    private final NodeTypeDef[] ntypes;
+
+    /**
+     * map of in-built nodetype vs the properties associated with them.
+     * Overwrites the default behavior
+     */
+    private final Map<String, String[]> attrMap;
+
+    private final String namespace;
+
+    private final String root;
+
+    private final String rootType;
+
+    private final QNameCache names;
+
+    /** true for the layout of the streaming writer */
+    private final boolean streamLayout;
+
+    /** local names of the node types not processed yet, their types are held back until then */
+    private final Set<String> pending = new HashSet<String>();
+
+    /** types that got the element of a multi-valued property */
+    private final Set<String> holders = new HashSet<String>();
+
+    /** types that got the property map attributes of their node type */
+    private final Set<String> seeded = new HashSet<String>();
+
+    /** types that get the nodename attribute because they are used for residual child nodes */
+    private final Set<String> residualTypes = new LinkedHashSet<String>();
+
+    SchemaMapper(NodeTypeDef[] ntypes, Map<String, String[]> attrMap, ConversionJob job)
+    {
+        this.ntypes = ntypes;
+        this.attrMap = attrMap;
+        this.namespace = job.getNamespace();
+        this.root = job.getRoot();
+        this.rootType = job.getRootType();
+        this.names = new QNameCache(this.namespace, TypeMapping.fromPropertyMap(attrMap));
+        this.streamLayout = streamLayout(job);
+    }
+
+    /**
+     * @return true if the job gets the layout of {@link StreamingSchemaWriter}
+     */
+    static boolean streamLayout(ConversionJob job)
+    {
+        return job.isStreaming() || job.isSort();
+    }
+
+    /**
+     * @return the schema with one complex type per node type
+     */
+    SchemaElement map()
+    {
+        SchemaElement schemaRoot = new SchemaElement();
+
+        schemaRoot.setElementFormDefault(FormChoice.QUALIFIED);
+        schemaRoot.setTargetNamespace(this.namespace);
+        ComplexTypeRegistry rootAttrList = new ComplexTypeRegistry(schemaRoot.getIncludesAndImportsAndRedefines());
+        ElementElement rootElement = new ElementElement();
+        rootElement.setType(names.targetType(this.rootType));
+        rootElement.setName(this.root);
+        rootAttrList.add(rootElement);
+
+        //the first level nodes that are children of rsrRoot are those nodes that
+        //do not have any parent nodes in the cnd.
+  
+        SupertypeTable table = new SupertypeTable(ntypes, attrMap);
+        ValueConstraintTypes constraints = new ValueConstraintTypes(ntypes, names);
+        //complex types by local id, saves the name lookups for every reference
+        ComplexType[] types = new ComplexType[table.localSize()];
+        for (int i = 0; i < ntypes.length && streamLayout; i++)
+        {
+            pending.add(table.localName(table.typeId(i)));
+        }
+
+        for (int i = 0; i < ntypes.length; i++)
+        {
+            NodeTypeDef nt = ntypes[i];
+            int ntId = table.typeId(i);
+
+            log.debug("NodeType:{}", nt.getName());
+            //a type referenced by an earlier node type goes here
+            pending.remove(table.localName(ntId));
+            rootAttrList.release(table.localName(ntId));
+
+            //check if we already have that node - if we have then update it
+
+            String[] ntAttrs = table.attributes(ntId);
+            ComplexTypeElement ctype = (ComplexTypeElement) getComplexType(rootAttrList, types, table, ntId);
+            if (seeded.add(ctype.getName()))
+            {
+                //created by a multi-valued property of the same name
+                addAttributes(ctype, ntAttrs);
+            }
+
+            for (int pt : table.supertypes(i))
+            {
+                log.debug("  DeclaredSuperType:{}", table.name(pt));
+                //based on the supertypes we will have to make decisions
+                if (table.isMapped(pt))
+                {
+                    //check if we have to create a node
+                    String[] attrs = table.attributes(pt);
+                    if (attrs != null)
+                    {
+                        //create a complex type
+                        //check if the complex type already there in the rootAttrList
+                        ComplexType ctf = findComplexType(rootAttrList, types, table, pt);
+
+                        if (ctf == null)
+                        {
+                            ctf = new ComplexTypeElement();
+                            ctf.setName(table.localName(pt));
+                            //add the attributes
+                            for (String attr : attrs)
+                            {
+                                Attribute attribute = new Attribute();
+                                attribute.setType(QNameCache.XS_STRING);
+                                attribute.setName(attr);
+                                ctf.getAttributesAndAttributeGroups().add(attribute);
+                            }
+
+                            //add this complex type to the attribute list of the root element
+                            register(rootAttrList, ctf);
+                            types[table.localId(pt)] = ctf;
+                        }
+
+                        //create an element of the above complex type and add as element
+                        ElementElement element = new ElementElement();
+                        element.setName(table.localName(pt));
+                        element.setType(names.targetType(ctf.getName()));
+                        element.setMinOccurs(BigInteger.ONE);
+                        element.setMaxOccurs("1");
+                        //now add this element to the top level complex type's sequence
+                        ctype.getSequence().getElementsAndGroupsAndAlls().add(element);
+
+
+                    }
+                }
+                //the supertype is not a pre-define type - we then have to add it as an element
+                else
+                {
+
+                    ComplexType ctf = getComplexType(rootAttrList, types, table, pt);
+
+                    //create an element of the above type and add as element
+                    ElementElement element = new ElementElement();
+                    element.setName(table.localName(pt));
+                    element.setType(names.targetType(ctf.getName()));
+                    element.setMinOccurs(BigInteger.ONE);
+                    element.setMaxOccurs("1");
+
+                    //now add this element to the top level complex type's sequence
+                    ctype.getSequence().getElementsAndGroupsAndAlls().add(element);
+
+                }
+            }
+
+            int[] childTypes = table.childTypes(i);
+            int child = 0;
+            for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+            {
+                log.debug("  Declared ChildNode Definition:{}", nd.getName());
+                //the default primary type, or the first required type if there is no default
+                int defaultNT = childTypes[child++];
+                if (defaultNT < 0)
+                {
+                    log.debug("No required primary type for node:{}", nd.getName());
+                    throw new IllegalArgumentException("No type for child node " + nd.getName()
+                            + " of " + nt.getName());
+                }
+                log.debug("  Default Primary Type Name:{}", table.name(defaultNT));
+                ElementElement element = new ElementElement();
+                ComplexType ct = getComplexType(rootAttrList, types, table, defaultNT);
+                if (nd.getName().equals("*"))
+                {
+                    element.setName(ct.getName());
+                    element.setType(names.targetType(ct.getName()));
+                    element.setMinOccurs(nd.isMandatory() ? BigInteger.ONE : BigInteger.ZERO);
+                    //add an attribute called nodename so that it can be used to identify the node
+                    if (residualTypes.add(ct.getName()) && !streamLayout)
+                    {
+                        addNodename(ct);
+                    }
+
+                    if (nd.allowsSameNameSiblings())
+                    {
+                        element.setMaxOccurs(Constants.UNBOUNDED);
+                    }
+
+                }
+                else
+                {
+
+                    element.setName(names.jcrName(nd.getName()).getLocalPart());
+                    element.setType(names.targetType(ct.getName()));
+                    element.setMinOccurs(nd.isMandatory() ? BigInteger.ONE : BigInteger.ZERO);
+
+                    if (nd.allowsSameNameSiblings())
+                    {
+                        element.setMaxOccurs(Constants.UNBOUNDED);
+                    }
+
+                }
+                ctype.getSequence().getElementsAndGroupsAndAlls().add(element);
+
+            }
+
+            for (PropertyDef pDef : nt.getDeclaredPropertyDefinitions())
+            {
+                log.debug("    Attr Name:{}", pDef.getName());
+                log.debug("    Req type:{}", pDef.getRequiredType());
+                QName qn = names.jcrName(pDef.getName());
+                if (!pDef.isMultiple())
+                {
+                    Attribute attr = new Attribute();
+                    attr.setType(propertyType(pDef, constraints));
+                    attr.setName(qn.getLocalPart());
+                    //handle default value
+                    String[] defaultValues = pDef.getDefaultValues();
+                    if(defaultValues != null && defaultValues.length > 0){
+                        attr.setDefault(defaultValues[0]);
+                    }
+                    
+                    ctype.getAttributesAndAttributeGroups().add(attr);
+                }
+                else
+                {
+                    ComplexType ctf = getComplexType(rootAttrList, qn.getLocalPart(), null);
+                    //properties of the same name share the type, when streaming the first one decides the element
+                    if (holders.add(ctf.getName()) || !streamLayout)
+                    {
+                        ElementElement element = new ElementElement();
+                        element.setName(qn.getLocalPart());
+                        element.setMinOccurs(BigInteger.ZERO);
+                        element.setMaxOccurs(Constants.UNBOUNDED);
+                        element.setType(propertyType(pDef, constraints));
+                        ctf.getSequence().getElementsAndGroupsAndAlls().add(element);
+
+                    }
+
+                    //now create an element of the above type
+                    ElementElement element = new ElementElement();
+                    element.setName(qn.getLocalPart());
+                    element.setType(names.targetType(ctf.getName()));
+                    ctype.getSequence().getElementsAndGroupsAndAlls().add(element);
+
+                }
+
+
+            }
+
+
+
+        }
+
+        if (streamLayout)
+        {
+            for (String name : residualTypes)
+            {
+                addNodename(rootAttrList.find(name));
+            }
+        }
+
+        //the restrictions of constrained properties, shared by all properties with equal constraints
+        for (ValueConstraintTypes.Restriction r : constraints.getRestrictions())
+        {
+            rootAttrList.add(r.toSimpleType());
+        }
+        return schemaRoot;
+    }
+
+    /**
+     * @return the restricted simple type of the property, or its built-in type if it has no constraints
+     */
+    private QName propertyType(PropertyDef pDef, ValueConstraintTypes constraints)
+    {
+        String restricted = constraints.typeName(pDef);
+        return restricted == null ? names.propertyType(pDef.getRequiredType()) : names.targetType(restricted);
+    }
+
+    /**
+     * Collects the names of the complex types that {@link #map()} creates or modifies
+     * for a node type: its own type, the types of its supertypes and child nodes and
+     * the types holding its multi-valued properties. Node types sharing none of these
+     * names map independently of each other.
+     * @param nt the node type
+     * @return the local names of the complex types
+     */
+    static Set<String> referencedTypes(NodeTypeDef nt)
+    {
+        Set<String> names = new LinkedHashSet<String>();
+        names.add(localName(nt.getName()));
+        for (String pt : nt.getDeclaredSupertypes())
+        {
+            names.add(localName(pt));
+        }
+        for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+        {
+            String defaultNT = SupertypeTable.defaultType(nd);
+            if (defaultNT != null)
+            {
+                names.add(localName(defaultNT));
+            }
+        }
+        for (PropertyDef pDef : nt.getDeclaredPropertyDefinitions())
+        {
+            if (pDef.isMultiple())
+            {
+                names.add(localName(pDef.getName()));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * The order in which {@link #map()} writes the complex types: the order of their first
+     * reference or, in the streaming layout, the type of a node type at the position of the
+     * node type, followed by the types it references first, except those of node types that
+     * come later. Names without a complex type, such as property map entries without
+     * attributes, are included.
+     * @param ntypes the node types of the conversion
+     * @param job the options of the conversion
+     * @return the local names of the complex types in schema order
+     */
+    static List<String> typeOrder(NodeTypeDef[] ntypes, ConversionJob job)
+    {
+        Set<String> pending = new HashSet<String>();
+        for (int i = 0; i < ntypes.length && streamLayout(job); i++)
+        {
+            pending.add(localName(ntypes[i].getName()));
+        }
+        Set<String> order = new LinkedHashSet<String>();
+        for (NodeTypeDef nt : ntypes)
+        {
+            pending.remove(localName(nt.getName()));
+            for (String name : referencedTypes(nt))
+            {
+                if (!pending.contains(name))
+                {
+                    order.add(name);
+                }
+            }
+        }
+        return new ArrayList<String>(order);
+    }
+
+    private static String localName(String name)
+    {
+        QName qn = getQualifiedName(name);
+        return qn == null ? name : qn.getLocalPart();
+    }
+
+    static QName getQualifiedName(String name)
+    {
+        String[] tokens = name.split(":");
+        if (tokens.length < 2)
+        {
+            return null;
+        }
+        else
+        {
+            QName qname = new QName(tokens[0], tokens[1]);
+            return qname;
+        }
+
+    }
+
+    /**
+     * Looks a type up by its local id first, then by name in the schema.
+     */
+    private static ComplexType findComplexType(ComplexTypeRegistry rootAttrList, ComplexType[] types,
+            SupertypeTable table, int id)
+    {
+        ComplexType ct = types[table.localId(id)];
+        if (ct == null)
+        {
+            ct = findComplexType(rootAttrList, table.localName(id));
+            types[table.localId(id)] = ct;
+        }
+        return ct;
+    }
+
+    /**
+     * Looks the type of a node type up, creating it with the property map attributes of the node type.
+     */
+    private ComplexType getComplexType(ComplexTypeRegistry rootAttrList, ComplexType[] types,
+            SupertypeTable table, int id)
+    {
+        ComplexType ct = types[table.localId(id)];
+        if (ct == null)
+        {
+            String name = table.localName(id);
+            ct = findComplexType(rootAttrList, name);
+            if (ct == null)
+            {
+                ct = getComplexType(rootAttrList, name, table.attributes(id));
+                seeded.add(name);
+            }
+            types[table.localId(id)] = ct;
+        }
+        return ct;
+    }
+
+    private static void addAttributes(ComplexType ctype, String[] attrs)
+    {
+        if (attrs != null)
+        {
+            for (String attr : attrs)
+            {
+                Attribute attribute = new Attribute();
+                attribute.setType(QNameCache.XS_STRING);
+                attribute.setName(attr);
+                ctype.getAttributesAndAttributeGroups().add(attribute);
+            }
+        }
+    }
+
+    private static void addNodename(ComplexType ctype)
+    {
+        Attribute attribute = new Attribute();
+        attribute.setType(QNameCache.XS_STRING);
+        attribute.setName("nodename");
+        ctype.getAttributesAndAttributeGroups().add(attribute);
+    }
+
+    private static ComplexType findComplexType(ComplexTypeRegistry rootAttrList, String name)
+    {
+        return rootAttrList.find(name);
+    }
+
+    /**
+     * Adds a type to the schema, in the streaming layout the type of a node type not processed yet is held back.
+     */
+    private void register(ComplexTypeRegistry rootAttrList, ComplexType ct)
+    {
+        if (pending.contains(ct.getName()))
+        {
+            rootAttrList.hold(ct);
+        }
+        else
+        {
+            rootAttrList.add(ct);
+        }
+    }
+
+    private ComplexType getComplexType(ComplexTypeRegistry rootAttrList, String name, String[] attrs)
+    {
+        ComplexType complexType = findComplexType(rootAttrList, name);
+
+        ComplexTypeElement ctype = (ComplexTypeElement) complexType;
+        if (ctype == null)
+        {
+            //Any node type that we encounter should be a ComplexType in the XSD
+            ctype = new ComplexTypeElement();
+            ctype.setName(name);
+            ExplicitGroup seq = new ExplicitGroup();
+            ctype.setSequence(seq);
+            register(rootAttrList, ctype);
+            addAttributes(ctype, attrs);
+
+            log.debug("We have added complextype:{}", ctype.getName());
+        }
+        return ctype;
+
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.w3.generated.Annotated;
+import org.w3.generated.Attribute;
+import org.w3.generated.ComplexType;
+import org.w3.generated.OpenAttrs;
+import org.w3.generated.SimpleType;
+
+/**
+ * Puts the items of a schema into a canonical order that does not depend on the order
+ * of the node types in the CND: the other top level items such as the root element as
+ * they are, then the complex types and then the simple types, each sorted by name.
+ * The attributes of a complex type are sorted by name too, elements keep their order
+ * since the order of a sequence matters. It stays the order of the node type's own
+ * definition, except for a type shared by multi-valued properties of different node
+ * types, which gets the element of the first of them, see {@link SchemaMapper}.
+ * @author adeka
+ */
+class SchemaOrder
+{
+    private static final Comparator<OpenAttrs> BY_NAME = new Comparator<OpenAttrs>()
+    {
+        public int compare(OpenAttrs a, OpenAttrs b)
+        {
+            return name(a).compareTo(name(b));
+        }
+    };
+
+    private static final Comparator<Annotated> BY_ATTRIBUTE_NAME = new Comparator<Annotated>()
+    {
+        public int compare(Annotated a, Annotated b)
+        {
+            String nameA = attributeName(a);
+            String nameB = attributeName(b);
+            if (nameA == null || nameB == null)
+            {
+                //attribute groups after the attributes
+                return nameA == null ? (nameB == null ? 0 : 1) : -1;
+            }
+            return nameA.compareTo(nameB);
+        }
+    };
+
+    private SchemaOrder()
+    {
+    }
+
+    /**
+     * Sorts the top level items of a schema in place.
+     * @param items the top level items
+     */
+    static void sort(List<OpenAttrs> items)
+    {
+        List<OpenAttrs> others = new ArrayList<OpenAttrs>();
+        List<OpenAttrs> complexTypes = new ArrayList<OpenAttrs>();
+        List<OpenAttrs> simpleTypes = new ArrayList<OpenAttrs>();
+        for (OpenAttrs item : items)
+        {
+            if (item instanceof ComplexType)
+            {
+                complexTypes.add(item);
+            }
+            else if (item instanceof SimpleType)
+            {
+                simpleTypes.add(item);
+            }
+            else
+            {
+                others.add(item);
+            }
+        }
+        //stable, so equally named types keep their order
+        Collections.sort(complexTypes, BY_NAME);
+        for (OpenAttrs ct : complexTypes)
+        {
+            Collections.sort(((ComplexType) ct).getAttributesAndAttributeGroups(), BY_ATTRIBUTE_NAME);
+        }
+        Collections.sort(simpleTypes, BY_NAME);
+        items.clear();
+        items.addAll(others);
+        items.addAll(complexTypes);
+        items.addAll(simpleTypes);
+    }
+
+    /**
+     * @return the name of an attribute or the local name of the attribute it refers to, null for other items
+     */
+    private static String attributeName(Annotated item)
+    {
+        if (!(item instanceof Attribute))
+        {
+            return null;
+        }
+        Attribute attribute = (Attribute) item;
+        if (attribute.getName() != null)
+        {
+            return attribute.getName();
+        }
+        return attribute.getRef() == null ? "" : attribute.getRef().getLocalPart();
+    }
+
+    private static String name(OpenAttrs item)
+    {
+        String name = item instanceof ComplexType ? ((ComplexType) item).getName() : ((SimpleType) item).getName();
+        return name == null ? "" : name;
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3.generated.Annotated;
+import org.w3.generated.Attribute;
+import org.w3.generated.ComplexType;
+import org.w3.generated.Element;
+import org.w3.generated.FormChoice;
+import org.w3.generated.IncludeElement;
+import org.w3.generated.OpenAttrs;
+import org.w3.generated.SchemaElement;
+import org.w3.generated.SimpleType;
+
+/**
+ * Splits a schema into one file per group of JCR namespace prefixes. All files share the
+ * target namespace, so they are linked with xs:include. Every part includes the parts
+ * holding the types it references, so a part may be loaded on its own. The main file
+ * keeps the root element and includes all parts.
+ * <p>
+ * Complex types go to the group of the prefix of their node type or multi-valued property,
+ * restricted simple types to the group of the first complex type using them.
+ * @author adeka
+ */
+class SchemaSplitter
+{
+    private static Logger log = LoggerFactory.getLogger(SchemaSplitter.class);
+
+    /**
+     * Group of types without a prefix.
+     */
+    static final String DEFAULT_GROUP = "default";
+
+    private final String namespace;
+
+    /**
+     * JCR prefix to group name, prefixes not in the map form their own group
+     */
+    private final Map<String, String> groups;
+
+    /**
+     * local type name to group name
+     */
+    private final Map<String, String> typeGroups = new HashMap<String, String>();
+
+    /**
+     * @param ntypes the node types the schema was mapped from
+     * @param job the options of the conversion, see {@link ConversionJob#getSplit()}
+     */
+    SchemaSplitter(NodeTypeDef[] ntypes, ConversionJob job)
+    {
+        this.namespace = job.getNamespace();
+        this.groups = parseGroups(job.getSplit());
+        //the own definition of a type decides before references to it
+        for (NodeTypeDef nt : ntypes)
+        {
+            assign(nt.getName());
+        }
+        for (NodeTypeDef nt : ntypes)
+        {
+            for (String st : nt.getDeclaredSupertypes())
+            {
+                assign(st);
+            }
+            for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+            {
+                String defaultNT = SupertypeTable.defaultType(nd);
+                if (defaultNT != null)
+                {
+                    assign(defaultNT);
+                }
+            }
+            for (PropertyDef pDef : nt.getDeclaredPropertyDefinitions())
+            {
+                if (pDef.isMultiple())
+                {
+                    assign(pDef.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a grouping like <code>nt=jcr,mix=jcr</code>.
+     * @param spec comma separated prefix=group pairs, may be null or empty
+     * @return the map of prefixes to group names
+     */
+    static Map<String, String> parseGroups(String spec)
+    {
+        Map<String, String> map = new HashMap<String, String>();
+        if (spec == null)
+        {
+            return map;
+        }
+        for (String pair : spec.split(","))
+        {
+            if (pair.trim().length() == 0)
+            {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            if (eq <= 0 || eq == pair.length() - 1)
+            {
+                throw new IllegalArgumentException("Invalid grouping " + pair + ", expected prefix=group");
+            }
+            map.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+        }
+        return map;
+    }
+
+    private void assign(String jcrName)
+    {
+        QName qn = SchemaMapper.getQualifiedName(jcrName);
+        String local = qn == null ? jcrName : qn.getLocalPart();
+        if (!typeGroups.containsKey(local))
+        {
+            //the parsed name keeps the prefix in place of the namespace uri
+            typeGroups.put(local, group(qn == null ? null : qn.getNamespaceURI()));
+        }
+    }
+
+    private String group(String prefix)
+    {
+        if (prefix == null || prefix.length() == 0)
+        {
+            return DEFAULT_GROUP;
+        }
+        String group = groups.get(prefix);
+        return group == null ? prefix : group;
+    }
+
+    /**
+     * @param xsdPath the path of the main file
+     * @param group a group name
+     * @return the path of the part file of the group, next to the main file
+     */
+    static String partPath(String xsdPath, String group)
+    {
+        File main = new File(xsdPath);
+        String base = main.getName();
+        if (base.endsWith(".xsd"))
+        {
+            base = base.substring(0, base.length() - 4);
+        }
+        return new File(main.getParentFile(), base + "-" + group + ".xsd").getPath();
+    }
+
+    /**
+     * Distributes the items of a schema over the part files. The items are moved, not copied.
+     * @param schema the schema created by {@link SchemaMapper}
+     * @param xsdPath the path of the main file
+     * @return the schemas by file path, the main file first
+     */
+    Map<String, SchemaElement> split(SchemaElement schema, String xsdPath)
+    {
+        List<OpenAttrs> top = new ArrayList<OpenAttrs>();
+        Map<String, List<OpenAttrs>> members = new LinkedHashMap<String, List<OpenAttrs>>();
+        Map<String, SimpleType> simpleTypes = new LinkedHashMap<String, SimpleType>();
+        Map<String, String> placed = new HashMap<String, String>();
+        for (OpenAttrs item : schema.getIncludesAndImportsAndRedefines())
+        {
+            if (item instanceof ComplexType)
+            {
+                ComplexType ct = (ComplexType) item;
+                String group = typeGroups.get(ct.getName());
+                if (group == null)
+                {
+                    group = DEFAULT_GROUP;
+                }
+                members(members, group).add(ct);
+                placed.put(ct.getName(), group);
+            }
+            else if (item instanceof SimpleType)
+            {
+                simpleTypes.put(((SimpleType) item).getName(), (SimpleType) item);
+            }
+            else
+            {
+                top.add(item);
+            }
+        }
+
+        Map<String, Set<String>> includes = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, List<OpenAttrs>> entry : members.entrySet())
+        {
+            String group = entry.getKey();
+            Set<String> included = new LinkedHashSet<String>();
+            includes.put(group, included);
+            //simple types are appended while the complex types are walked
+            List<OpenAttrs> complexTypes = new ArrayList<OpenAttrs>(entry.getValue());
+            for (OpenAttrs item : complexTypes)
+            {
+                for (String ref : references((ComplexType) item))
+                {
+                    String refGroup = placed.get(ref);
+                    if (refGroup == null && simpleTypes.containsKey(ref))
+                    {
+                        refGroup = group;
+                        placed.put(ref, group);
+                        entry.getValue().add(simpleTypes.remove(ref));
+                    }
+                    if (refGroup != null && !refGroup.equals(group))
+                    {
+                        included.add(refGroup);
+                    }
+                }
+            }
+        }
+        //restrictions no complex type uses
+        for (SimpleType st : simpleTypes.values())
+        {
+            members(members, DEFAULT_GROUP).add(st);
+        }
+
+        Map<String, SchemaElement> files = new LinkedHashMap<String, SchemaElement>();
+        SchemaElement main = createSchema();
+        for (String group : members.keySet())
+        {
+            main.getIncludesAndImportsAndRedefines().add(include(xsdPath, group));
+        }
+        main.getIncludesAndImportsAndRedefines().addAll(top);
+        files.put(xsdPath, main);
+        for (Map.Entry<String, List<OpenAttrs>> entry : members.entrySet())
+        {
+            SchemaElement part = createSchema();
+            Set<String> included = includes.get(entry.getKey());
+            if (included != null)
+            {
+                for (String group : included)
+                {
+                    part.getIncludesAndImportsAndRedefines().add(include(xsdPath, group));
+                }
+            }
+            part.getIncludesAndImportsAndRedefines().addAll(entry.getValue());
+            files.put(partPath(xsdPath, entry.getKey()), part);
+            log.debug("Group {} has {} types", entry.getKey(), entry.getValue().size());
+        }
+        return files;
+    }
+
+    private static List<OpenAttrs> members(Map<String, List<OpenAttrs>> members, String group)
+    {
+        List<OpenAttrs> list = members.get(group);
+        if (list == null)
+        {
+            list = new ArrayList<OpenAttrs>();
+            members.put(group, list);
+        }
+        return list;
+    }
+
+    private SchemaElement createSchema()
+    {
+        SchemaElement schema = new SchemaElement();
+        schema.setElementFormDefault(FormChoice.QUALIFIED);
+        schema.setTargetNamespace(namespace);
+        return schema;
+    }
+
+    private static IncludeElement include(String xsdPath, String group)
+    {
+        IncludeElement include = new IncludeElement();
+        include.setSchemaLocation(new File(partPath(xsdPath, group)).getName());
+        return include;
+    }
+
+    /**
+     * @return the local names of the target namespace types used by the attributes and elements of a type
+     */
+    private Set<String> references(ComplexType ct)
+    {
+        Set<String> refs = new LinkedHashSet<String>();
+        for (Annotated a : ct.getAttributesAndAttributeGroups())
+        {
+            if (a instanceof Attribute)
+            {
+                addReference(refs, ((Attribute) a).getType());
+            }
+        }
+        if (ct.getSequence() != null)
+        {
+            for (Object o : ct.getSequence().getElementsAndGroupsAndAlls())
+            {
+                if (o instanceof JAXBElement<?>)
+                {
+                    o = ((JAXBElement<?>) o).getValue();
+                }
+                if (o instanceof Element)
+                {
+                    addReference(refs, ((Element) o).getType());
+                }
+            }
+        }
+        return refs;
+    }
+
+    private void addReference(Set<String> refs, QName type)
+    {
+        if (type != null && namespace != null && namespace.equals(type.getNamespaceURI()))
+        {
+            refs.add(type.getLocalPart());
+        }
+    }
+}
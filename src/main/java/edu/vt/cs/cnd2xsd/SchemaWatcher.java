@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a converter and a loader warm and regenerates the XSD of a job whenever its
+ * CND or property map is saved. A change is converted once the files have been quiet
+ * for the debounce time, so a burst of saves gives one conversion.
+ * <p>
+ * Where the runtime has the WatchService of Java 7 the files are checked when a file event
+ * arrives, by modification time, length and SHA-1 of their content, so a save that keeps the
+ * length within the granularity of the modification time is seen as well. Without it the
+ * modification times and lengths are polled every {@link #POLL_INTERVAL} ms and the content
+ * is only hashed when one of them changed. The XSD is written {@link #DEBOUNCE} ms after the
+ * last change was seen, 250 to 350 ms after a save plus the time of the conversion.
+ * @author adeka
+ */
+public class SchemaWatcher
+{
+    private static Logger log = LoggerFactory.getLogger(SchemaWatcher.class);
+
+    /**
+     * Milliseconds between two checks of the files without a WatchService, and the longest
+     * wait for a file event, after which a pending conversion or {@link #stop()} is handled.
+     */
+    public static final long POLL_INTERVAL = 100;
+
+    /**
+     * Milliseconds the files must stay unchanged before they are converted.
+     */
+    public static final long DEBOUNCE = 250;
+
+    private final Cnd2XsdConverter converter;
+
+    private final NodeTypeLoader loader;
+
+    private final ConversionJob job;
+
+    private final File[] files;
+
+    private final PrintStream out;
+
+    private volatile boolean running = true;
+
+    public SchemaWatcher(Cnd2XsdConverter converter, NodeTypeLoader loader, ConversionJob job, PrintStream out)
+    {
+        this.converter = converter;
+        this.loader = loader;
+        this.job = job;
+        this.out = out;
+        this.files = job.getPropmapPath() == null ? new File[] {new File(job.getCndPath())}
+                : new File[] {new File(job.getCndPath()), new File(job.getPropmapPath())};
+    }
+
+    /**
+     * Converts the job once and then after every change until {@link #stop()} is
+     * called or the thread is interrupted.
+     */
+    public void run()
+    {
+        String stamp = stamp();
+        String state = snapshot();
+        convert();
+        FileEvents events = openEvents();
+        out.println("Watching " + job.getCndPath() + " for changes");
+        long changedAt = 0;
+        try
+        {
+            while (running)
+            {
+                boolean touched;
+                try
+                {
+                    if (events == null)
+                    {
+                        Thread.sleep(POLL_INTERVAL);
+                        String now = stamp();
+                        touched = !now.equals(stamp);
+                        stamp = now;
+                    }
+                    else
+                    {
+                        touched = events.await(POLL_INTERVAL);
+                    }
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long time = System.currentTimeMillis();
+                String now = touched ? snapshot() : state;
+                if (!now.equals(state))
+                {
+                    state = now;
+                    changedAt = time;
+                }
+                else if (changedAt != 0 && time - changedAt >= DEBOUNCE)
+                {
+                    changedAt = 0;
+                    convert();
+                }
+            }
+        }
+        finally
+        {
+            if (events != null)
+            {
+                events.close();
+            }
+        }
+    }
+
+    /**
+     * @return the file events of the watched files, null if the runtime has no WatchService
+     */
+    private FileEvents openEvents()
+    {
+        try
+        {
+            Class.forName("java.nio.file.WatchService");
+            return new FileEvents(files);
+        }
+        catch (ClassNotFoundException ex)
+        {
+            log.debug("No WatchService, polling {}", job.getCndPath());
+        }
+        catch (IOException ex)
+        {
+            log.warn("Cannot watch {}, polling: {}", job.getCndPath(), ex.getMessage());
+        }
+        return null;
+    }
+
+    public void stop()
+    {
+        running = false;
+    }
+
+    /**
+     * @return the modification times and lengths of the watched files
+     */
+    private String stamp()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (File f : files)
+        {
+            sb.append(f.lastModified()).append(':').append(f.length()).append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the modification times, lengths and content hashes of the watched files
+     */
+    String snapshot()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (File f : files)
+        {
+            sb.append(f.lastModified()).append(':').append(f.length()).append(':');
+            try
+            {
+                sb.append(f.isFile() ? ConversionCache.hash(ConversionCache.readFile(f)) : "-");
+            }
+            catch (IOException ex)
+            {
+                //being written, the next check sees it
+                sb.append("?");
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    private void convert()
+    {
+        long start = System.nanoTime();
+        try
+        {
+            converter.convert(loader, job);
+            out.println(String.format("Wrote %s in %.1f ms", job.getXsdPath(), (System.nanoTime() - start) / 1e6));
+        }
+        catch (Exception ex)
+        {
+            //keep watching, the next save may fix the CND
+            log.debug("Conversion failed", ex);
+            out.println("Conversion of " + job.getCndPath() + " failed: " + ex.getMessage());
+        }
+    }
+}
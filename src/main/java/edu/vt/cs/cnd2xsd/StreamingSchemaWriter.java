@@ -0,0 +1,553 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the XSD through StAX while the node types are processed, without
+ * building the JAXB object graph. Only the complex type of the current node type
+ * and the few types it creates on the fly are held in memory.
+ * <p>
+ * The schema is the one {@link SchemaMapper} maps for a streaming job, in the same order:
+ * the type of a node type at the position of the node type, followed by the types it created
+ * on the fly. A type holding multi-valued properties gets the element of the first of them
+ * only, since a written type cannot be changed any more. The property map attributes of a
+ * type are those of its own entry.
+ * A writer is used for a single conversion.
+ * @author adeka
+ */
+public class StreamingSchemaWriter
+{
+    private static Logger log = LoggerFactory.getLogger(StreamingSchemaWriter.class);
+
+    private static final String XS = "xs";
+
+    private static final String TNS = "tns";
+
+    private static final String INDENT = "    ";
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String NODENAME = "nodename";
+
+    private static XMLOutputFactory factory = XMLOutputFactory.newInstance();
+
+    private final NodeTypeDef[] ntypes;
+
+    private final Map<String, String[]> attrMap;
+
+    private final String namespace;
+
+    private final String root;
+
+    private final String rootType;
+
+    private final QNameCache names;
+
+    /** no line breaks and indentation */
+    private final boolean compact;
+
+    private ValueConstraintTypes constraints;
+
+    /** prefixed XSD types by property type */
+    private final Map<Integer, String> xsdTypes = new HashMap<Integer, String>();
+
+    private XMLStreamWriter writer;
+
+    private int depth;
+
+    /** node type names not processed yet */
+    private Set<String> pendingTypes = new HashSet<String>();
+
+    /** types that get the nodename attribute because they are used for residual child nodes */
+    private Set<String> wildcardTargets = new HashSet<String>();
+
+    /** types that got the element of a multi-valued property */
+    private Set<String> holders = new HashSet<String>();
+
+    /** types written or queued for writing */
+    private Set<String> emitted = new HashSet<String>();
+
+    /** elements added to pending node types by multi-valued properties of the same name */
+    private Map<String, List<ElementSpec>> deferred = new HashMap<String, List<ElementSpec>>();
+
+    /** types created on the fly while processing the current node type */
+    private List<TypeSpec> placeholders = new ArrayList<TypeSpec>();
+
+    private TypeSpec current;
+
+    private int complexTypes;
+
+    private int elements;
+
+    private int attributes;
+
+    public StreamingSchemaWriter(NodeTypeDef[] ntypes, Map<String, String[]> attrMap, ConversionJob job)
+    {
+        this.ntypes = ntypes;
+        this.attrMap = attrMap;
+        this.namespace = job.getNamespace();
+        this.root = job.getRoot();
+        this.rootType = job.getRootType();
+        this.names = new QNameCache(namespace, TypeMapping.fromPropertyMap(attrMap));
+        this.compact = job.isCompact();
+    }
+
+    /**
+     * Writes the schema, the stream is left open.
+     * @param out the stream receiving the XSD
+     * @throws XMLStreamException
+     */
+    public void write(OutputStream out) throws XMLStreamException
+    {
+        prepare();
+        synchronized (factory)
+        {
+            writer = factory.createXMLStreamWriter(out, ENCODING);
+        }
+        writer.writeStartDocument(ENCODING, "1.0");
+        if (!compact)
+        {
+            writer.writeCharacters("\n");
+        }
+        writer.writeStartElement(XS, "schema", Constants.XML_NAMESPACE);
+        writer.writeNamespace(XS, Constants.XML_NAMESPACE);
+        if (hasNamespace())
+        {
+            writer.writeNamespace(TNS, namespace);
+            writer.writeAttribute("targetNamespace", namespace);
+        }
+        writer.writeAttribute("elementFormDefault", "qualified");
+        depth++;
+
+        writeElement(new ElementSpec(root, targetType(rootType), null, null));
+        for (NodeTypeDef nt : ntypes)
+        {
+            process(nt);
+            writeType(current);
+            for (TypeSpec type : placeholders)
+            {
+                writeType(type);
+            }
+            placeholders.clear();
+            current = null;
+        }
+        for (ValueConstraintTypes.Restriction r : constraints.getRestrictions())
+        {
+            writeSimpleType(r);
+        }
+
+        depth--;
+        newLine();
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+    }
+
+    /**
+     * @return the number of complex types written by {@link #write(OutputStream)}
+     */
+    public int getComplexTypes()
+    {
+        return complexTypes;
+    }
+
+    /**
+     * @return the number of elements written, including the root element
+     */
+    public int getElements()
+    {
+        return elements;
+    }
+
+    public int getAttributes()
+    {
+        return attributes;
+    }
+
+    private void prepare()
+    {
+        constraints = new ValueConstraintTypes(ntypes, names);
+        for (NodeTypeDef nt : ntypes)
+        {
+            pendingTypes.add(localName(nt.getName()));
+            for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+            {
+                String defaultNT = getDefaultType(nd);
+                if ("*".equals(nd.getName()) && defaultNT != null)
+                {
+                    wildcardTargets.add(localName(defaultNT));
+                }
+            }
+        }
+    }
+
+    private void process(NodeTypeDef nt)
+    {
+        log.debug("NodeType: {}", nt.getName());
+        String name = localName(nt.getName());
+        pendingTypes.remove(name);
+        if (!emitted.add(name))
+        {
+            log.warn("Complex type {} has already been written, {} is not merged into it", name, nt.getName());
+        }
+        String[] ntAttrs = attrMap.get(nt.getName());
+
+        current = new TypeSpec(name, true);
+        current.addAttributes(ntAttrs);
+        List<ElementSpec> earlier = deferred.remove(name);
+        if (earlier != null)
+        {
+            current.elements.addAll(earlier);
+        }
+
+        for (String pt : nt.getDeclaredSupertypes())
+        {
+            String ename = localName(pt);
+            if (attrMap.containsKey(pt))
+            {
+                String[] attrs = attrMap.get(pt);
+                if (attrs != null)
+                {
+                    reference(ename, attrs, null, false);
+                    current.elements.add(new ElementSpec(ename, targetType(ename), "1", "1"));
+                }
+            }
+            else
+            {
+                reference(ename, null, null, true);
+                current.elements.add(new ElementSpec(ename, targetType(ename), "1", "1"));
+            }
+        }
+
+        for (NodeDef nd : nt.getDeclaredChildNodeDefinitions())
+        {
+            String defaultNT = getDefaultType(nd);
+            if (defaultNT == null)
+            {
+                log.debug("No primary type for node: {}", nd.getName());
+                continue;
+            }
+            String tname = localName(defaultNT);
+            reference(tname, attrMap.get(defaultNT), null, true);
+            String ename = "*".equals(nd.getName()) ? tname : localName(nd.getName());
+            current.elements.add(new ElementSpec(ename, targetType(tname),
+                    nd.isMandatory() ? "1" : "0", nd.allowsSameNameSiblings() ? Constants.UNBOUNDED : null));
+        }
+
+        for (PropertyDef pDef : nt.getDeclaredPropertyDefinitions())
+        {
+            String pname = localName(pDef.getName());
+            String restricted = constraints.typeName(pDef);
+            String type = restricted == null ? xsdType(pDef.getRequiredType()) : targetType(restricted);
+            if (!pDef.isMultiple())
+            {
+                String[] defaultValues = pDef.getDefaultValues();
+                current.attributes.add(new AttributeSpec(pname, type,
+                        defaultValues != null && defaultValues.length > 0 ? defaultValues[0] : null));
+            }
+            else
+            {
+                reference(pname, null, new ElementSpec(pname, type, "0", Constants.UNBOUNDED), true);
+                current.elements.add(new ElementSpec(pname, targetType(pname), null, null));
+            }
+        }
+    }
+
+    /**
+     * Makes sure a type referenced by the current node type gets written.
+     * @param name local name of the type
+     * @param attrs attributes of the type if it is created here, not used for node types of the run
+     * @param element element added to the sequence of the type, may be null
+     * @param sequence true if a created type has a sequence
+     */
+    private void reference(String name, String[] attrs, ElementSpec element, boolean sequence)
+    {
+        if (element != null && !holders.add(name))
+        {
+            //properties of the same name share the type, the first one decides the element
+            element = null;
+        }
+        if (name.equals(current.name))
+        {
+            if (element != null)
+            {
+                current.elements.add(element);
+            }
+        }
+        else if (pendingTypes.contains(name))
+        {
+            //the node type itself comes later and is written then
+            if (element != null)
+            {
+                List<ElementSpec> list = deferred.get(name);
+                if (list == null)
+                {
+                    list = new ArrayList<ElementSpec>();
+                    deferred.put(name, list);
+                }
+                list.add(element);
+            }
+        }
+        else if (emitted.add(name))
+        {
+            TypeSpec type = new TypeSpec(name, sequence);
+            type.addAttributes(attrs);
+            if (element != null)
+            {
+                type.elements.add(element);
+            }
+            placeholders.add(type);
+            log.debug("We have added complextype: {}", name);
+        }
+    }
+
+    private void writeType(TypeSpec type) throws XMLStreamException
+    {
+        newLine();
+        writer.writeStartElement(XS, "complexType", Constants.XML_NAMESPACE);
+        writer.writeAttribute("name", type.name);
+        complexTypes++;
+        depth++;
+        if (type.sequence)
+        {
+            newLine();
+            if (type.elements.isEmpty())
+            {
+                writer.writeEmptyElement(XS, "sequence", Constants.XML_NAMESPACE);
+            }
+            else
+            {
+                writer.writeStartElement(XS, "sequence", Constants.XML_NAMESPACE);
+                depth++;
+                for (ElementSpec element : type.elements)
+                {
+                    writeElement(element);
+                }
+                depth--;
+                newLine();
+                writer.writeEndElement();
+            }
+        }
+        for (AttributeSpec attr : type.attributes)
+        {
+            writeAttribute(attr);
+        }
+        if (wildcardTargets.contains(type.name))
+        {
+            writeAttribute(new AttributeSpec(NODENAME, xsType(Constants.STRING), null));
+        }
+        depth--;
+        newLine();
+        writer.writeEndElement();
+    }
+
+    private void writeSimpleType(ValueConstraintTypes.Restriction r) throws XMLStreamException
+    {
+        newLine();
+        writer.writeStartElement(XS, "simpleType", Constants.XML_NAMESPACE);
+        writer.writeAttribute("name", r.getName());
+        depth++;
+        newLine();
+        writer.writeStartElement(XS, "restriction", Constants.XML_NAMESPACE);
+        writer.writeAttribute("base", xsType(r.getBase().getLocalPart()));
+        depth++;
+        for (String[] facet : r.getFacets())
+        {
+            newLine();
+            writer.writeEmptyElement(XS, facet[0], Constants.XML_NAMESPACE);
+            writer.writeAttribute("value", facet[1]);
+        }
+        depth--;
+        newLine();
+        writer.writeEndElement();
+        depth--;
+        newLine();
+        writer.writeEndElement();
+    }
+
+    private void writeElement(ElementSpec element) throws XMLStreamException
+    {
+        newLine();
+        writer.writeEmptyElement(XS, "element", Constants.XML_NAMESPACE);
+        elements++;
+        writeOptional("name", element.name);
+        writeOptional("type", element.type);
+        writeOptional("minOccurs", element.minOccurs);
+        writeOptional("maxOccurs", element.maxOccurs);
+    }
+
+    private void writeAttribute(AttributeSpec attr) throws XMLStreamException
+    {
+        newLine();
+        writer.writeEmptyElement(XS, "attribute", Constants.XML_NAMESPACE);
+        attributes++;
+        writeOptional("name", attr.name);
+        writeOptional("type", attr.type);
+        writeOptional("default", attr.defaultValue);
+    }
+
+    private void writeOptional(String name, String value) throws XMLStreamException
+    {
+        if (value != null)
+        {
+            writer.writeAttribute(name, value);
+        }
+    }
+
+    private void newLine() throws XMLStreamException
+    {
+        if (compact)
+        {
+            return;
+        }
+        StringBuilder sb = new StringBuilder("\n");
+        for (int i = 0; i < depth; i++)
+        {
+            sb.append(INDENT);
+        }
+        writer.writeCharacters(sb.toString());
+    }
+
+    private boolean hasNamespace()
+    {
+        return namespace != null && namespace.length() > 0;
+    }
+
+    private String targetType(String name)
+    {
+        if (name == null)
+        {
+            return null;
+        }
+        return hasNamespace() ? TNS + ":" + name : name;
+    }
+
+    private static String xsType(String name)
+    {
+        return XS + ":" + name;
+    }
+
+    private String xsdType(int requiredType)
+    {
+        Integer key = Integer.valueOf(requiredType);
+        String type = xsdTypes.get(key);
+        if (type == null)
+        {
+            type = xsType(names.propertyType(requiredType).getLocalPart());
+            xsdTypes.put(key, type);
+        }
+        return type;
+    }
+
+    private String localName(String jcrName)
+    {
+        return names.localName(jcrName);
+    }
+
+    private static String getDefaultType(NodeDef nd)
+    {
+        String defaultNT = nd.getDefaultPrimaryType();
+        if (defaultNT == null)
+        {
+            String[] nts = nd.getRequiredPrimaryTypes();
+            if (nts != null && nts.length > 0)
+            {
+                defaultNT = nts[0];
+            }
+        }
+        return defaultNT;
+    }
+
+    private static class TypeSpec
+    {
+        private String name;
+
+        private boolean sequence;
+
+        private List<ElementSpec> elements = new ArrayList<ElementSpec>();
+
+        private List<AttributeSpec> attributes = new ArrayList<AttributeSpec>();
+
+        TypeSpec(String name, boolean sequence)
+        {
+            this.name = name;
+            this.sequence = sequence;
+        }
+
+        void addAttributes(String[] attrs)
+        {
+            if (attrs != null)
+            {
+                for (String attr : attrs)
+                {
+                    attributes.add(new AttributeSpec(attr, xsType(Constants.STRING), null));
+                }
+            }
+        }
+    }
+
+    private static class ElementSpec
+    {
+        private String name;
+
+        private String type;
+
+        private String minOccurs;
+
+        private String maxOccurs;
+
+        ElementSpec(String name, String type, String minOccurs, String maxOccurs)
+        {
+            this.name = name;
+            this.type = type;
+            this.minOccurs = minOccurs;
+            this.maxOccurs = maxOccurs;
+        }
+    }
+
+    private static class AttributeSpec
+    {
+        private String name;
+
+        private String type;
+
+        private String defaultValue;
+
+        AttributeSpec(String name, String type, String defaultValue)
+        {
+            this.name = name;
+            this.type = type;
+            this.defaultValue = defaultValue;
+        }
+    }
+}
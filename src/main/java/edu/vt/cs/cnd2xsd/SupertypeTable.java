@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the type names of one conversion once. Every node type name and every
+ * name referenced as a supertype or child node type gets an id; the property map
+ * entry, the local name and the declared supertypes are kept in arrays indexed by id.
+ * Names sharing a local name share a local id, which is the key of their complex type.
+ * @author adeka
+ */
+class SupertypeTable
+{
+    private static final int[] NONE = new int[0];
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    private final List<String> names = new ArrayList<String>();
+
+    private final Map<String, Integer> localIds = new HashMap<String, Integer>();
+
+    private final List<String> localNames = new ArrayList<String>();
+
+    private int[] localIdOf = new int[16];
+
+    /** node type index to id */
+    private final int[] typeIds;
+
+    /** node type index to the ids of its declared supertypes */
+    private final int[][] supertypes;
+
+    /** node type index to the ids of the default types of its child nodes, -1 if there is none */
+    private final int[][] childTypes;
+
+    private boolean[] mapped;
+
+    private String[][] attributes;
+
+    SupertypeTable(NodeTypeDef[] ntypes, Map<String, String[]> attrMap)
+    {
+        typeIds = new int[ntypes.length];
+        supertypes = new int[ntypes.length][];
+        childTypes = new int[ntypes.length][];
+        for (int i = 0; i < ntypes.length; i++)
+        {
+            typeIds[i] = id(ntypes[i].getName());
+        }
+        for (int i = 0; i < ntypes.length; i++)
+        {
+            List<String> declared = ntypes[i].getDeclaredSupertypes();
+            supertypes[i] = new int[declared.size()];
+            for (int j = 0; j < supertypes[i].length; j++)
+            {
+                supertypes[i][j] = id(declared.get(j));
+            }
+            List<NodeDef> children = ntypes[i].getDeclaredChildNodeDefinitions();
+            childTypes[i] = new int[children.size()];
+            for (int j = 0; j < childTypes[i].length; j++)
+            {
+                String defaultNT = defaultType(children.get(j));
+                childTypes[i][j] = defaultNT == null ? -1 : id(defaultNT);
+            }
+        }
+
+        int count = names.size();
+        mapped = new boolean[count];
+        attributes = new String[count][];
+        for (int id = 0; id < count; id++)
+        {
+            String name = names.get(id);
+            mapped[id] = attrMap.containsKey(name);
+            attributes[id] = attrMap.get(name);
+        }
+    }
+
+    /**
+     * @return the default type of a child node, the first required type if there is no default
+     */
+    static String defaultType(NodeDef nd)
+    {
+        String defaultNT = nd.getDefaultPrimaryType();
+        String[] nts = nd.getRequiredPrimaryTypes();
+        if (defaultNT == null && nts != null && nts.length > 0)
+        {
+            defaultNT = nts[0];
+        }
+        return defaultNT;
+    }
+
+    private int id(String name)
+    {
+        Integer id = ids.get(name);
+        if (id != null)
+        {
+            return id.intValue();
+        }
+        int newId = names.size();
+        ids.put(name, Integer.valueOf(newId));
+        names.add(name);
+        String local = localName(name);
+        Integer localId = localIds.get(local);
+        if (localId == null)
+        {
+            localId = Integer.valueOf(localNames.size());
+            localIds.put(local, localId);
+            localNames.add(local);
+        }
+        localIdOf = grow(localIdOf, newId);
+        localIdOf[newId] = localId.intValue();
+        return newId;
+    }
+
+    private static String localName(String name)
+    {
+        int colon = name.indexOf(':');
+        return colon < 0 ? name : name.substring(colon + 1);
+    }
+
+    private static int[] grow(int[] array, int size)
+    {
+        if (size < array.length)
+        {
+            return array;
+        }
+        int[] larger = new int[array.length * 2];
+        System.arraycopy(array, 0, larger, 0, size);
+        return larger;
+    }
+
+    int size()
+    {
+        return names.size();
+    }
+
+    /**
+     * @return the number of distinct local names, the size of a table indexed by local id
+     */
+    int localSize()
+    {
+        return localNames.size();
+    }
+
+    /**
+     * @return the id of the node type at an index of the run
+     */
+    int typeId(int index)
+    {
+        return typeIds[index];
+    }
+
+    int[] supertypes(int index)
+    {
+        return supertypes[index];
+    }
+
+    /**
+     * @return the ids of the default child node types of a node type, -1 where there is none
+     */
+    int[] childTypes(int index)
+    {
+        return childTypes[index];
+    }
+
+    String name(int id)
+    {
+        return names.get(id);
+    }
+
+    int localId(int id)
+    {
+        return localIdOf[id];
+    }
+
+    String localName(int id)
+    {
+        return localNames.get(localIdOf[id]);
+    }
+
+    /**
+     * @return true if the property map has an entry for the type
+     */
+    boolean isMapped(int id)
+    {
+        return mapped[id];
+    }
+
+    /**
+     * @return the attributes of the type in the property map, null if there are none
+     */
+    String[] attributes(int id)
+    {
+        return attributes[id];
+    }
+}
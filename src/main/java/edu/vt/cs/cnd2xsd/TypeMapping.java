@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jcr.PropertyType;
+import javax.xml.namespace.QName;
+
+/**
+ * The XSD built-in type of each JCR property type. The defaults can be changed by
+ * property map lines of the form <code>@DATE#date</code>: the property type name
+ * after the @, case is ignored, and the XSD type after the #, with or without the
+ * xs: prefix.
+ * @author adeka
+ */
+public class TypeMapping
+{
+    /**
+     * Marks the property map keys that override a type mapping.
+     */
+    public static final String OVERRIDE_PREFIX = "@";
+
+    private static final String XS_PREFIX = "xs:";
+
+    /**
+     * Property types of XSD built-in types the mapping does not produce, used when reading an XSD.
+     */
+    private static final Map<String, Integer> DERIVED = new HashMap<String, Integer>();
+
+    /**
+     * The order in which the property types are tried when reading an XSD, so that e.g.
+     * xs:string maps to STRING and not to UNDEFINED, NAME or PATH.
+     */
+    private static final int[] READ_ORDER = {PropertyType.STRING, PropertyType.LONG, PropertyType.DOUBLE,
+            PropertyType.DECIMAL, PropertyType.DATE, PropertyType.BOOLEAN, PropertyType.BINARY,
+            PropertyType.REFERENCE, PropertyType.URI, PropertyType.NAME, PropertyType.PATH,
+            PropertyType.WEAKREFERENCE, PropertyType.UNDEFINED};
+
+    static
+    {
+        for (String t : new String[] {"integer", "int", "short", "byte", "nonNegativeInteger", "nonPositiveInteger",
+                "negativeInteger", "positiveInteger", "unsignedLong", "unsignedInt", "unsignedShort", "unsignedByte"})
+        {
+            DERIVED.put(t, PropertyType.LONG);
+        }
+        DERIVED.put("float", PropertyType.DOUBLE);
+        DERIVED.put("date", PropertyType.DATE);
+        DERIVED.put("time", PropertyType.DATE);
+        DERIVED.put("hexBinary", PropertyType.BINARY);
+        DERIVED.put("IDREF", PropertyType.REFERENCE);
+        DERIVED.put("IDREFS", PropertyType.REFERENCE);
+        DERIVED.put("QName", PropertyType.NAME);
+    }
+
+    private static final TypeMapping DEFAULT = new TypeMapping();
+
+    private final QName[] types = new QName[PropertyType.DECIMAL + 1];
+
+    private TypeMapping()
+    {
+        set(PropertyType.UNDEFINED, Constants.STRING);
+        set(PropertyType.STRING, Constants.STRING);
+        set(PropertyType.BINARY, "base64Binary");
+        set(PropertyType.LONG, "long");
+        set(PropertyType.DOUBLE, "double");
+        set(PropertyType.DATE, "dateTime");
+        set(PropertyType.BOOLEAN, "boolean");
+        //JCR names and paths are not guaranteed to use prefixes declared in the document
+        set(PropertyType.NAME, Constants.STRING);
+        set(PropertyType.PATH, Constants.STRING);
+        //node identifiers need not be NCNames and no xs:ID in the document declares them
+        set(PropertyType.REFERENCE, Constants.STRING);
+        set(PropertyType.WEAKREFERENCE, Constants.STRING);
+        set(PropertyType.URI, "anyURI");
+        set(PropertyType.DECIMAL, "decimal");
+    }
+
+    private void set(int propertyType, String xsdType)
+    {
+        if (xsdType.startsWith(XS_PREFIX))
+        {
+            xsdType = xsdType.substring(XS_PREFIX.length());
+        }
+        types[propertyType] = xsdType.equals(Constants.STRING) ? QNameCache.XS_STRING
+                : new QName(Constants.XML_NAMESPACE, xsdType);
+    }
+
+    /**
+     * @return the mapping without overrides
+     */
+    public static TypeMapping getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * @param attrMap a property map, see {@link PropertyMapLoader}
+     * @return the default mapping changed by the overrides of the property map
+     * @throws IllegalArgumentException if an override names an unknown property type or no XSD type
+     */
+    public static TypeMapping fromPropertyMap(Map<String, String[]> attrMap)
+    {
+        TypeMapping mapping = DEFAULT;
+        for (Map.Entry<String, String[]> entry : attrMap.entrySet())
+        {
+            String key = entry.getKey();
+            if (!key.startsWith(OVERRIDE_PREFIX))
+            {
+                continue;
+            }
+            String[] values = entry.getValue();
+            if (values == null || values.length != 1)
+            {
+                throw new IllegalArgumentException("Expected one XSD type for " + key);
+            }
+            if (mapping == DEFAULT)
+            {
+                mapping = new TypeMapping();
+            }
+            mapping.set(propertyType(key.substring(OVERRIDE_PREFIX.length())), values[0]);
+        }
+        return mapping;
+    }
+
+    private static int propertyType(String name)
+    {
+        for (int type = 0; type <= PropertyType.DECIMAL; type++)
+        {
+            if (PropertyType.nameFromValue(type).equalsIgnoreCase(name))
+            {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown property type " + name);
+    }
+
+    /**
+     * @param propertyType a {@link PropertyType} value
+     * @return the XSD type, xs:string for unknown values
+     */
+    public QName get(int propertyType)
+    {
+        if (propertyType < 0 || propertyType >= types.length)
+        {
+            return QNameCache.XS_STRING;
+        }
+        return types[propertyType];
+    }
+
+    /**
+     * The reverse of {@link #get(int)}, used when reading an XSD.
+     * @param xsdType an XSD built-in type
+     * @return the property type, STRING for XSD types without a better match
+     */
+    public int propertyType(QName xsdType)
+    {
+        for (int propertyType : READ_ORDER)
+        {
+            if (types[propertyType].equals(xsdType))
+            {
+                return propertyType;
+            }
+        }
+        Integer derived = Constants.XML_NAMESPACE.equals(xsdType.getNamespaceURI()) ?
+                DERIVED.get(xsdType.getLocalPart()) : null;
+        return derived == null ? PropertyType.STRING : derived.intValue();
+    }
+}
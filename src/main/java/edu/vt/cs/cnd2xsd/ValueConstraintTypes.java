@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.jcr.PropertyType;
+import javax.xml.namespace.QName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3.generated.Facet;
+import org.w3.generated.NoFixedFacet;
+import org.w3.generated.ObjectFactory;
+import org.w3.generated.PatternElement;
+import org.w3.generated.RestrictionElement;
+import org.w3.generated.SimpleTypeElement;
+
+/**
+ * Translates the value constraints of properties into named simple types:
+ * literal string, name, URI and boolean constraints become enumerations, string and
+ * URI constraints using regular expressions become patterns and a single range of a
+ * numeric or date property becomes min and max facets. Properties with equal
+ * restrictions share one type. Constraints that cannot be expressed, e.g. several
+ * ranges or Java only regular expression syntax, are left out of the XSD.
+ * The name of a type is derived from its restriction, so it does not depend
+ * on which node types are converted together.
+ * @author adeka
+ */
+class ValueConstraintTypes
+{
+    private static Logger log = LoggerFactory.getLogger(ValueConstraintTypes.class);
+
+    private static final Pattern RANGE = Pattern.compile("([\\[(])\\s*([^,]*?)\\s*,\\s*([^,]*?)\\s*([\\])])");
+
+    /** characters that make a string constraint a regular expression */
+    private static final Pattern REGEX_CHARS = Pattern.compile("[\\\\.\\[\\]{}()*+?^$|]");
+
+    /** Java syntax XSD patterns do not have: inline flags, lookaround, lazy and possessive quantifiers */
+    private static final Pattern JAVA_ONLY = Pattern.compile("\\(\\?|[*+?}][?+]|\\\\[AZzbBGQE]");
+
+    /** XSD types that have an order, so they can take min and max facets */
+    private static final Set<String> ORDERED = new HashSet<String>(Arrays.asList(
+            "long", "int", "short", "byte", "integer", "decimal", "double", "float", "dateTime", "date", "time"));
+
+    private final QNameCache names;
+
+    private final Map<PropertyDef, Restriction> byProperty = new IdentityHashMap<PropertyDef, Restriction>();
+
+    private final Map<String, Restriction> bySignature = new LinkedHashMap<String, Restriction>();
+
+    private final Set<String> typeNames = new HashSet<String>();
+
+    ValueConstraintTypes(NodeTypeDef[] ntypes, QNameCache names)
+    {
+        this.names = names;
+        for (NodeTypeDef nt : ntypes)
+        {
+            for (PropertyDef pDef : nt.getDeclaredPropertyDefinitions())
+            {
+                String[] constraints = pDef.getValueConstraints();
+                if (constraints == null || constraints.length == 0)
+                {
+                    continue;
+                }
+                Restriction r = createRestriction(pDef, constraints);
+                if (r == null)
+                {
+                    log.debug("Constraints of {} in {} are not expressible in XSD", pDef.getName(), nt.getName());
+                    continue;
+                }
+                String signature = r.signature();
+                Restriction shared = bySignature.get(signature);
+                if (shared == null)
+                {
+                    r.name = uniqueName(r, signature);
+                    bySignature.put(signature, r);
+                    shared = r;
+                }
+                byProperty.put(pDef, shared);
+            }
+        }
+    }
+
+    private Restriction createRestriction(PropertyDef pDef, String[] constraints)
+    {
+        QName base = names.propertyType(pDef.getRequiredType());
+        switch (pDef.getRequiredType())
+        {
+            case PropertyType.STRING:
+            case PropertyType.URI:
+            case PropertyType.UNDEFINED:
+                //Jackrabbit checks URI constraints as regular expressions too
+                for (String c : constraints)
+                {
+                    if (REGEX_CHARS.matcher(c).find())
+                    {
+                        return patterns(base, constraints);
+                    }
+                }
+                return new Restriction(base, Restriction.ENUMERATION, constraints);
+            case PropertyType.NAME:
+            case PropertyType.BOOLEAN:
+                return new Restriction(base, Restriction.ENUMERATION, constraints);
+            case PropertyType.LONG:
+            case PropertyType.DOUBLE:
+            case PropertyType.DECIMAL:
+            case PropertyType.DATE:
+                if (constraints.length != 1 || !ORDERED.contains(base.getLocalPart()))
+                {
+                    return null;
+                }
+                return range(base, constraints[0]);
+            default:
+                //paths, references and binary lengths have no XSD counterpart
+                return null;
+        }
+    }
+
+    private static Restriction patterns(QName base, String[] constraints)
+    {
+        String[] patterns = new String[constraints.length];
+        for (int i = 0; i < constraints.length; i++)
+        {
+            String p = constraints[i];
+            if (JAVA_ONLY.matcher(p).find())
+            {
+                return null;
+            }
+            //XSD patterns are always anchored, ^ and $ would be literals
+            if (p.startsWith("^"))
+            {
+                p = p.substring(1);
+            }
+            if (p.endsWith("$") && !p.endsWith("\\$"))
+            {
+                p = p.substring(0, p.length() - 1);
+            }
+            patterns[i] = p;
+        }
+        return new Restriction(base, Restriction.PATTERN, patterns);
+    }
+
+    private static Restriction range(QName base, String constraint)
+    {
+        Matcher m = RANGE.matcher(constraint.trim());
+        if (!m.matches())
+        {
+            return null;
+        }
+        Restriction r = new Restriction(base, Restriction.RANGE, new String[0]);
+        if (m.group(2).length() > 0)
+        {
+            r.min = m.group(2);
+            r.minInclusive = m.group(1).equals("[");
+        }
+        if (m.group(3).length() > 0)
+        {
+            r.max = m.group(3);
+            r.maxInclusive = m.group(4).equals("]");
+        }
+        return r.min == null && r.max == null ? null : r;
+    }
+
+    private String uniqueName(Restriction r, String signature)
+    {
+        String name = r.base.getLocalPart() + "Constraint" + String.format("%08x", signature.hashCode());
+        String unique = name;
+        for (int i = 2; !typeNames.add(unique); i++)
+        {
+            unique = name + "_" + i;
+        }
+        return unique;
+    }
+
+    /**
+     * @return the name of the simple type restricting the property, null if it has no restriction
+     */
+    String typeName(PropertyDef pDef)
+    {
+        Restriction r = byProperty.get(pDef);
+        return r == null ? null : r.name;
+    }
+
+    /**
+     * @return the restrictions in the order they were first used
+     */
+    Collection<Restriction> getRestrictions()
+    {
+        return bySignature.values();
+    }
+
+    /**
+     * A restriction of a built-in type, written as a named simple type.
+     */
+    static class Restriction
+    {
+        static final int ENUMERATION = 0;
+
+        static final int PATTERN = 1;
+
+        static final int RANGE = 2;
+
+        private static final ObjectFactory FACTORY = new ObjectFactory();
+
+        private String name;
+
+        private final QName base;
+
+        private final int kind;
+
+        private final String[] values;
+
+        private String min;
+
+        private boolean minInclusive;
+
+        private String max;
+
+        private boolean maxInclusive;
+
+        Restriction(QName base, int kind, String[] values)
+        {
+            this.base = base;
+            this.kind = kind;
+            this.values = values;
+        }
+
+        String signature()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append(base.getLocalPart()).append('\0').append(kind);
+            for (String v : values)
+            {
+                sb.append('\0').append(v);
+            }
+            sb.append('\0').append(minInclusive).append(min).append('\0').append(maxInclusive).append(max);
+            return sb.toString();
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        QName getBase()
+        {
+            return base;
+        }
+
+        /**
+         * @return the facets as pairs of facet element name and value
+         */
+        List<String[]> getFacets()
+        {
+            List<String[]> facets = new ArrayList<String[]>();
+            String facet = kind == ENUMERATION ? "enumeration" : "pattern";
+            for (String v : values)
+            {
+                facets.add(new String[] {facet, v});
+            }
+            if (min != null)
+            {
+                facets.add(new String[] {minInclusive ? "minInclusive" : "minExclusive", min});
+            }
+            if (max != null)
+            {
+                facets.add(new String[] {maxInclusive ? "maxInclusive" : "maxExclusive", max});
+            }
+            return facets;
+        }
+
+        /**
+         * @return the restriction as a top level simple type of the JAXB model
+         */
+        SimpleTypeElement toSimpleType()
+        {
+            SimpleTypeElement type = new SimpleTypeElement();
+            type.setName(name);
+            RestrictionElement restriction = new RestrictionElement();
+            restriction.setBase(base);
+            List<Object> facets = restriction.getMinExclusivesAndMinInclusivesAndMaxExclusives();
+            for (String[] f : getFacets())
+            {
+                facets.add(createFacet(f[0], f[1]));
+            }
+            type.setRestriction(restriction);
+            return type;
+        }
+
+        /**
+         * Only the pattern facet has a class of its own, the other facets are JAXB elements.
+         */
+        private static Object createFacet(String kind, String value)
+        {
+            if (kind.equals("pattern"))
+            {
+                PatternElement pattern = new PatternElement();
+                pattern.setValue(value);
+                return pattern;
+            }
+            if (kind.equals("enumeration"))
+            {
+                NoFixedFacet facet = new NoFixedFacet();
+                facet.setValue(value);
+                return FACTORY.createEnumeration(facet);
+            }
+            Facet facet = new Facet();
+            facet.setValue(value);
+            if (kind.equals("minInclusive"))
+            {
+                return FACTORY.createMinInclusive(facet);
+            }
+            if (kind.equals("minExclusive"))
+            {
+                return FACTORY.createMinExclusive(facet);
+            }
+            if (kind.equals("maxInclusive"))
+            {
+                return FACTORY.createMaxInclusive(facet);
+            }
+            return FACTORY.createMaxExclusive(facet);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts an XML schema into a CND, the reverse of {@link Cnd2XsdConverter}.
+ * The schema is read by {@link XsdModelReader} into the same node type model the
+ * forward conversion uses and written by {@link CndWriter}.
+ * @author adeka
+ */
+public class Xsd2CndConverter
+{
+    private static Logger log = LoggerFactory.getLogger(Xsd2CndConverter.class);
+
+    private static final String MAINCLI = "java -cp cnd2xsd-<version>.jar " + Xsd2CndConverter.class.getName();
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The prefix of the node types if the job has none.
+     */
+    static final String DEFAULT_PREFIX = "ns";
+
+    static Options createOptions()
+    {
+        Options opt = new Options();
+
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Path for the input XML schema.").create("fx"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Path for generating the cnd file.").create("fc"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("Path for properties map, only its @ type overrides are used.").create("fp"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("The namespace of the node types, the target namespace of the XSD by default. " +
+                "Without either the node types are not prefixed.").create("ns"));
+        opt.addOption(OptionBuilder.hasArg(true).isRequired(false).
+                withDescription("The namespace prefix, " + DEFAULT_PREFIX + " by default.").create("nsp"));
+        opt.addOption(OptionBuilder.hasArg(false).isRequired(false).
+                withDescription("Prints this list.").create("help"));
+        return opt;
+    }
+
+    public static void main(String[] args) throws IOException, XMLStreamException, ParseException
+    {
+        Options opt = createOptions();
+        CommandLine cl = new BasicParser().parse(opt, args);
+        HelpFormatter f = new HelpFormatter();
+        if (cl.getArgs().length != 0 || args.length == 0 || cl.hasOption("help")
+                || !cl.hasOption("fx") || !cl.hasOption("fc"))
+        {
+            f.printHelp(MAINCLI, opt);
+            return;
+        }
+        new Xsd2CndConverter().convert(ConversionJob.fromCommandLine(cl, null));
+    }
+
+    /**
+     * Reads the XSD of the job and writes its CND.
+     * @param job the job, its XSD path is the input and its cnd path the output
+     */
+    public void convert(ConversionJob job) throws IOException, XMLStreamException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(job.getXsdPath()), BUFFER_SIZE);
+        try
+        {
+            Writer out = new OutputStreamWriter(new FileOutputStream(job.getCndPath()), UTF8);
+            try
+            {
+                convert(in, job.getXsdPath(), job, out);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        log.info("Wrote {}", job.getCndPath());
+    }
+
+    /**
+     * Converts an XSD, the stream and the writer are left open.
+     * @param in the XSD
+     * @param systemId the name of the XSD used in messages
+     * @param job the namespace, prefix and properties map of the conversion
+     * @param out receives the CND
+     * @return the node types written
+     */
+    public NodeTypeDef[] convert(InputStream in, String systemId, ConversionJob job, Writer out)
+            throws IOException, XMLStreamException
+    {
+        String prefix = job.getPrefix() == null ? DEFAULT_PREFIX : job.getPrefix();
+        XsdModelReader reader = new XsdModelReader(prefix, job.getNamespace(), getTypeMapping(job));
+        NodeTypeDef[] ntypes = reader.read(in, systemId);
+        String namespace = job.getNamespace() == null ? reader.getTargetNamespace() : job.getNamespace();
+        Map<String, String> namespaces = new LinkedHashMap<String, String>();
+        if (namespace != null)
+        {
+            namespaces.put(prefix, namespace);
+        }
+        else
+        {
+            log.info("{} has no target namespace, the node types are not prefixed", systemId);
+        }
+        CndWriter.write(ntypes, namespaces, out);
+        return ntypes;
+    }
+
+    private static TypeMapping getTypeMapping(ConversionJob job) throws IOException
+    {
+        if (job.getPropmapPath() == null)
+        {
+            return TypeMapping.getDefault();
+        }
+        return TypeMapping.fromPropertyMap(PropertyMapLoader.load(new File(job.getPropmapPath())));
+    }
+}
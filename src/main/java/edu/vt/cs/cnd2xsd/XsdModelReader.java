@@ -0,0 +1,721 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.jcr.PropertyType;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads an XML schema with StAX into {@link NodeTypeDef}s, the reverse of the XSD conversion.
+ * The schema is read in a single pass, only its named types and global elements are kept
+ * until the end, when the references between them are resolved.
+ * <ul>
+ * <li>every complex type becomes a node type, an extended or restricted complex type its supertype</li>
+ * <li>elements of a complex type become child nodes, other elements multi-valued or single properties</li>
+ * <li>attributes become single-valued properties</li>
+ * <li>simple type restrictions become value constraints: enumerations, patterns and ranges</li>
+ * <li>xs:any and xs:anyAttribute become residual child nodes and properties</li>
+ * </ul>
+ * Anonymous complex types are named after their element. Groups, attribute groups and
+ * included or imported schemas are not followed. The XSD written for a CND reads back into
+ * equivalent node types, except that supertypes come back as child nodes and a multi-valued
+ * property as a child node whose holder node type has the multi-valued property.
+ * @author adeka
+ */
+public class XsdModelReader
+{
+    private static Logger log = LoggerFactory.getLogger(XsdModelReader.class);
+
+    private static final String NT_BASE = "nt:base";
+
+    private static final String RESIDUAL = "*";
+
+    /** characters that have to be escaped to match literally in a regular expression */
+    private static final Pattern REGEX_CHARS = Pattern.compile("[\\\\.\\[\\]{}()*+?^$|]");
+
+    private static XMLInputFactory factory = XMLInputFactory.newInstance();
+
+    private final String prefix;
+
+    /** the namespace the prefix stands for if the schema has no target namespace, may be null */
+    private final String namespace;
+
+    private final TypeMapping mapping;
+
+    private XMLStreamReader reader;
+
+    private String targetNamespace;
+
+    private final Map<String, TypeSpec> complexTypes = new LinkedHashMap<String, TypeSpec>();
+
+    private final Map<String, SimpleSpec> simpleTypes = new HashMap<String, SimpleSpec>();
+
+    /** global elements by name, referenced by element refs */
+    private final Map<String, ItemSpec> elements = new HashMap<String, ItemSpec>();
+
+    /**
+     * Names of a schema without target namespace stay unprefixed.
+     * @param prefix the namespace prefix of the node types, null or empty for unprefixed names
+     * @param mapping maps the XSD built-in types to property types
+     */
+    public XsdModelReader(String prefix, TypeMapping mapping)
+    {
+        this(prefix, null, mapping);
+    }
+
+    /**
+     * @param prefix the namespace prefix of the node types, null or empty for unprefixed names
+     * @param namespace the namespace of the prefix, null for the target namespace of the schema.
+     *        Names stay unprefixed if there is neither, the prefix would not be declared.
+     * @param mapping maps the XSD built-in types to property types
+     */
+    public XsdModelReader(String prefix, String namespace, TypeMapping mapping)
+    {
+        this.prefix = prefix == null || prefix.length() == 0 ? null : prefix;
+        this.namespace = namespace;
+        this.mapping = mapping;
+    }
+
+    /**
+     * Reads a schema, the stream is left open. A reader is used for a single schema.
+     * @param in the XSD
+     * @param systemId the name of the XSD used in messages
+     * @return the node types in the order of the complex types
+     */
+    public NodeTypeDef[] read(InputStream in, String systemId) throws XMLStreamException
+    {
+        synchronized (factory)
+        {
+            reader = factory.createXMLStreamReader(systemId, in);
+        }
+        try
+        {
+            while (reader.hasNext())
+            {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT)
+                {
+                    if (!isXsd("schema"))
+                    {
+                        throw new XMLStreamException("Not an XML schema: " + reader.getName(), reader.getLocation());
+                    }
+                    targetNamespace = reader.getAttributeValue(null, "targetNamespace");
+                    readSchema();
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        NodeTypeDef[] ntypes = resolve();
+        log.debug("Read {} node types from {}", ntypes.length, systemId);
+        return ntypes;
+    }
+
+    /**
+     * @return the target namespace of the schema read last, null if it has none
+     */
+    public String getTargetNamespace()
+    {
+        return targetNamespace;
+    }
+
+    private void readSchema() throws XMLStreamException
+    {
+        while (nextChild())
+        {
+            String name = reader.getAttributeValue(null, "name");
+            if (isXsd("complexType") && name != null)
+            {
+                TypeSpec type = new TypeSpec(name);
+                type.isAbstract = "true".equals(reader.getAttributeValue(null, "abstract"));
+                //registered first so the types nested in it follow it
+                complexTypes.put(name, type);
+                readComplexType(type);
+            }
+            else if (isXsd("simpleType") && name != null)
+            {
+                simpleTypes.put(name, readSimpleType(name));
+            }
+            else if (isXsd("element") && name != null)
+            {
+                ItemSpec element = readElement(null);
+                elements.put(name, element);
+            }
+            else
+            {
+                log.debug("Skipped {}", reader.getName());
+                skip();
+            }
+        }
+    }
+
+    /**
+     * Reads the content of a complex type up to its end tag.
+     */
+    private void readComplexType(TypeSpec type) throws XMLStreamException
+    {
+        while (nextChild())
+        {
+            readContent(type, false);
+        }
+    }
+
+    /**
+     * Reads an item of a complex type, compositors and derivations are flattened into the type.
+     * @param optional true inside a choice, where no element is mandatory
+     */
+    private void readContent(TypeSpec type, boolean optional) throws XMLStreamException
+    {
+        if (isXsd("sequence") || isXsd("all") || isXsd("choice"))
+        {
+            boolean choice = optional || isXsd("choice") || "0".equals(reader.getAttributeValue(null, "minOccurs"));
+            while (nextChild())
+            {
+                readContent(type, choice);
+            }
+        }
+        else if (isXsd("complexContent"))
+        {
+            while (nextChild())
+            {
+                readContent(type, optional);
+            }
+        }
+        else if (isXsd("simpleContent"))
+        {
+            //the text of the element becomes a property
+            while (nextChild())
+            {
+                QName base = qname(reader.getAttributeValue(null, "base"));
+                ItemSpec value = new ItemSpec("value", true);
+                value.type = base;
+                if (isXsd("restriction"))
+                {
+                    value.simple = readRestriction(null, base);
+                }
+                else
+                {
+                    readAttributesOnly(type);
+                }
+                type.items.add(value);
+            }
+        }
+        else if (isXsd("extension") || isXsd("restriction"))
+        {
+            QName base = qname(reader.getAttributeValue(null, "base"));
+            if (base != null && !Constants.XML_NAMESPACE.equals(base.getNamespaceURI()))
+            {
+                type.base = base.getLocalPart();
+            }
+            while (nextChild())
+            {
+                readContent(type, optional);
+            }
+        }
+        else if (isXsd("element"))
+        {
+            ItemSpec element = readElement(type);
+            if (optional)
+            {
+                element.min = 0;
+            }
+            type.items.add(element);
+        }
+        else if (isXsd("attribute"))
+        {
+            type.items.add(readAttribute());
+        }
+        else if (isXsd("any"))
+        {
+            ItemSpec any = new ItemSpec(RESIDUAL, false);
+            any.min = 0;
+            any.max = -1;
+            any.any = true;
+            type.items.add(any);
+            skip();
+        }
+        else if (isXsd("anyAttribute"))
+        {
+            ItemSpec any = new ItemSpec(RESIDUAL, true);
+            any.min = 0;
+            any.any = true;
+            type.items.add(any);
+            skip();
+        }
+        else
+        {
+            log.debug("Skipped {} in {}", reader.getName(), type.name);
+            skip();
+        }
+    }
+
+    private void readAttributesOnly(TypeSpec type) throws XMLStreamException
+    {
+        while (nextChild())
+        {
+            if (isXsd("attribute"))
+            {
+                type.items.add(readAttribute());
+            }
+            else
+            {
+                skip();
+            }
+        }
+    }
+
+    /**
+     * @param owner the complex type declaring the element, null for a global element
+     */
+    private ItemSpec readElement(TypeSpec owner) throws XMLStreamException
+    {
+        String name = reader.getAttributeValue(null, "name");
+        ItemSpec element;
+        String ref = reader.getAttributeValue(null, "ref");
+        if (name == null && ref != null)
+        {
+            QName refName = qname(ref);
+            element = new ItemSpec(refName.getLocalPart(), false);
+            element.ref = refName.getLocalPart();
+        }
+        else
+        {
+            element = new ItemSpec(name, false);
+            element.type = qname(reader.getAttributeValue(null, "type"));
+        }
+        element.min = occurs(reader.getAttributeValue(null, "minOccurs"));
+        element.max = occurs(reader.getAttributeValue(null, "maxOccurs"));
+        element.defaultValue = reader.getAttributeValue(null, "default");
+        while (nextChild())
+        {
+            if (isXsd("complexType") && element.name != null)
+            {
+                //an anonymous type is named after its element
+                String typeName = uniqueTypeName(owner == null ? element.name : owner.name + "_" + element.name);
+                TypeSpec type = new TypeSpec(typeName);
+                complexTypes.put(typeName, type);
+                readComplexType(type);
+                element.type = new QName(targetNamespace == null ? "" : targetNamespace, typeName);
+            }
+            else if (isXsd("simpleType"))
+            {
+                element.simple = readSimpleType(null);
+            }
+            else
+            {
+                skip();
+            }
+        }
+        return element;
+    }
+
+    private ItemSpec readAttribute() throws XMLStreamException
+    {
+        String name = reader.getAttributeValue(null, "name");
+        String ref = reader.getAttributeValue(null, "ref");
+        ItemSpec attr = new ItemSpec(name == null && ref != null ? qname(ref).getLocalPart() : name, true);
+        attr.type = qname(reader.getAttributeValue(null, "type"));
+        attr.defaultValue = reader.getAttributeValue(null, "default");
+        attr.min = "required".equals(reader.getAttributeValue(null, "use")) ? 1 : 0;
+        while (nextChild())
+        {
+            if (isXsd("simpleType"))
+            {
+                attr.simple = readSimpleType(null);
+            }
+            else
+            {
+                skip();
+            }
+        }
+        return attr;
+    }
+
+    private SimpleSpec readSimpleType(String name) throws XMLStreamException
+    {
+        SimpleSpec spec = null;
+        while (nextChild())
+        {
+            if (isXsd("restriction"))
+            {
+                spec = readRestriction(name, qname(reader.getAttributeValue(null, "base")));
+            }
+            else
+            {
+                //lists and unions are kept as strings
+                skip();
+            }
+        }
+        if (spec == null)
+        {
+            spec = new SimpleSpec(name, new QName(Constants.XML_NAMESPACE, Constants.STRING));
+        }
+        return spec;
+    }
+
+    private SimpleSpec readRestriction(String name, QName base) throws XMLStreamException
+    {
+        SimpleSpec spec = new SimpleSpec(name, base);
+        while (nextChild())
+        {
+            String value = reader.getAttributeValue(null, "value");
+            if (isXsd("enumeration"))
+            {
+                spec.enumerations.add(value);
+            }
+            else if (isXsd("pattern"))
+            {
+                spec.patterns.add(value);
+            }
+            else if (isXsd("minInclusive") || isXsd("minExclusive"))
+            {
+                spec.min = value;
+                spec.minInclusive = isXsd("minInclusive");
+            }
+            else if (isXsd("maxInclusive") || isXsd("maxExclusive"))
+            {
+                spec.max = value;
+                spec.maxInclusive = isXsd("maxInclusive");
+            }
+            else if (isXsd("simpleType"))
+            {
+                //a restriction of an anonymous type, keep the facets of the outer one
+                SimpleSpec inner = readSimpleType(null);
+                spec.base = inner.base;
+                continue;
+            }
+            skip();
+        }
+        return spec;
+    }
+
+    private String uniqueTypeName(String name)
+    {
+        String unique = name;
+        for (int i = 2; complexTypes.containsKey(unique); i++)
+        {
+            unique = name + i;
+        }
+        return unique;
+    }
+
+    /**
+     * Moves to the next child element of the current element.
+     * @return false at the end tag of the current element
+     */
+    private boolean nextChild() throws XMLStreamException
+    {
+        while (reader.hasNext())
+        {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the current element and its content.
+     */
+    private void skip() throws XMLStreamException
+    {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext())
+        {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                depth--;
+            }
+        }
+    }
+
+    private boolean isXsd(String localName)
+    {
+        return localName.equals(reader.getLocalName()) && Constants.XML_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    /**
+     * Resolves a prefixed name against the namespaces in scope at the current element.
+     */
+    private QName qname(String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        int colon = value.indexOf(':');
+        String p = colon < 0 ? XMLConstants.DEFAULT_NS_PREFIX : value.substring(0, colon);
+        String uri = reader.getNamespaceContext().getNamespaceURI(p);
+        return new QName(uri == null ? "" : uri, value.substring(colon + 1));
+    }
+
+    private static int occurs(String value)
+    {
+        if (value == null)
+        {
+            return 1;
+        }
+        return Constants.UNBOUNDED.equals(value) ? -1 : Integer.parseInt(value.trim());
+    }
+
+    private String jcrName(String localName)
+    {
+        if (prefix == null || RESIDUAL.equals(localName) || (namespace == null && targetNamespace == null))
+        {
+            return localName;
+        }
+        return prefix + ":" + localName;
+    }
+
+    private boolean isTarget(QName type)
+    {
+        String ns = targetNamespace == null ? "" : targetNamespace;
+        return type != null && ns.equals(type.getNamespaceURI());
+    }
+
+    private NodeTypeDef[] resolve()
+    {
+        List<NodeTypeDef> ntypes = new ArrayList<NodeTypeDef>(complexTypes.size());
+        for (TypeSpec type : complexTypes.values())
+        {
+            NodeTypeDef nt = new NodeTypeDef(jcrName(type.name));
+            nt.setAbstract(type.isAbstract);
+            nt.addSupertype(type.base != null && complexTypes.containsKey(type.base) ? jcrName(type.base) : NT_BASE);
+            for (ItemSpec item : type.items)
+            {
+                if (item.ref != null)
+                {
+                    ItemSpec global = elements.get(item.ref);
+                    if (global == null)
+                    {
+                        log.warn("Unknown element {} in {}", item.ref, type.name);
+                        continue;
+                    }
+                    item.type = global.type;
+                    item.simple = global.simple;
+                }
+                if (item.any && item.attribute)
+                {
+                    PropertyDef residual = new PropertyDef(RESIDUAL);
+                    residual.setRequiredType(PropertyType.UNDEFINED);
+                    nt.addProperty(residual);
+                }
+                else if (item.any)
+                {
+                    NodeDef child = new NodeDef(RESIDUAL);
+                    child.setRequiredPrimaryTypes(new String[] {NT_BASE});
+                    child.setAllowsSameNameSiblings(true);
+                    nt.addChildNode(child);
+                }
+                else if (!item.attribute && item.simple == null && isComplex(item.type))
+                {
+                    String childType = item.type == null ? NT_BASE : jcrName(item.type.getLocalPart());
+                    NodeDef child = new NodeDef(jcrName(item.name));
+                    child.setRequiredPrimaryTypes(new String[] {childType});
+                    child.setDefaultPrimaryType(item.type == null ? null : childType);
+                    child.setMandatory(item.min > 0);
+                    child.setAllowsSameNameSiblings(item.max != 1);
+                    nt.addChildNode(child);
+                }
+                else
+                {
+                    nt.addProperty(property(item));
+                }
+            }
+            ntypes.add(nt);
+        }
+        return ntypes.toArray(new NodeTypeDef[ntypes.size()]);
+    }
+
+    /**
+     * @return true if elements of the type become child nodes, elements without a type are of xs:anyType
+     */
+    private boolean isComplex(QName type)
+    {
+        return type == null || (isTarget(type) && complexTypes.containsKey(type.getLocalPart()));
+    }
+
+    private PropertyDef property(ItemSpec item)
+    {
+        PropertyDef pDef = new PropertyDef(jcrName(item.name));
+        pDef.setMultiple(!item.attribute && item.max != 1);
+        pDef.setMandatory(item.min > 0);
+        if (item.defaultValue != null)
+        {
+            pDef.setDefaultValues(new String[] {item.defaultValue});
+        }
+        //follow named simple types down to a built-in type, the nearest facets win
+        SimpleSpec constraints = item.simple;
+        QName type = item.simple != null ? item.simple.base : item.type;
+        Set<String> seen = new HashSet<String>();
+        while (isTarget(type) && simpleTypes.containsKey(type.getLocalPart()) && seen.add(type.getLocalPart()))
+        {
+            SimpleSpec spec = simpleTypes.get(type.getLocalPart());
+            if (constraints == null || !constraints.hasFacets())
+            {
+                constraints = spec;
+            }
+            type = spec.base;
+        }
+        int propertyType = type == null ? PropertyType.STRING : mapping.propertyType(type);
+        pDef.setRequiredType(propertyType);
+        if (constraints != null && constraints.hasFacets())
+        {
+            pDef.setValueConstraints(constraints.toValueConstraints(propertyType));
+        }
+        return pDef;
+    }
+
+    private static class TypeSpec
+    {
+        final String name;
+
+        /** local name of the extended or restricted type */
+        String base;
+
+        boolean isAbstract;
+
+        final List<ItemSpec> items = new ArrayList<ItemSpec>();
+
+        TypeSpec(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    private static class ItemSpec
+    {
+        final String name;
+
+        final boolean attribute;
+
+        QName type;
+
+        /** anonymous simple type */
+        SimpleSpec simple;
+
+        /** local name of a referenced global element */
+        String ref;
+
+        boolean any;
+
+        int min = 1;
+
+        /** -1 for unbounded */
+        int max = 1;
+
+        String defaultValue;
+
+        ItemSpec(String name, boolean attribute)
+        {
+            this.name = name;
+            this.attribute = attribute;
+        }
+    }
+
+    private static class SimpleSpec
+    {
+        final String name;
+
+        QName base;
+
+        final List<String> enumerations = new ArrayList<String>();
+
+        final List<String> patterns = new ArrayList<String>();
+
+        String min;
+
+        boolean minInclusive;
+
+        String max;
+
+        boolean maxInclusive;
+
+        SimpleSpec(String name, QName base)
+        {
+            this.name = name;
+            this.base = base;
+        }
+
+        boolean hasFacets()
+        {
+            return !enumerations.isEmpty() || !patterns.isEmpty() || min != null || max != null;
+        }
+
+        /**
+         * @return the JCR value constraints of the facets, see {@link ValueConstraintTypes}
+         */
+        String[] toValueConstraints(int propertyType)
+        {
+            //string and URI constraints are regular expressions
+            boolean regex = propertyType == PropertyType.STRING || propertyType == PropertyType.URI;
+            List<String> constraints = new ArrayList<String>();
+            if (!enumerations.isEmpty())
+            {
+                for (String value : enumerations)
+                {
+                    constraints.add(regex ? REGEX_CHARS.matcher(value).replaceAll("\\\\$0") : value);
+                }
+            }
+            else if (!patterns.isEmpty())
+            {
+                //the facets of a step are alternatives, as are the constraints of a property
+                for (String pattern : patterns)
+                {
+                    constraints.add(regex ? "^" + pattern + "$" : pattern);
+                }
+            }
+            else
+            {
+                constraints.add((minInclusive ? "[" : "(") + (min == null ? "" : min) + ","
+                        + (max == null ? "" : max) + (maxInclusive ? "]" : ")"));
+            }
+            return constraints.toArray(new String[constraints.size()]);
+        }
+    }
+}
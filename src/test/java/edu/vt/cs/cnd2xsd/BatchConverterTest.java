@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class BatchConverterTest
+{
+    private File dir;
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        dir = File.createTempFile("batch", "");
+        dir.delete();
+        dir.mkdir();
+        write("a.cnd", "<t = 'urn:t'>\n[t:doc]\n  - t:title (string)\n");
+        write("b.cnd", "<t = 'urn:t'>\n[t:doc]\n  - t:size (long)\n");
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        for (File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private void write(String name, String content) throws IOException
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, name)), "UTF-8");
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    @Test
+    public void scansCndFiles() throws Exception
+    {
+        write("notes.txt", "");
+        ConversionJob defaults = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+        List<ConversionJob> jobs = BatchConverter.scanDirectory(dir, defaults);
+        assertEquals(2, jobs.size());
+        assertEquals(new File(dir, "a.cnd").getPath(), jobs.get(0).getCndPath());
+        assertEquals(new File(dir, "a.xsd").getPath(), jobs.get(0).getXsdPath());
+        assertEquals("urn:t", jobs.get(1).getNamespace());
+        assertEquals("doc", jobs.get(1).getRootType());
+    }
+
+    @Test
+    public void readsManifestLinesOverDefaults() throws Exception
+    {
+        write("jobs.txt", "# two jobs\n"
+                + "-fc a.cnd -fx a.xsd\n"
+                + "\n"
+                + "-fc b.cnd -fx b.xsd -ns urn:b -rtype part\n");
+        ConversionJob defaults = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+        List<ConversionJob> jobs = BatchConverter.readManifest(new File(dir, "jobs.txt"), defaults);
+        assertEquals(2, jobs.size());
+        assertEquals("a.cnd", jobs.get(0).getCndPath());
+        assertEquals("urn:t", jobs.get(0).getNamespace());
+        assertEquals("urn:b", jobs.get(1).getNamespace());
+        assertEquals("part", jobs.get(1).getRootType());
+        assertEquals("root", jobs.get(1).getRoot());
+    }
+
+    @Test
+    public void readsQuotedPathsWithSpaces() throws Exception
+    {
+        write("my types.cnd", "<t = 'urn:t'>\n[t:doc]\n  - t:title (string)\n");
+        File cnd = new File(dir, "my types.cnd");
+        File xsd = new File(dir, "my types.xsd");
+        write("jobs.txt", "-fc \"" + cnd.getPath() + "\"  -fx '" + xsd.getPath() + "' -ns urn:t\n");
+        ConversionJob defaults = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+        List<ConversionJob> jobs = BatchConverter.readManifest(new File(dir, "jobs.txt"), defaults);
+        assertEquals(1, jobs.size());
+        assertEquals(cnd.getPath(), jobs.get(0).getCndPath());
+        assertEquals(xsd.getPath(), jobs.get(0).getXsdPath());
+        BatchConverter batch = new BatchConverter(new CndNodeTypeLoader(), new Cnd2XsdConverter());
+        batch.run(jobs, 1);
+        assertTrue(batch.getResults().get(0).getError(), batch.getResults().get(0).isSuccess());
+        assertTrue(xsd.length() > 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnclosedQuotes() throws Exception
+    {
+        write("jobs.txt", "-fc \"a b.cnd\n");
+        BatchConverter.readManifest(new File(dir, "jobs.txt"), null);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownManifestOptions() throws Exception
+    {
+        write("jobs.txt", "-fc a.cnd -unknown\n");
+        BatchConverter.readManifest(new File(dir, "jobs.txt"), null);
+    }
+
+    @Test
+    public void reportsFailedJobsAndContinues() throws Exception
+    {
+        write("c.cnd", "<t = 'urn:t'>\n[t:doc\n");
+        write("map.txt", "nt:base\n");
+        ConversionJob defaults = new ConversionJob(null, null, new File(dir, "map.txt").getPath(),
+                "urn:t", "t", "root", "doc");
+        BatchConverter batch = new BatchConverter(new CndNodeTypeLoader(), new Cnd2XsdConverter());
+        batch.run(BatchConverter.scanDirectory(dir, defaults), 1);
+        List<BatchConverter.Result> results = batch.getResults();
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertFalse(results.get(2).isSuccess());
+    }
+
+    @Test
+    public void parallelJobsDoNotShareTheLoader() throws Exception
+    {
+        ConversionJob defaults = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+        List<ConversionJob> jobs = BatchConverter.scanDirectory(dir, defaults);
+        assertEquals(2, jobs.size());
+        //both CNDs define t:doc, a shared registration would keep only one of them
+        BatchConverter batch = new BatchConverter(new FailingLoader(), new Cnd2XsdConverter());
+        batch.run(jobs, 2);
+        for (BatchConverter.Result r : batch.getResults())
+        {
+            assertTrue(r.getError(), r.isSuccess());
+        }
+        assertTrue(new File(dir, "a.xsd").length() > 0);
+        assertTrue(new File(dir, "b.xsd").length() > 0);
+    }
+
+    /**
+     * Stands for a shared repository, parallel jobs must not use it.
+     */
+    private static class FailingLoader implements NodeTypeLoader
+    {
+        public void start()
+        {
+        }
+
+        public NodeTypeDef[] load(Reader reader, String systemId, String prefix) throws RepositoryException
+        {
+            throw new RepositoryException("shared loader used");
+        }
+
+        public NodeTypeDef[] load(Reader reader, String systemId, String prefix, String rootType)
+                throws RepositoryException
+        {
+            throw new RepositoryException("shared loader used");
+        }
+
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+import org.w3.generated.SchemaElement;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class Cnd2XsdConverterTest
+{
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:doc]\n"
+            + "  - t:title (string)\n"
+            + "  + t:part (t:part)\n"
+            + "[t:part]\n"
+            + "  - t:size (long)\n";
+
+    private static final String MAP = "nt:base\nt:part#id\n";
+
+    private static ConversionJob job()
+    {
+        return new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+    }
+
+    private static byte[] marshal(SchemaElement schema) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Schemas.converter().marshal(schema, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void convertsStreamsAndBuffersAlike() throws Exception
+    {
+        Cnd2XsdConverter converter = Schemas.converter();
+        byte[] fromStream = marshal(converter.createSchema(new CndNodeTypeLoader(),
+                new ByteArrayInputStream(CND.getBytes("UTF-8")),
+                new ByteArrayInputStream(MAP.getBytes("UTF-8")), job()));
+
+        ByteBuffer cnd = ByteBuffer.allocate(64 + CND.length());
+        cnd.put(new byte[3]).put(CND.getBytes("UTF-8")).flip();
+        cnd.position(3);
+        ByteBuffer map = ByteBuffer.wrap(MAP.getBytes("UTF-8"));
+        byte[] fromBuffer = marshal(converter.createSchema(new CndNodeTypeLoader(), cnd, map, job()));
+        assertArrayEquals(fromStream, fromBuffer);
+        assertEquals(3, cnd.position());
+        assertEquals(0, map.position());
+    }
+
+    @Test
+    public void writesToChannels() throws Exception
+    {
+        Cnd2XsdConverter converter = Schemas.converter();
+        byte[] expected = marshal(converter.createSchema(new CndNodeTypeLoader(), new StringReader(CND), "t.cnd",
+                Schemas.propertyMap(MAP), job()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converter.convert(new CndNodeTypeLoader(), new StringReader(CND), "t.cnd", Schemas.propertyMap(MAP), job(),
+                Channels.newChannel(out));
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    @Test
+    public void checkRewritesOnlyChangedSchemas() throws Exception
+    {
+        File cnd = File.createTempFile("check", ".cnd");
+        File xsd = new File(cnd.getPath().replace(".cnd", ".xsd"));
+        try
+        {
+            ConversionJob job = new ConversionJob(cnd.getPath(), xsd.getPath(), null, "urn:t", "t", "root", "doc")
+                    .withSort(true);
+            write(cnd, CND);
+            assertTrue(check(job));
+            xsd.setLastModified(1000000000L);
+            assertFalse(check(job));
+            assertEquals(1000000000L, xsd.lastModified());
+
+            //the sorted schema does not depend on the order of the node types
+            write(cnd, "<t = 'urn:t'>\n[t:part]\n  - t:size (long)\n"
+                    + "[t:doc]\n  + t:part (t:part)\n  - t:title (string)\n");
+            assertFalse(check(job));
+
+            write(cnd, CND.replace("(long)", "(double)"));
+            assertTrue(check(job));
+        }
+        finally
+        {
+            cnd.delete();
+            xsd.delete();
+        }
+    }
+
+    private static boolean check(ConversionJob job) throws Exception
+    {
+        return Schemas.converter().check(new CndNodeTypeLoader(), job, new ConversionStats(job.getCndPath()));
+    }
+
+    private static void write(File file, String content) throws Exception
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
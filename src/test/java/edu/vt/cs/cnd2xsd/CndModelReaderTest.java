@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.vt.cs.cnd2xsd;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import javax.jcr.PropertyType;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class CndModelReaderTest
+{
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:tagged] mixin\n"
+            + "[t:doc] > t:tagged, mix:referenceable\n"
+            + "  - t:title (string) = 'untitled' mandatory\n"
+            + "  - t:tags (string) multiple < 'a', 'b'\n"
+            + "  + t:part (t:doc) = t:doc sns\n"
+            + "  + *\n"
+            + "[t:page] > t:doc\n";
+
+    private static NodeTypeDef[] read(String cnd) throws Exception
+    {
+        return CndModelReader.read(new StringReader(cnd), "test.cnd");
+    }
+
+    @Test
+    public void readsItems() throws Exception
+    {
+        NodeTypeDef doc = read(CND)[1];
+        assertEquals("t:doc", doc.getName());
+        PropertyDef title = doc.getDeclaredPropertyDefinitions().get(0);
+        assertEquals(PropertyType.STRING, title.getRequiredType());
+        assertTrue(title.isMandatory());
+        assertArrayEquals(new String[] {"untitled"}, title.getDefaultValues());
+        PropertyDef tags = doc.getDeclaredPropertyDefinitions().get(1);
+        assertTrue(tags.isMultiple());
+        assertArrayEquals(new String[] {"a", "b"}, tags.getValueConstraints());
+        NodeDef part = doc.getDeclaredChildNodeDefinitions().get(0);
+        assertEquals("t:doc", part.getDefaultPrimaryType());
+        assertTrue(part.allowsSameNameSiblings());
+        NodeDef any = doc.getDeclaredChildNodeDefinitions().get(1);
+        assertArrayEquals(new String[] {"nt:base"}, any.getRequiredPrimaryTypes());
+    }
+
+    @Test
+    public void addsImplicitBaseType() throws Exception
+    {
+        NodeTypeDef[] ntypes = read(CND);
+        assertTrue(ntypes[0].isMixin());
+        assertEquals(Arrays.asList(), ntypes[0].getDeclaredSupertypes());
+        //only mixin supertypes, one from the CND and one known by its prefix
+        assertEquals(Arrays.asList("t:tagged", "mix:referenceable", "nt:base"), ntypes[1].getDeclaredSupertypes());
+        //a primary supertype from the CND
+        assertEquals(Arrays.asList("t:doc"), ntypes[2].getDeclaredSupertypes());
+    }
+
+    @Test
+    public void takesExternalTypesWithoutMixPrefixForPrimary() throws Exception
+    {
+        NodeTypeDef[] ntypes = read("<t = 'urn:t'>\n[t:note] > other:taggable\n");
+        assertFalse(ntypes[0].getDeclaredSupertypes().contains("nt:base"));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3.generated.ComplexTypeElement;
+import org.w3.generated.OpenAttrs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author adeka
+ */
+public class ComplexTypeRegistryTest
+{
+    private static ComplexTypeElement type(String name)
+    {
+        ComplexTypeElement ct = new ComplexTypeElement();
+        ct.setName(name);
+        return ct;
+    }
+
+    @Test
+    public void findsTheFirstTypeOfAName()
+    {
+        List<OpenAttrs> items = new ArrayList<OpenAttrs>();
+        ComplexTypeElement existing = type("doc");
+        items.add(existing);
+        ComplexTypeRegistry registry = new ComplexTypeRegistry(items);
+        assertSame(existing, registry.find("doc"));
+        assertNull(registry.find("part"));
+
+        ComplexTypeElement part = type("part");
+        registry.add(part);
+        registry.add(type("part"));
+        assertSame(part, registry.find("part"));
+        assertEquals(3, items.size());
+    }
+
+    @Test
+    public void appendsHeldTypesWhenReleased()
+    {
+        List<OpenAttrs> items = new ArrayList<OpenAttrs>();
+        ComplexTypeRegistry registry = new ComplexTypeRegistry(items);
+        ComplexTypeElement part = type("part");
+        registry.hold(part);
+        assertSame(part, registry.find("part"));
+        registry.add(type("doc"));
+        assertEquals(1, items.size());
+        registry.release("part");
+        registry.release("part");
+        assertEquals(2, items.size());
+        assertSame(part, items.get(1));
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.nodetype.NodeType;
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.jackrabbit.commons.iterator.PropertyIteratorAdapter;
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Exports trees of in-memory nodes implementing the few JCR methods the exporter calls.
+ * @author adeka
+ */
+public class ContentExporterTest
+{
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:doc]\n"
+            + "  - t:title (string)\n"
+            + "  - t:size (long)\n"
+            + "  - t:tags (string) multiple\n"
+            + "  + t:part (t:part) multiple\n"
+            + "  + * (t:note)\n"
+            + "[t:part]\n"
+            + "  - t:n (long)\n"
+            + "[t:note]\n"
+            + "  - t:text (string)\n";
+
+    private static final ValueFactory VALUES = ValueFactoryImpl.getInstance();
+
+    private final NodeTypeDef[] ntypes;
+
+    private final Map<String, String[]> attrMap;
+
+    private final ConversionJob job = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+
+    public ContentExporterTest() throws Exception
+    {
+        ntypes = Schemas.read(CND);
+        attrMap = Schemas.propertyMap("nt:base\n");
+    }
+
+    private FakeNode tree(String size)
+    {
+        FakeNode doc = new FakeNode("/doc", "t:doc");
+        doc.property("t:title", VALUES.createValue("Title"));
+        doc.property("t:size", VALUES.createValue(size));
+        doc.property("t:tags", VALUES.createValue("a"), VALUES.createValue("b"));
+        doc.child(new FakeNode("/doc/t:part", "t:part")).property("t:n", VALUES.createValue(1));
+        doc.child(new FakeNode("/doc/n1", "t:note")).property("t:text", VALUES.createValue("x"));
+        doc.child(new FakeNode("/doc/t:part[2]", "t:part")).property("t:n", VALUES.createValue(2));
+        return doc;
+    }
+
+    private String export(FakeNode node, boolean validate) throws Exception
+    {
+        ContentExporter exporter = new ContentExporter(ntypes, attrMap, job.withCompact(true));
+        if (validate)
+        {
+            Cnd2XsdConverter converter = Schemas.converter();
+            exporter.setSchema(converter.compile(converter.createSchema(ntypes, attrMap, job)));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(4, exporter.export(node.proxy(), out));
+        return new String(out.toByteArray(), "UTF-8");
+    }
+
+    @Test
+    public void writesTheSchemaLayout() throws Exception
+    {
+        String xml = export(tree("12"), true);
+        assertTrue(xml, xml.endsWith("<tns:root xmlns:tns=\"urn:t\" title=\"Title\" size=\"12\">"
+                + "<tns:part n=\"1\"></tns:part><tns:part n=\"2\"></tns:part>"
+                + "<tns:note text=\"x\" nodename=\"n1\"></tns:note>"
+                + "<tns:tags><tns:tags>a</tns:tags><tns:tags>b</tns:tags></tns:tags></tns:root>"));
+    }
+
+    @Test
+    public void namesTheNodeThatDoesNotConform() throws Exception
+    {
+        try
+        {
+            export(tree("twelve"), true);
+            fail();
+        }
+        catch (SAXException ex)
+        {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("/doc: "));
+        }
+        //without a schema nothing is checked
+        assertTrue(export(tree("twelve"), false).contains("size=\"twelve\""));
+    }
+
+    /**
+     * A node backed by lists of properties and children.
+     */
+    private static class FakeNode implements InvocationHandler
+    {
+        private final String path;
+
+        private final String type;
+
+        private final List<Property> properties = new ArrayList<Property>();
+
+        private final List<FakeNode> children = new ArrayList<FakeNode>();
+
+        FakeNode(String path, String type)
+        {
+            this.path = path;
+            this.type = type;
+        }
+
+        FakeNode property(final String name, final Value... values)
+        {
+            properties.add((Property) fake(Property.class, new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    String m = method.getName();
+                    if (m.equals("getName"))
+                    {
+                        return name;
+                    }
+                    if (m.equals("isMultiple"))
+                    {
+                        return values.length > 1;
+                    }
+                    if (m.equals("getValue"))
+                    {
+                        return values[0];
+                    }
+                    if (m.equals("getValues"))
+                    {
+                        return values;
+                    }
+                    throw new UnsupportedOperationException(m);
+                }
+            }));
+            return this;
+        }
+
+        FakeNode child(FakeNode child)
+        {
+            children.add(child);
+            return child;
+        }
+
+        Node proxy()
+        {
+            return (Node) fake(Node.class, this);
+        }
+
+        private String name()
+        {
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            int index = name.indexOf('[');
+            return index < 0 ? name : name.substring(0, index);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            String m = method.getName();
+            if (m.equals("getName"))
+            {
+                return name();
+            }
+            if (m.equals("getPath"))
+            {
+                return path;
+            }
+            if (m.equals("getPrimaryNodeType"))
+            {
+                return fake(NodeType.class, new InvocationHandler()
+                {
+                    public Object invoke(Object p, Method typeMethod, Object[] typeArgs)
+                    {
+                        return type;
+                    }
+                });
+            }
+            if (m.equals("isNodeType"))
+            {
+                return type.equals(args[0]);
+            }
+            if (m.equals("getProperties"))
+            {
+                return new PropertyIteratorAdapter(properties);
+            }
+            if (m.equals("getNodes"))
+            {
+                List<Node> nodes = new ArrayList<Node>();
+                for (FakeNode child : children)
+                {
+                    if (args == null || child.name().equals(args[0]))
+                    {
+                        nodes.add(child.proxy());
+                    }
+                }
+                return new NodeIteratorAdapter(nodes);
+            }
+            throw new UnsupportedOperationException(m);
+        }
+    }
+
+    private static Object fake(Class<?> type, InvocationHandler handler)
+    {
+        return Proxy.newProxyInstance(ContentExporterTest.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.apache.jackrabbit.commons.cnd.ParseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author adeka
+ */
+public class ConversionCacheTest
+{
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:doc]\n"
+            + "  - t:title (string)\n"
+            + "  + t:part (t:part)\n"
+            + "[t:part]\n"
+            + "  - t:size (long)\n";
+
+    /** t:part changed, t:note added between the other two */
+    private static final String EDITED = "<t = 'urn:t'>\n"
+            + "[t:doc]\n"
+            + "  - t:title (string)\n"
+            + "  + t:part (t:part)\n"
+            + "[t:note]\n"
+            + "  - t:text (string) multiple\n"
+            + "[t:part]\n"
+            + "  - t:size (double)\n";
+
+    private File dir;
+
+    private File cnd;
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        dir = File.createTempFile("cache", "");
+        dir.delete();
+        dir.mkdir();
+        cnd = new File(dir, "t.cnd");
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        delete(dir);
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void writeCnd(String content) throws IOException
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(cnd), "UTF-8");
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private ConversionJob job(String xsd, boolean cached)
+    {
+        ConversionJob job = new ConversionJob(cnd.getPath(), new File(dir, xsd).getPath(), null,
+                "urn:t", "t", "root", "doc");
+        return cached ? job.withCacheDir(new File(dir, "cache").getPath()) : job;
+    }
+
+    private String convert(NodeTypeLoader loader, ConversionJob job) throws Exception
+    {
+        return Schemas.converter().convert(loader, job).getCacheResult();
+    }
+
+    @Test
+    public void splicesLikeACompleteConversion() throws Exception
+    {
+        writeCnd(CND);
+        assertEquals(ConversionCache.MISS, convert(new CndNodeTypeLoader(), job("cached.xsd", true)));
+        assertEquals(ConversionCache.HIT, convert(new CndNodeTypeLoader(), job("cached.xsd", true)));
+        writeCnd(EDITED);
+        assertEquals(ConversionCache.SPLICED, convert(new CndNodeTypeLoader(), job("cached.xsd", true)));
+        convert(new CndNodeTypeLoader(), job("clean.xsd", false));
+        assertArrayEquals(ConversionCache.readFile(new File(dir, "clean.xsd")),
+                ConversionCache.readFile(new File(dir, "cached.xsd")));
+    }
+
+    @Test
+    public void regeneratesForOtherLoaders() throws Exception
+    {
+        writeCnd(CND);
+        assertEquals(ConversionCache.MISS, convert(new OtherLoader(), job("cached.xsd", true)));
+        writeCnd(EDITED);
+        assertEquals(ConversionCache.MISS, convert(new OtherLoader(), job("cached.xsd", true)));
+        //the entry of another loader is not reused
+        assertEquals(ConversionCache.MISS, convert(new CndNodeTypeLoader(), job("cached.xsd", true)));
+    }
+
+    @Test
+    public void failsWhenNothingIsRegistered() throws Exception
+    {
+        writeCnd(CND);
+        for (boolean cached : new boolean[] {true, false})
+        {
+            try
+            {
+                convert(new EmptyLoader(), job("cached.xsd", cached));
+                fail("converted without node types");
+            }
+            catch (IOException ex)
+            {
+                assertTrue(ex.getMessage(), ex.getMessage().startsWith("No node types registered"));
+            }
+        }
+        assertFalse(new File(dir, "cached.xsd").exists());
+    }
+
+    /**
+     * Stands for a repository that registered nothing.
+     */
+    private static class EmptyLoader extends OtherLoader
+    {
+        public NodeTypeDef[] load(Reader reader, String systemId, String prefix)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Parses like the CND loader but stands for a repository.
+     */
+    private static class OtherLoader implements NodeTypeLoader
+    {
+        public void start()
+        {
+        }
+
+        public NodeTypeDef[] load(Reader reader, String systemId, String prefix) throws ParseException
+        {
+            return CndModelReader.read(reader, systemId);
+        }
+
+        public NodeTypeDef[] load(Reader reader, String systemId, String prefix, String rootType)
+                throws ParseException
+        {
+            return load(reader, systemId, prefix);
+        }
+
+        public void close()
+        {
+        }
+    }
+}
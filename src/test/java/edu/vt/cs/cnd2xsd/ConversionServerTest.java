@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class ConversionServerTest
+{
+    private File dir;
+
+    private ConversionServer server;
+
+    private Thread thread;
+
+    @Before
+    public void start() throws Exception
+    {
+        dir = File.createTempFile("server", "");
+        dir.delete();
+        dir.mkdir();
+        server = new ConversionServer(Schemas.converter(), 2);
+        thread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    server.serve(0);
+                }
+                catch (IOException ex)
+                {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+        thread.start();
+        while (server.getLocalPort() < 0)
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void stop() throws Exception
+    {
+        server.close();
+        thread.join();
+        for (File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private File write(String name, String content) throws IOException
+    {
+        File file = new File(dir, name);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    private ConversionJob job(File cnd, String xsd)
+    {
+        return new ConversionJob(cnd == null ? null : cnd.getPath(), xsd, null, "urn:t", "t", "root", "doc");
+    }
+
+    @Test
+    public void convertsOnTheServer() throws Exception
+    {
+        File cnd = write("t.cnd", "<t = 'urn:t'>\n[t:doc]\n  - t:title (string)\n");
+        File xsd = new File(dir, "t.xsd");
+        assertTrue(new ConversionClient(server.getLocalPort()).convert(job(cnd, xsd.getPath())));
+        File local = new File(dir, "local.xsd");
+        Schemas.converter().convert(new CndNodeTypeLoader(), job(cnd, local.getPath()));
+        assertEquals(Schemas.normalize(ConversionCache.readFile(local)),
+                Schemas.normalize(ConversionCache.readFile(xsd)));
+    }
+
+    @Test
+    public void parsesEveryRequestOnItsOwn() throws Exception
+    {
+        //the same node type with other properties and no prefix option
+        File first = write("a.cnd", "<t = 'urn:t'>\n[t:doc]\n  - t:title (string)\n");
+        File second = write("b.cnd", "<t = 'urn:t'>\n[t:doc]\n  - t:size (long)\n");
+        ConversionClient client = new ConversionClient(server.getLocalPort());
+        File a = new File(dir, "a.xsd");
+        File b = new File(dir, "b.xsd");
+        assertTrue(client.convert(new ConversionJob(first.getPath(), a.getPath(), null, "urn:t", null, "root", "doc")));
+        assertTrue(client.convert(new ConversionJob(second.getPath(), b.getPath(), null, "urn:t", null, "root", "doc")));
+        String xsd = new String(ConversionCache.readFile(b), "UTF-8");
+        assertTrue(xsd, xsd.contains("name=\"size\""));
+        assertFalse(xsd, xsd.contains("name=\"title\""));
+        xsd = new String(ConversionCache.readFile(a), "UTF-8");
+        assertTrue(xsd, xsd.contains("name=\"title\""));
+    }
+
+    @Test
+    public void reportsConversionErrors() throws Exception
+    {
+        File cnd = write("t.cnd", "<t = 'urn:t'>\n[t:doc\n");
+        try
+        {
+            new ConversionClient(server.getLocalPort()).convert(job(cnd, new File(dir, "t.xsd").getPath()));
+            throw new AssertionError("no error");
+        }
+        catch (IOException ex)
+        {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("Conversion of"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsJobsWithoutCnd() throws Exception
+    {
+        new ConversionClient(server.getLocalPort()).convert(job(null, new File(dir, "t.xsd").getPath()));
+    }
+
+    @Test
+    public void fallsBackWithoutServer() throws Exception
+    {
+        File cnd = write("t.cnd", "<t = 'urn:t'>\n[t:doc]\n");
+        int port = server.getLocalPort();
+        server.close();
+        thread.join();
+        assertFalse(new ConversionClient(port).convert(job(cnd, new File(dir, "t.xsd").getPath())));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class ConversionStatsTest
+{
+    @Test
+    public void addsPhaseTimes() throws Exception
+    {
+        ConversionStats stats = new ConversionStats("a.cnd");
+        stats.start(ConversionStats.Phase.MAPPING);
+        Thread.sleep(5);
+        stats.stop();
+        long first = stats.getNanos(ConversionStats.Phase.MAPPING);
+        assertTrue(first >= 5000000L);
+        stats.start(ConversionStats.Phase.MAPPING);
+        stats.stop();
+        stats.stop();
+        assertTrue(stats.getNanos(ConversionStats.Phase.MAPPING) >= first);
+        assertEquals(0, stats.getNanos(ConversionStats.Phase.STARTUP));
+        assertEquals(stats.getNanos(ConversionStats.Phase.MAPPING), stats.getTotalNanos());
+    }
+
+    @Test
+    public void writesJson()
+    {
+        ConversionStats stats = new ConversionStats("dir\\\"a\".cnd");
+        stats.setNodeTypes(3);
+        stats.addCounts(2, 5, 1);
+        stats.setCacheResult("hit");
+        String json = stats.toJson();
+        assertTrue(json, json.startsWith("{\"cnd\":\"dir\\\\\\\"a\\\".cnd\",\"phases\":{\"repositoryStartup\":{"));
+        assertTrue(json, json.endsWith(",\"nodeTypes\":3,\"complexTypes\":2,\"elements\":5,"
+                + "\"attributes\":1,\"cache\":\"hit\"}"));
+        String array = ConversionStats.toJson(Arrays.asList(stats, new ConversionStats("b.cnd")));
+        assertTrue(array.startsWith("[{"));
+        assertTrue(array, array.endsWith("\"cache\":null}]"));
+    }
+}
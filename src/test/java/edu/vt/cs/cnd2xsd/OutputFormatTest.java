@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compact and gzip output of both backends.
+ * @author adeka
+ */
+public class OutputFormatTest
+{
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:doc]\n"
+            + "  - t:title (string)\n"
+            + "  - t:tags (string) multiple\n"
+            + "  + t:part (t:part)\n"
+            + "[t:part]\n"
+            + "  - t:size (long)\n";
+
+    private static byte[] gunzip(byte[] bytes) throws Exception
+    {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+        {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertFormats(boolean streaming) throws Exception
+    {
+        NodeTypeDef[] ntypes = Schemas.read(CND);
+        Map<String, String[]> attrMap = Schemas.propertyMap("nt:base\n");
+        ConversionJob job = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc").withStreaming(streaming);
+        byte[] pretty = Schemas.write(ntypes, attrMap, job);
+        byte[] compact = Schemas.write(ntypes, attrMap, job.withCompact(true));
+        String text = new String(compact, "UTF-8");
+        assertTrue(text, text.indexOf("\n<") < 0 && text.indexOf("\n ") < 0);
+        assertTrue(compact.length < pretty.length);
+        assertEquals(Schemas.normalize(pretty), Schemas.normalize(compact));
+
+        byte[] gzip = Schemas.write(ntypes, attrMap, job.withCompact(true).withGzip(true));
+        assertEquals(0x1f, gzip[0] & 0xff);
+        assertEquals(0x8b, gzip[1] & 0xff);
+        assertArrayEquals(compact, gunzip(gzip));
+    }
+
+    @Test
+    public void writesCompactAndGzipThroughJaxb() throws Exception
+    {
+        assertFormats(false);
+    }
+
+    @Test
+    public void writesCompactAndGzipWhileStreaming() throws Exception
+    {
+        assertFormats(true);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author adeka
+ */
+public class PropertyMapLoaderTest
+{
+    private static final String MAP = "\uFEFF# comment\r\n"
+            + "nt:base\r\n"
+            + "\r\n"
+            + "  mix:versionable # jcr:versionHistory ,jcr:baseVersion,  \r\n"
+            + "t:doc#\n"
+            + "@DATE#date";
+
+    private static byte[] bytes(String text) throws Exception
+    {
+        return text.getBytes("UTF-8");
+    }
+
+    private static void assertMap(Map<String, String[]> map)
+    {
+        assertEquals(4, map.size());
+        assertTrue(map.containsKey("nt:base"));
+        assertNull(map.get("nt:base"));
+        assertArrayEquals(new String[] {"jcr:versionHistory", "jcr:baseVersion"}, map.get("mix:versionable"));
+        assertNull(map.get("t:doc"));
+        assertArrayEquals(new String[] {"date"}, map.get("@DATE"));
+    }
+
+    @Test
+    public void readsStreams() throws Exception
+    {
+        assertMap(PropertyMapLoader.load(new ByteArrayInputStream(bytes(MAP)), "map"));
+    }
+
+    @Test
+    public void readsBuffersWithoutMovingThem() throws Exception
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes(MAP));
+        assertMap(PropertyMapLoader.load(buffer, "map"));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void readsMappedFiles() throws Exception
+    {
+        File file = File.createTempFile("map", ".txt");
+        try
+        {
+            FileOutputStream out = new FileOutputStream(file);
+            try
+            {
+                out.write(bytes(MAP));
+                for (int i = 0; i < PropertyMapLoader.MAP_THRESHOLD / 16; i++)
+                {
+                    out.write(bytes("\n# padding...."));
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            assertMap(PropertyMapLoader.load(file));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void laterLinesOverrideEarlierOnes() throws Exception
+    {
+        Map<String, String[]> map = PropertyMapLoader.load(
+                new ByteArrayInputStream(bytes("t:doc#a\nt:doc#b\n")), "map");
+        assertArrayEquals(new String[] {"b"}, map.get("t:doc"));
+    }
+
+    @Test
+    public void reportsTheLineOfAnError() throws Exception
+    {
+        try
+        {
+            PropertyMapLoader.load(new ByteArrayInputStream(bytes("nt:base\n\nt:doc#a#b\n")), "map");
+            fail();
+        }
+        catch (PropertyMapException ex)
+        {
+            assertEquals(3, ex.getLine());
+        }
+    }
+
+    @Test
+    public void rejectsInvalidUtf8() throws Exception
+    {
+        try
+        {
+            PropertyMapLoader.load(new ByteArrayInputStream(new byte[] {'a', '\n', (byte) 0xC3, '('}), "map");
+            fail();
+        }
+        catch (PropertyMapException ex)
+        {
+            assertEquals(2, ex.getLine());
+        }
+    }
+}
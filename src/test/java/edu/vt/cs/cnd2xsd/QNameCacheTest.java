@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import javax.jcr.PropertyType;
+import javax.xml.namespace.QName;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author adeka
+ */
+public class QNameCacheTest
+{
+    @Test
+    public void sharesParsedNames()
+    {
+        QNameCache cache = new QNameCache("urn:t");
+        QName name = cache.jcrName("t:doc");
+        assertEquals("t", name.getNamespaceURI());
+        assertEquals("doc", name.getLocalPart());
+        assertSame(name, cache.jcrName("t:doc"));
+        assertNull(cache.jcrName("doc"));
+        assertNull(cache.jcrName("doc"));
+        assertEquals("doc", cache.localName("t:doc"));
+        assertEquals("doc", cache.localName("doc"));
+    }
+
+    @Test
+    public void qualifiesTargetTypes()
+    {
+        QNameCache cache = new QNameCache("urn:t");
+        QName type = cache.targetType("doc");
+        assertEquals(new QName("urn:t", "doc"), type);
+        assertSame(type, cache.targetType("doc"));
+    }
+
+    @Test
+    public void mapsPropertyTypes()
+    {
+        QNameCache cache = new QNameCache("urn:t");
+        QName type = cache.propertyType(PropertyType.LONG);
+        assertEquals(new QName(Constants.XML_NAMESPACE, "long"), type);
+        assertSame(type, cache.propertyType(PropertyType.LONG));
+        assertSame(QNameCache.XS_STRING, cache.propertyType(PropertyType.NAME));
+    }
+}
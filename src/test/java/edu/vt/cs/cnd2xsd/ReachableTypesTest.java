@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author adeka
+ */
+public class ReachableTypesTest
+{
+    private static final String CND = "<t = 'urn:t'>\n<u = 'urn:u'>\n"
+            + "[t:unused]\n"
+            + "  + t:x (t:doc)\n"
+            + "[t:tags]\n"
+            + "  - t:n (string)\n"
+            + "[t:doc] > t:common\n"
+            + "  - t:tags (string) multiple\n"
+            + "  + t:part (u:part)\n"
+            + "[t:common]\n"
+            + "[u:part]\n"
+            + "  + t:self (u:part)\n"
+            + "[t:other]\n";
+
+    private static List<String> names(NodeTypeDef[] ntypes)
+    {
+        List<String> names = new ArrayList<String>();
+        for (NodeTypeDef nt : ntypes)
+        {
+            names.add(nt.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void selectsReachableTypesInCndOrder() throws Exception
+    {
+        NodeTypeDef[] ntypes = Schemas.read(CND);
+        assertEquals(Arrays.asList("t:tags", "t:doc", "t:common", "u:part"),
+                names(ReachableTypes.select(ntypes, "doc")));
+        assertEquals(Arrays.asList("u:part"), names(ReachableTypes.select(ntypes, "u:part")));
+        assertEquals(0, ReachableTypes.select(ntypes, "missing").length);
+    }
+
+    @Test
+    public void resolvesEachNameOnce() throws Exception
+    {
+        final NodeTypeDef[] ntypes = Schemas.read(CND);
+        final List<String> resolved = new ArrayList<String>();
+        List<NodeTypeDef> found = ReachableTypes.collect("t:doc", new ReachableTypes.Resolver()
+        {
+            public List<NodeTypeDef> resolve(String name)
+            {
+                resolved.add(name);
+                List<NodeTypeDef> list = new ArrayList<NodeTypeDef>();
+                for (NodeTypeDef nt : ntypes)
+                {
+                    if (nt.getName().equals(name))
+                    {
+                        list.add(nt);
+                    }
+                }
+                return list;
+            }
+        });
+        assertEquals(4, found.size());
+        assertEquals("t:doc", found.get(0).getName());
+        assertEquals(resolved.size(), new HashSet<String>(resolved).size());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.apache.jackrabbit.core.config.WorkspaceConfig;
+import org.apache.jackrabbit.core.fs.mem.MemoryFileSystem;
+import org.apache.jackrabbit.core.persistence.mem.InMemPersistenceManager;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the in-memory configuration, starting the repository needs the runtime
+ * dependencies of jackrabbit-standalone.
+ * @author adeka
+ */
+public class RepositoryNodeTypeLoaderTest
+{
+    @Test
+    public void keepsTheInMemoryRepositoryOffDisk() throws Exception
+    {
+        File home = File.createTempFile("cnd2xsd", ".repository");
+        home.delete();
+        home.mkdir();
+        InputStream in = RepositoryNodeTypeLoader.class.getResourceAsStream("/repository-inmemory.xml");
+        assertNotNull(in);
+        try
+        {
+            RepositoryConfig config = RepositoryConfig.create(in, home.getPath());
+            assertTrue(config.getFileSystem() instanceof MemoryFileSystem);
+            assertTrue(config.getVersioningConfig().getFileSystem() instanceof MemoryFileSystem);
+            assertEquals(InMemPersistenceManager.class.getName(),
+                    config.getVersioningConfig().getPersistenceManagerConfig().getClassName());
+            assertFalse(config.isSearchEnabled());
+            WorkspaceConfig workspace = config.getWorkspaceConfig(config.getDefaultWorkspaceName());
+            assertTrue(workspace.getFileSystem() instanceof MemoryFileSystem);
+            assertEquals(InMemPersistenceManager.class.getName(),
+                    workspace.getPersistenceManagerConfig().getClassName());
+            assertEquals("false", workspace.getPersistenceManagerConfig().getParameters().getProperty("persistent"));
+            assertFalse(workspace.isSearchEnabled());
+            //workspace configurations stay in the repository file system
+            assertEquals(0, countFiles(home));
+        }
+        finally
+        {
+            in.close();
+            delete(home);
+        }
+    }
+
+    private static int countFiles(File dir)
+    {
+        int count = 0;
+        for (File file : dir.listFiles())
+        {
+            count += file.isDirectory() ? countFiles(file) : 1;
+        }
+        return count;
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
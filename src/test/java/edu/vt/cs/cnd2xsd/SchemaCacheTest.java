@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import javax.jcr.RepositoryException;
+import javax.xml.validation.Schema;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author adeka
+ */
+public class SchemaCacheTest
+{
+    private File cnd;
+
+    private CountingLoader loader;
+
+    private SchemaCache cache;
+
+    @Before
+    public void createCache() throws Exception
+    {
+        cnd = File.createTempFile("schema", ".cnd");
+        writeCnd("<t = 'urn:t'>\n[t:doc]\n  - t:title (string)\n");
+        loader = new CountingLoader();
+        cache = new SchemaCache(Schemas.converter(), loader, 1);
+    }
+
+    @After
+    public void deleteCnd()
+    {
+        cnd.delete();
+    }
+
+    private void writeCnd(String content) throws IOException
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(cnd), "UTF-8");
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private ConversionJob job(String rootType)
+    {
+        return new ConversionJob(cnd.getPath(), null, null, "urn:t", "t", "root", rootType);
+    }
+
+    @Test
+    public void compilesOncePerContent() throws Exception
+    {
+        Schema schema = cache.getSchema(job("doc"));
+        assertSame(schema, cache.getSchema(job("doc")));
+        assertEquals(1, loader.loads);
+
+        writeCnd("<t = 'urn:t'>\n[t:doc]\n  - t:title (long)\n");
+        Schema edited = cache.getSchema(job("doc"));
+        assertNotSame(schema, edited);
+        assertEquals(2, loader.loads);
+
+        cache.clear();
+        cache.getSchema(job("doc"));
+        assertEquals(3, loader.loads);
+    }
+
+    @Test
+    public void keepsOnlyTheRecentSchemas() throws Exception
+    {
+        writeCnd("<t = 'urn:t'>\n[t:doc]\n  - t:title (string)\n[t:part]\n");
+        cache.getSchema(job("doc"));
+        cache.getSchema(job("part"));
+        cache.getSchema(job("doc"));
+        assertEquals(3, loader.loads);
+    }
+
+    @Test
+    public void doesNotKeepFailures() throws Exception
+    {
+        writeCnd("<t = 'urn:t'>\n[t:doc\n");
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                cache.getSchema(job("doc"));
+                fail();
+            }
+            catch (ParseException ex)
+            {
+            }
+        }
+        assertEquals(2, loader.loads);
+    }
+
+    /**
+     * Counts the CNDs parsed.
+     */
+    private static class CountingLoader implements NodeTypeLoader
+    {
+        private final CndNodeTypeLoader cndLoader = new CndNodeTypeLoader();
+
+        private int loads;
+
+        public void start()
+        {
+        }
+
+        public NodeTypeDef[] load(Reader reader, String systemId, String prefix)
+                throws RepositoryException, IOException, ParseException
+        {
+            return load(reader, systemId, prefix, null);
+        }
+
+        public NodeTypeDef[] load(Reader reader, String systemId, String prefix, String rootType)
+                throws RepositoryException, IOException, ParseException
+        {
+            loads++;
+            return cndLoader.load(reader, systemId, prefix, rootType);
+        }
+
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3.generated.ComplexType;
+import org.w3.generated.OpenAttrs;
+import org.w3.generated.SchemaElement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class SchemaDeduplicatorTest
+{
+    /** t:q equals t:p, which makes t:b equal t:a */
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:doc]\n"
+            + "  + t:a (t:a)\n"
+            + "  + t:b (t:b)\n"
+            + "[t:a]\n"
+            + "  - t:size (long)\n"
+            + "  + t:x (t:p)\n"
+            + "[t:b]\n"
+            + "  - t:size (long)\n"
+            + "  + t:x (t:q)\n"
+            + "[t:p]\n"
+            + "  - t:n (string)\n"
+            + "[t:q]\n"
+            + "  - t:n (string)\n"
+            + "[t:r]\n"
+            + "  - t:n (long)\n";
+
+    private static List<String> typeNames(SchemaElement schema)
+    {
+        List<String> names = new ArrayList<String>();
+        for (OpenAttrs item : schema.getIncludesAndImportsAndRedefines())
+        {
+            if (item instanceof ComplexType)
+            {
+                names.add(((ComplexType) item).getName());
+            }
+        }
+        return names;
+    }
+
+    @Test
+    public void mergesUntilNothingChanges() throws Exception
+    {
+        ConversionJob job = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+        SchemaElement schema = Schemas.converter().createSchema(Schemas.read(CND),
+                Schemas.propertyMap("nt:base\n"), job);
+        assertEquals(2, new SchemaDeduplicator("urn:t").dedup(schema));
+        assertEquals("[doc, a, p, r]", typeNames(schema).toString());
+
+        String xsd = Schemas.normalize(marshal(schema));
+        assertTrue(xsd, xsd.contains("name=b type={urn:t}a"));
+        assertTrue(xsd, xsd.contains("name=x type={urn:t}p"));
+        assertTrue(xsd, !xsd.contains("}q") && !xsd.contains("}b"));
+    }
+
+    @Test
+    public void keepsDistinctTypes() throws Exception
+    {
+        ConversionJob job = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+        SchemaElement schema = Schemas.converter().createSchema(
+                Schemas.read("<t = 'urn:t'>\n[t:doc]\n  - t:n (string)\n[t:part]\n  - t:n (long)\n"),
+                Schemas.propertyMap("nt:base\n"), job);
+        assertEquals(0, new SchemaDeduplicator("urn:t").dedup(schema));
+        assertEquals("[doc, part]", typeNames(schema).toString());
+    }
+
+    private static byte[] marshal(SchemaElement schema) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Schemas.converter().marshal(schema, out);
+        return out.toByteArray();
+    }
+}
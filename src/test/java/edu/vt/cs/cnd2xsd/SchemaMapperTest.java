@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author adeka
+ */
+public class SchemaMapperTest
+{
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:doc] > t:base\n"
+            + "  - t:title (string) = 'none'\n"
+            + "  - t:part (string) multiple\n"
+            + "  + t:child (t:part)\n"
+            + "[t:part]\n"
+            + "  - t:when (date)\n"
+            + "[t:base]\n";
+
+    private static final String PROPERTY_MAP = "nt:base\nt:doc#owner\nt:part#author\n";
+
+    /** a forward reference, properties of the same name with different types and two residual children */
+    private static final String SHARED_CND = "<t = 'urn:t'>\n"
+            + "[t:doc]\n"
+            + "  - t:tags (string) multiple\n"
+            + "  + * (t:part) = t:part sns\n"
+            + "  + t:other (t:part) = t:part\n"
+            + "[t:folder]\n"
+            + "  + * (t:part) = t:part\n"
+            + "[t:part]\n"
+            + "  - t:tags (long) multiple\n"
+            + "  - t:when (date)\n";
+
+    private static Document write(boolean streaming) throws Exception
+    {
+        ConversionJob job = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc")
+                .withStreaming(streaming);
+        Map<String, String[]> attrMap = Schemas.propertyMap(PROPERTY_MAP);
+        return Schemas.parse(Schemas.write(Schemas.read(CND), attrMap, job));
+    }
+
+    private static Element type(Document xsd, String name)
+    {
+        NodeList types = xsd.getElementsByTagNameNS(Constants.XML_NAMESPACE, "complexType");
+        for (int i = 0; i < types.getLength(); i++)
+        {
+            Element type = (Element) types.item(i);
+            if (name.equals(type.getAttribute("name")))
+            {
+                return type;
+            }
+        }
+        fail("no complex type " + name);
+        return null;
+    }
+
+    private static List<String> names(Element type, String kind)
+    {
+        List<String> names = new ArrayList<String>();
+        NodeList items = type.getElementsByTagNameNS(Constants.XML_NAMESPACE, kind);
+        for (int i = 0; i < items.getLength(); i++)
+        {
+            names.add(((Element) items.item(i)).getAttribute("name"));
+        }
+        return names;
+    }
+
+    @Test
+    public void mapsNodeTypes() throws Exception
+    {
+        Document xsd = write(false);
+        Element doc = type(xsd, "doc");
+        assertEquals("[base, child, part]", names(doc, "element").toString());
+        assertEquals("[owner, title]", names(doc, "attribute").toString());
+        Element title = (Element) doc.getElementsByTagNameNS(Constants.XML_NAMESPACE, "attribute").item(1);
+        assertEquals("none", title.getAttribute("default"));
+    }
+
+    @Test
+    public void seedsTypesWithTheirOwnAttributes() throws Exception
+    {
+        for (boolean streaming : new boolean[] {false, true})
+        {
+            Document xsd = write(streaming);
+            //created by t:doc before t:part is processed, first by the multi-valued property t:part
+            Element part = type(xsd, "part");
+            assertEquals("[author, when]", names(part, "attribute").toString());
+            assertEquals("[part]", names(part, "element").toString());
+            assertEquals("[]", names(type(xsd, "base"), "attribute").toString());
+        }
+    }
+
+    @Test
+    public void keepsTheLayoutOfFirstReferenceByDefault() throws Exception
+    {
+        ConversionJob job = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+        Document xsd = Schemas.parse(Schemas.write(Schemas.read(SHARED_CND), Schemas.propertyMap("nt:base\n"), job));
+        List<String> order = new ArrayList<String>();
+        NodeList types = xsd.getElementsByTagNameNS(Constants.XML_NAMESPACE, "complexType");
+        for (int i = 0; i < types.getLength(); i++)
+        {
+            order.add(((Element) types.item(i)).getAttribute("name"));
+        }
+        assertEquals("[doc, part, tags, folder]", order.toString());
+        //one element per multi-valued property and a single nodename before the own attributes
+        List<String> tags = new ArrayList<String>();
+        NodeList elements = type(xsd, "tags").getElementsByTagNameNS(Constants.XML_NAMESPACE, "element");
+        for (int i = 0; i < elements.getLength(); i++)
+        {
+            tags.add(((Element) elements.item(i)).getAttribute("type"));
+        }
+        assertEquals("[xs:string, xs:long]", tags.toString());
+        assertEquals("[nodename, when]", names(type(xsd, "part"), "attribute").toString());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class SchemaOrderTest
+{
+    private static final String DOC = "[t:doc] > t:base\n"
+            + "  - t:title (string)\n"
+            + "  - t:size (long) < '[0,10]'\n"
+            + "  + * (t:part) = t:part\n";
+
+    private static final String PART = "[t:part]\n  - t:when (date)\n";
+
+    private static final String BASE = "[t:base]\n  - t:color (string) < 'red'\n";
+
+    private static byte[] write(String cnd, boolean sort) throws Exception
+    {
+        ConversionJob job = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc").withSort(sort);
+        Map<String, String[]> attrMap = Schemas.propertyMap("nt:base\nt:doc#owner\n");
+        return Schemas.write(Schemas.read("<t = 'urn:t'>\n" + cnd), attrMap, job);
+    }
+
+    @Test
+    public void doesNotDependOnTheOrderOfTheCnd() throws Exception
+    {
+        byte[] first = write(DOC + PART + BASE, true);
+        byte[] second = write(PART + BASE + DOC, true);
+        assertArrayEquals(first, second);
+        String xsd = new String(first, "UTF-8");
+        assertTrue(xsd.indexOf("complexType name=\"base\"") < xsd.indexOf("complexType name=\"doc\""));
+        //attributes sorted by name
+        assertTrue(xsd.indexOf("\"owner\"") < xsd.indexOf("\"size\""));
+        assertTrue(xsd.indexOf("\"nodename\"") < xsd.indexOf("\"when\""));
+    }
+
+    @Test
+    public void keepsTheOrderOfTheCndUnsorted() throws Exception
+    {
+        assertFalse(new String(write(DOC + PART + BASE, false), "UTF-8")
+                .equals(new String(write(PART + BASE + DOC, false), "UTF-8")));
+    }
+}
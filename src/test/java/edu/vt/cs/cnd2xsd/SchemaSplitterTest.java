@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.SchemaFactory;
+import org.junit.Test;
+import org.w3.generated.ComplexType;
+import org.w3.generated.IncludeElement;
+import org.w3.generated.OpenAttrs;
+import org.w3.generated.SchemaElement;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author adeka
+ */
+public class SchemaSplitterTest
+{
+    private static final String CND = "<t = 'urn:t'>\n<u = 'urn:u'>\n<v = 'urn:v'>\n"
+            + "[t:doc]\n"
+            + "  - t:title (string)\n"
+            + "  + t:part (u:part)\n"
+            + "[u:part]\n"
+            + "  - u:size (long)\n"
+            + "[v:note]\n";
+
+    private static List<String> contents(SchemaElement schema)
+    {
+        List<String> names = new ArrayList<String>();
+        for (OpenAttrs item : schema.getIncludesAndImportsAndRedefines())
+        {
+            if (item instanceof IncludeElement)
+            {
+                names.add("include " + ((IncludeElement) item).getSchemaLocation());
+            }
+            else if (item instanceof ComplexType)
+            {
+                names.add(((ComplexType) item).getName());
+            }
+            else
+            {
+                names.add(item.getClass().getSimpleName());
+            }
+        }
+        return names;
+    }
+
+    @Test
+    public void splitsByPrefixGroup() throws Exception
+    {
+        NodeTypeDef[] ntypes = Schemas.read(CND);
+        ConversionJob job = new ConversionJob(null, "out.xsd", null, "urn:t", "t", "root", "doc").withSplit("v=t");
+        SchemaElement schema = Schemas.converter().createSchema(ntypes, Schemas.propertyMap("nt:base\n"), job);
+        Map<String, SchemaElement> files = new SchemaSplitter(ntypes, job).split(schema, "out.xsd");
+
+        List<String> paths = new ArrayList<String>(files.keySet());
+        assertEquals("out.xsd", paths.get(0));
+        assertEquals("[include out-t.xsd, include out-u.xsd, ElementElement]",
+                contents(files.get("out.xsd")).toString());
+        assertEquals("[include out-u.xsd, doc, note]", contents(files.get("out-t.xsd")).toString());
+        assertEquals("[part]", contents(files.get("out-u.xsd")).toString());
+    }
+
+    @Test
+    public void writesPartsThatCompile() throws Exception
+    {
+        File dir = File.createTempFile("split", "");
+        dir.delete();
+        dir.mkdir();
+        try
+        {
+            File cnd = new File(dir, "t.cnd");
+            write(cnd, CND);
+            File xsd = new File(dir, "t.xsd");
+            ConversionJob job = new ConversionJob(cnd.getPath(), xsd.getPath(), null, "urn:t", "t", "root", "doc")
+                    .withSplit("u=t");
+            Schemas.converter().convert(new CndNodeTypeLoader(), job);
+            assertEquals(true, new File(SchemaSplitter.partPath(xsd.getPath(), "t")).isFile());
+            assertEquals(false, new File(SchemaSplitter.partPath(xsd.getPath(), "u")).exists());
+            SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(xsd);
+        }
+        finally
+        {
+            for (File file : dir.listFiles())
+            {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidGroupings()
+    {
+        SchemaSplitter.parseGroups("nt=jcr,mix");
+    }
+
+    @Test
+    public void namesPartsAfterTheMainFile()
+    {
+        assertEquals(new File("dir", "a-jcr.xsd").getPath(),
+                SchemaSplitter.partPath(new File("dir", "a.xsd").getPath(), "jcr"));
+    }
+
+    private static void write(File file, String content) throws IOException
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class SchemaWatcherTest
+{
+    private File dir;
+
+    private File cnd;
+
+    private File xsd;
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        dir = File.createTempFile("watch", "");
+        dir.delete();
+        dir.mkdir();
+        cnd = new File(dir, "t.cnd");
+        xsd = new File(dir, "t.xsd");
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        for (File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private void writeCnd(String content) throws IOException
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(cnd), "UTF-8");
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private SchemaWatcher watcher() throws Exception
+    {
+        ConversionJob job = new ConversionJob(cnd.getPath(), xsd.getPath(), null, "urn:t", "t", "root", "doc");
+        return new SchemaWatcher(Schemas.converter(), new CndNodeTypeLoader(), job,
+                new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void seesEditsKeepingLengthAndTime() throws Exception
+    {
+        writeCnd("<t = 'urn:t'>\n[t:doc]\n  - t:aaaa (string)\n");
+        long time = cnd.lastModified();
+        SchemaWatcher watcher = watcher();
+        String before = watcher.snapshot();
+        writeCnd("<t = 'urn:t'>\n[t:doc]\n  - t:bbbb (string)\n");
+        cnd.setLastModified(time);
+        assertFalse(before.equals(watcher.snapshot()));
+    }
+
+    @Test
+    public void regeneratesAfterASave() throws Exception
+    {
+        writeCnd("<t = 'urn:t'>\n[t:doc]\n  - t:title (string)\n");
+        final SchemaWatcher watcher = watcher();
+        Thread thread = new Thread()
+        {
+            public void run()
+            {
+                watcher.run();
+            }
+        };
+        thread.start();
+        try
+        {
+            assertTrue(waitFor("title"));
+            writeCnd("<t = 'urn:t'>\n[t:doc]\n  - t:subject (string)\n");
+            assertTrue(waitFor("subject"));
+        }
+        finally
+        {
+            watcher.stop();
+            thread.join();
+        }
+    }
+
+    /**
+     * @return true if the XSD mentions the text within five seconds
+     */
+    private boolean waitFor(String text) throws Exception
+    {
+        long end = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < end)
+        {
+            if (xsd.isFile() && new String(ConversionCache.readFile(xsd), "UTF-8").contains(text))
+            {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+}
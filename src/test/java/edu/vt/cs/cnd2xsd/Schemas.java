@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Builds schemas from CND fixtures and prints them in a form that does not depend on
+ * how the writer declared its namespaces.
+ * @author adeka
+ */
+class Schemas
+{
+    private static Cnd2XsdConverter converter;
+
+    static synchronized Cnd2XsdConverter converter() throws Exception
+    {
+        if (converter == null)
+        {
+            converter = new Cnd2XsdConverter();
+        }
+        return converter;
+    }
+
+    static NodeTypeDef[] read(String cnd) throws Exception
+    {
+        return CndModelReader.read(new StringReader(cnd), "test.cnd");
+    }
+
+    static Map<String, String[]> propertyMap(String text) throws Exception
+    {
+        return PropertyMapLoader.load(new ByteArrayInputStream(text.getBytes("UTF-8")), "test.txt");
+    }
+
+    /**
+     * @return the XSD written for the node types
+     */
+    static byte[] write(NodeTypeDef[] ntypes, Map<String, String[]> attrMap, ConversionJob job) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converter().write(ntypes, attrMap, job, out);
+        return out.toByteArray();
+    }
+
+    static Document parse(byte[] xml) throws Exception
+    {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * One line per element: its depth, local name and attributes sorted by name, where
+     * the values of type and base are printed as {namespace}local.
+     */
+    static String normalize(byte[] xml) throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        normalize(parse(xml).getDocumentElement(), 0, sb);
+        return sb.toString();
+    }
+
+    private static void normalize(Element element, int depth, StringBuilder sb)
+    {
+        for (int i = 0; i < depth; i++)
+        {
+            sb.append(' ');
+        }
+        sb.append(element.getLocalName());
+        List<String> attrs = new ArrayList<String>();
+        NamedNodeMap map = element.getAttributes();
+        for (int i = 0; i < map.getLength(); i++)
+        {
+            Attr attr = (Attr) map.item(i);
+            if (attr.getName().startsWith("xmlns"))
+            {
+                continue;
+            }
+            String value = attr.getValue();
+            if ("type".equals(attr.getName()) || "base".equals(attr.getName()))
+            {
+                int colon = value.indexOf(':');
+                String prefix = colon < 0 ? null : value.substring(0, colon);
+                value = "{" + element.lookupNamespaceURI(prefix) + "}" + value.substring(colon + 1);
+            }
+            attrs.add(attr.getName() + "=" + value);
+        }
+        Collections.sort(attrs);
+        for (String attr : attrs)
+        {
+            sb.append(' ').append(attr);
+        }
+        sb.append('\n');
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling())
+        {
+            if (child instanceof Element)
+            {
+                normalize((Element) child, depth + 1, sb);
+            }
+        }
+    }
+}
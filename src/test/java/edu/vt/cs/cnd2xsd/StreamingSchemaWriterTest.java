@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author adeka
+ */
+public class StreamingSchemaWriterTest
+{
+    /** a forward reference, properties of the same name with different types and two residual children */
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:doc] > mix:versionable\n"
+            + "  - t:tags (string) multiple\n"
+            + "  - t:size (long) < '[0,100]'\n"
+            + "  + t:part (t:part) sns\n"
+            + "  + * (t:part) = t:part sns\n"
+            + "[t:folder]\n"
+            + "  + * (t:part) = t:part\n"
+            + "[t:part]\n"
+            + "  - t:tags (long) multiple\n"
+            + "  - t:when (date)\n";
+
+    private static final String PROPERTY_MAP = "nt:base\nmix:versionable#jcr:versionHistory\n";
+
+    private static final ConversionJob JOB = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc")
+            .withStreaming(true);
+
+    private static byte[] write() throws Exception
+    {
+        return Schemas.write(Schemas.read(CND), Schemas.propertyMap(PROPERTY_MAP), JOB);
+    }
+
+    /**
+     * @return the schema the JAXB mapper builds for the streaming job
+     */
+    private static byte[] map() throws Exception
+    {
+        Map<String, String[]> attrMap = Schemas.propertyMap(PROPERTY_MAP);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Cnd2XsdConverter converter = Schemas.converter();
+        converter.marshal(converter.createSchema(Schemas.read(CND), attrMap, JOB), out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void writesTheSchemaOfTheModel() throws Exception
+    {
+        assertEquals(Schemas.normalize(map()), Schemas.normalize(write()));
+    }
+
+    @Test
+    public void writesTypesInNodeTypeOrder() throws Exception
+    {
+        NodeList types = Schemas.parse(write()).getElementsByTagNameNS(Constants.XML_NAMESPACE, "complexType");
+        String[] expected = {"doc", "versionable", "tags", "folder", "part"};
+        assertEquals(expected.length, types.getLength());
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals(expected[i], ((Element) types.item(i)).getAttribute("name"));
+        }
+    }
+
+    @Test
+    public void keepsTheFirstElementOfAPropertyType() throws Exception
+    {
+        NodeList types = Schemas.parse(write()).getElementsByTagNameNS(Constants.XML_NAMESPACE, "complexType");
+        Element tags = (Element) types.item(2);
+        NodeList elements = tags.getElementsByTagNameNS(Constants.XML_NAMESPACE, "element");
+        assertEquals(1, elements.getLength());
+        assertEquals("xs:string", ((Element) elements.item(0)).getAttribute("type"));
+    }
+
+    @Test
+    public void addsTheNodenameAttributeOnceAndLast() throws Exception
+    {
+        NodeList types = Schemas.parse(write()).getElementsByTagNameNS(Constants.XML_NAMESPACE, "complexType");
+        NodeList attrs = ((Element) types.item(4)).getElementsByTagNameNS(Constants.XML_NAMESPACE, "attribute");
+        assertEquals(2, attrs.getLength());
+        assertEquals("when", ((Element) attrs.item(0)).getAttribute("name"));
+        assertEquals("nodename", ((Element) attrs.item(1)).getAttribute("name"));
+    }
+}
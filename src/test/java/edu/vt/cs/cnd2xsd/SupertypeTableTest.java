@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class SupertypeTableTest
+{
+    private static final String CND = "<t = 'urn:t'>\n<u = 'urn:u'>\n"
+            + "[t:doc] > mix:versionable\n"
+            + "  + t:part (u:doc)\n"
+            + "  + t:any\n"
+            + "[u:doc]\n";
+
+    @Test
+    public void resolvesNamesOnce() throws Exception
+    {
+        SupertypeTable table = new SupertypeTable(Schemas.read(CND),
+                Schemas.propertyMap("nt:base\nmix:versionable#jcr:versionHistory\n"));
+        int doc = table.typeId(0);
+        assertEquals("t:doc", table.name(doc));
+        int[] supertypes = table.supertypes(0);
+        assertEquals("mix:versionable", table.name(supertypes[0]));
+        assertEquals("nt:base", table.name(supertypes[1]));
+        assertTrue(table.isMapped(supertypes[0]));
+        assertArrayEquals(new String[] {"jcr:versionHistory"}, table.attributes(supertypes[0]));
+        assertTrue(table.isMapped(supertypes[1]));
+        assertNull(table.attributes(supertypes[1]));
+        assertFalse(table.isMapped(doc));
+
+        int[] children = table.childTypes(0);
+        assertEquals("u:doc", table.name(children[0]));
+        //a child node without a type is typed nt:base by the parser
+        assertEquals("nt:base", table.name(children[1]));
+        assertEquals(children[0], table.typeId(1));
+    }
+
+    @Test
+    public void sharesLocalIdsBetweenPrefixes() throws Exception
+    {
+        SupertypeTable table = new SupertypeTable(Schemas.read(CND), Schemas.propertyMap(""));
+        int t = table.typeId(0);
+        int u = table.typeId(1);
+        assertFalse(t == u);
+        assertEquals(table.localId(t), table.localId(u));
+        assertEquals("doc", table.localName(u));
+        //doc, versionable, base
+        assertEquals(3, table.localSize());
+    }
+}
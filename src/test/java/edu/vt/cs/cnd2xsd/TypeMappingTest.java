@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.jcr.PropertyType;
+import javax.xml.namespace.QName;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author adeka
+ */
+public class TypeMappingTest
+{
+    private static QName xs(String name)
+    {
+        return new QName(Constants.XML_NAMESPACE, name);
+    }
+
+    @Test
+    public void mapsReferencesToStrings()
+    {
+        TypeMapping mapping = TypeMapping.getDefault();
+        assertEquals(QNameCache.XS_STRING, mapping.get(PropertyType.REFERENCE));
+        assertEquals(QNameCache.XS_STRING, mapping.get(PropertyType.WEAKREFERENCE));
+        assertEquals(xs("dateTime"), mapping.get(PropertyType.DATE));
+        assertEquals(QNameCache.XS_STRING, mapping.get(99));
+    }
+
+    @Test
+    public void readsBackPreferredTypes()
+    {
+        TypeMapping mapping = TypeMapping.getDefault();
+        assertEquals(PropertyType.STRING, mapping.propertyType(QNameCache.XS_STRING));
+        assertEquals(PropertyType.REFERENCE, mapping.propertyType(xs("IDREF")));
+        assertEquals(PropertyType.REFERENCE, mapping.propertyType(xs("IDREFS")));
+        assertEquals(PropertyType.LONG, mapping.propertyType(xs("int")));
+        assertEquals(PropertyType.STRING, mapping.propertyType(new QName("urn:t", "long")));
+    }
+
+    @Test
+    public void appliesOverrides()
+    {
+        Map<String, String[]> attrMap = Collections.singletonMap("@date", new String[] {"xs:date"});
+        TypeMapping mapping = TypeMapping.fromPropertyMap(attrMap);
+        assertEquals(xs("date"), mapping.get(PropertyType.DATE));
+        assertEquals(PropertyType.DATE, mapping.propertyType(xs("date")));
+        assertEquals(xs("dateTime"), TypeMapping.getDefault().get(PropertyType.DATE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownPropertyTypes()
+    {
+        TypeMapping.fromPropertyMap(Collections.singletonMap("@color", new String[] {"string"}));
+    }
+}
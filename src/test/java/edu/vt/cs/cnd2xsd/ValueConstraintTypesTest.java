@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author adeka
+ */
+public class ValueConstraintTypesTest
+{
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:doc]\n"
+            + "  - t:size (long) < '[0, 100)'\n"
+            + "  - t:after (date) < '(2000-01-01T00:00:00.000Z,]'\n"
+            + "  - t:state (string) < 'draft', 'final'\n"
+            + "  - t:code (string) < '^[A-Z]{3}$'\n"
+            + "  - t:lazy (string) < 'a+?'\n"
+            + "  - t:ranges (long) < '[0,1]', '[5,6]'\n"
+            + "  - t:free (string)\n"
+            + "[t:part]\n"
+            + "  - t:status (string) < 'draft', 'final'\n";
+
+    private static String[][] facets(ValueConstraintTypes types, PropertyDef pDef)
+    {
+        for (ValueConstraintTypes.Restriction r : types.getRestrictions())
+        {
+            if (r.getName().equals(types.typeName(pDef)))
+            {
+                List<String[]> facets = r.getFacets();
+                return facets.toArray(new String[facets.size()][]);
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void translatesConstraintsToFacets() throws Exception
+    {
+        NodeTypeDef[] ntypes = Schemas.read(CND);
+        ValueConstraintTypes types = new ValueConstraintTypes(ntypes, new QNameCache("urn:t"));
+        List<PropertyDef> props = ntypes[0].getDeclaredPropertyDefinitions();
+        assertArrayEquals(new String[][] {{"minInclusive", "0"}, {"maxExclusive", "100"}},
+                facets(types, props.get(0)));
+        assertArrayEquals(new String[][] {{"minExclusive", "2000-01-01T00:00:00.000Z"}},
+                facets(types, props.get(1)));
+        assertArrayEquals(new String[][] {{"enumeration", "draft"}, {"enumeration", "final"}},
+                facets(types, props.get(2)));
+        assertArrayEquals(new String[][] {{"pattern", "[A-Z]{3}"}}, facets(types, props.get(3)));
+        assertNull(types.typeName(props.get(4)));
+        assertNull(types.typeName(props.get(5)));
+        assertNull(types.typeName(props.get(6)));
+    }
+
+    @Test
+    public void sharesEqualRestrictions() throws Exception
+    {
+        NodeTypeDef[] ntypes = Schemas.read(CND);
+        ValueConstraintTypes types = new ValueConstraintTypes(ntypes, new QNameCache("urn:t"));
+        String state = types.typeName(ntypes[0].getDeclaredPropertyDefinitions().get(2));
+        assertEquals(state, types.typeName(ntypes[1].getDeclaredPropertyDefinitions().get(0)));
+        assertEquals(4, types.getRestrictions().size());
+
+        //the name depends on the restriction only
+        NodeTypeDef[] part = Schemas.read("<t = 'urn:t'>\n[t:part]\n  - t:status (string) < 'draft', 'final'\n");
+        ValueConstraintTypes alone = new ValueConstraintTypes(part, new QNameCache("urn:t"));
+        assertEquals(state, alone.typeName(part[0].getDeclaredPropertyDefinitions().get(0)));
+    }
+
+    @Test
+    public void translatesUriConstraintsLikeStrings() throws Exception
+    {
+        NodeTypeDef[] ntypes = Schemas.read("<t = 'urn:t'>\n[t:doc]\n"
+                + "  - t:site (uri) < 'http://example\\\\.com/.*'\n"
+                + "  - t:home (uri) < 'urn:home'\n");
+        ValueConstraintTypes types = new ValueConstraintTypes(ntypes, new QNameCache("urn:t"));
+        List<PropertyDef> props = ntypes[0].getDeclaredPropertyDefinitions();
+        assertArrayEquals(new String[][] {{"pattern", "http://example\\.com/.*"}}, facets(types, props.get(0)));
+        assertArrayEquals(new String[][] {{"enumeration", "urn:home"}}, facets(types, props.get(1)));
+    }
+}
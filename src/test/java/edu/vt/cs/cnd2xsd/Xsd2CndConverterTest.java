@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class Xsd2CndConverterTest
+{
+    private static final String XSD = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'%s>\n"
+            + "  <xs:complexType name='doc'>\n"
+            + "    <xs:sequence><xs:element name='part' type='%spart'/></xs:sequence>\n"
+            + "    <xs:attribute name='title' type='xs:string'/>\n"
+            + "  </xs:complexType>\n"
+            + "  <xs:complexType name='part'/>\n"
+            + "</xs:schema>\n";
+
+    private static String convert(String targetNamespace, String namespace) throws Exception
+    {
+        String xsd = targetNamespace == null ? String.format(XSD, "", "")
+                : String.format(XSD, " xmlns:t='" + targetNamespace + "' targetNamespace='" + targetNamespace + "'", "t:");
+        ConversionJob job = new ConversionJob(null, null, null, namespace, null, null, null);
+        StringWriter out = new StringWriter();
+        new Xsd2CndConverter().convert(new ByteArrayInputStream(xsd.getBytes("UTF-8")), "test.xsd", job, out);
+        return out.toString();
+    }
+
+    private static NodeTypeDef[] parse(String cnd) throws Exception
+    {
+        return CndModelReader.read(new StringReader(cnd), "test.cnd");
+    }
+
+    @Test
+    public void prefixesNamesWithTheTargetNamespace() throws Exception
+    {
+        String cnd = convert("urn:t", null);
+        assertTrue(cnd, cnd.contains("<'ns' = 'urn:t'>"));
+        NodeTypeDef[] ntypes = parse(cnd);
+        assertEquals("ns:doc", ntypes[0].getName());
+        assertEquals("ns:part", ntypes[0].getDeclaredChildNodeDefinitions().get(0).getName());
+    }
+
+    @Test
+    public void leavesNamesWithoutNamespaceUnprefixed() throws Exception
+    {
+        String cnd = convert(null, null);
+        assertFalse(cnd, cnd.contains("<'ns'"));
+        NodeTypeDef[] ntypes = parse(cnd);
+        assertEquals("doc", ntypes[0].getName());
+        assertEquals("title", ntypes[0].getDeclaredPropertyDefinitions().get(0).getName());
+        assertEquals("part", ntypes[1].getName());
+    }
+
+    @Test
+    public void prefixesNamesWithTheGivenNamespace() throws Exception
+    {
+        String cnd = convert(null, "urn:u");
+        assertTrue(cnd, cnd.contains("<'ns' = 'urn:u'>"));
+        assertEquals("ns:doc", parse(cnd)[0].getName());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.vt.cs.cnd2xsd;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javax.jcr.PropertyType;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author adeka
+ */
+public class XsdModelReaderTest
+{
+    private static final String CND = "<t = 'urn:t'>\n"
+            + "[t:doc]\n"
+            + "  - t:title (string) = 'none'\n"
+            + "  - t:size (long) < '[0,100]'\n"
+            + "  - t:color (string) < 'red', 'blue'\n"
+            + "  - t:tags (string) multiple\n"
+            + "  + t:part (t:part) sns\n"
+            + "[t:part]\n"
+            + "  - t:when (date)\n";
+
+    private static NodeTypeDef[] roundTrip(String cnd) throws Exception
+    {
+        ConversionJob job = new ConversionJob(null, null, null, "urn:t", "t", "root", "doc");
+        byte[] xsd = Schemas.write(Schemas.read(cnd), Schemas.propertyMap("nt:base\n"), job);
+        return new XsdModelReader("t", TypeMapping.getDefault()).read(new ByteArrayInputStream(xsd), "test.xsd");
+    }
+
+    private static PropertyDef property(NodeTypeDef nt, String name)
+    {
+        for (PropertyDef pDef : nt.getDeclaredPropertyDefinitions())
+        {
+            if (pDef.getName().equals(name))
+            {
+                return pDef;
+            }
+        }
+        throw new AssertionError("no property " + name);
+    }
+
+    @Test
+    public void readsTheSchemaOfACnd() throws Exception
+    {
+        NodeTypeDef[] ntypes = roundTrip(CND);
+        assertEquals("t:doc", ntypes[0].getName());
+        NodeTypeDef doc = ntypes[0];
+
+        PropertyDef title = property(doc, "t:title");
+        assertEquals(PropertyType.STRING, title.getRequiredType());
+        assertFalse(title.isMultiple());
+        assertArrayEquals(new String[] {"none"}, title.getDefaultValues());
+
+        PropertyDef size = property(doc, "t:size");
+        assertEquals(PropertyType.LONG, size.getRequiredType());
+        assertArrayEquals(new String[] {"[0,100]"}, size.getValueConstraints());
+
+        PropertyDef color = property(doc, "t:color");
+        assertEquals(Arrays.asList("red", "blue"), Arrays.asList(color.getValueConstraints()));
+
+        NodeDef part = doc.getDeclaredChildNodeDefinitions().get(0);
+        assertEquals("t:part", part.getName());
+        assertTrue(part.allowsSameNameSiblings());
+        assertEquals("t:part", part.getRequiredPrimaryTypes()[0]);
+    }
+
+    @Test
+    public void readsMultiValuedProperties() throws Exception
+    {
+        NodeTypeDef[] ntypes = roundTrip(CND);
+        HashMap<String, NodeTypeDef> byName = new HashMap<String, NodeTypeDef>();
+        for (NodeTypeDef nt : ntypes)
+        {
+            byName.put(nt.getName(), nt);
+        }
+        assertEquals(PropertyType.DATE, property(byName.get("t:part"), "t:when").getRequiredType());
+        //the holder type of a multi-valued property reads back as a node type with a multi-valued property
+        PropertyDef tags = property(byName.get("t:tags"), "t:tags");
+        assertTrue(tags.isMultiple());
+    }
+
+    @Test
+    public void escapesStringEnumerations() throws Exception
+    {
+        String xsd = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns:tns='urn:t'"
+                + " targetNamespace='urn:t' elementFormDefault='qualified'>\n"
+                + "<xs:complexType name='doc'>\n"
+                + "  <xs:attribute name='version' type='tns:version'/>\n"
+                + "  <xs:attribute name='site' type='tns:site'/>\n"
+                + "  <xs:attribute name='level' type='tns:level'/>\n"
+                + "</xs:complexType>\n"
+                + "<xs:simpleType name='version'><xs:restriction base='xs:string'>"
+                + "<xs:enumeration value='1.0'/><xs:enumeration value='(draft)'/></xs:restriction></xs:simpleType>\n"
+                + "<xs:simpleType name='site'><xs:restriction base='xs:anyURI'>"
+                + "<xs:enumeration value='http://example.com/?q=a|b'/></xs:restriction></xs:simpleType>\n"
+                + "<xs:simpleType name='level'><xs:restriction base='xs:long'>"
+                + "<xs:enumeration value='1'/></xs:restriction></xs:simpleType>\n"
+                + "</xs:schema>\n";
+        NodeTypeDef[] ntypes = new XsdModelReader("t", TypeMapping.getDefault())
+                .read(new ByteArrayInputStream(xsd.getBytes("UTF-8")), "test.xsd");
+        //string and URI constraints are regular expressions, the values have to match literally
+        assertArrayEquals(new String[] {"1\\.0", "\\(draft\\)"},
+                property(ntypes[0], "t:version").getValueConstraints());
+        assertArrayEquals(new String[] {"http://example\\.com/\\?q=a\\|b"},
+                property(ntypes[0], "t:site").getValueConstraints());
+        assertArrayEquals(new String[] {"1"}, property(ntypes[0], "t:level").getValueConstraints());
+    }
+}